@@ -0,0 +1,73 @@
+package com.billsdesk.github.fontchooserdialog;
+
+import java.awt.Font;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FontRegistry;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FontSpec;
+
+/**
+ * Throughput of {@link FontSpec#parse(String)} on text already parsed, as when a style sheet is
+ * applied again, and of {@link FontSpec#toString()}. Run with <code>mvn -Pjmh verify</code>; the
+ * parse should reach well over 10M operations per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "-Djava.awt.headless=true"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FontSpecBenchmark {
+
+    /** Texts cycled through, fewer than the parse cache holds; a power of 2. */
+    private static final int COUNT = 256;
+
+    private final String[]   mTexts = new String[COUNT];
+    private final FontSpec[] mSpecs = new FontSpec[COUNT];
+    private int              mNext;
+
+    /**
+     * Write a spec of each font of the registry at a few sizes, alternating both forms, and
+     * parse each once to fill the cache.
+     */
+    @Setup
+    public void setUp() {
+        final FontRegistry registry = FontRegistry.getInstance();
+        final List<FontSpec> specs = new ArrayList<>();
+        for (final String family : registry.getFamilyNames()) {
+            for (final String font : registry.getFontNames(family)) {
+                specs.add(FontSpec.valueOf(registry.getFont(family, font, Font.PLAIN, 12)));
+            }
+        }
+        for (int i = 0; i < COUNT; i++) {
+            final FontSpec spec = FontSpec.valueOf(specs.get(i % specs.size())
+                                                        .getFont()
+                                                        .deriveFont(Font.BOLD, 8 + i % 40));
+            mTexts[i] = (i & 1) == 0 ? spec.toString() : spec.toCss();
+            mSpecs[i] = FontSpec.parse(mTexts[i]);
+        }
+    }
+
+    @Benchmark
+    public FontSpec parseCached() {
+        return FontSpec.parse(mTexts[mNext++ & COUNT - 1]);
+    }
+
+    @Benchmark
+    public String format() {
+        return mSpecs[mNext++ & COUNT - 1].toString();
+    }
+}
@@ -6,35 +6,142 @@ import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Font;
+import java.awt.FontFormatException;
 import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.GraphicsEnvironment;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Toolkit;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.UnsupportedFlavorException;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.font.LineBreakMeasurer;
+import java.awt.font.LineMetrics;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.ProcessBuilder.Redirect;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.text.AttributedString;
+import java.text.CollationKey;
+import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.EventListener;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.Properties;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import javax.annotation.Nullable;
+import javax.imageio.ImageIO;
+import javax.management.NotificationEmitter;
+import javax.swing.AbstractAction;
+import javax.swing.AbstractListModel;
 import javax.swing.BorderFactory;
 import javax.swing.Box;
-import javax.swing.DefaultListModel;
+import javax.swing.DefaultComboBoxModel;
 import javax.swing.JButton;
+import javax.swing.JComponent;
 import javax.swing.JComboBox;
 import javax.swing.JDialog;
 import javax.swing.JFrame;
@@ -45,10 +152,18 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSlider;
 import javax.swing.JTextField;
+import javax.swing.JViewport;
+import javax.swing.KeyStroke;
+import javax.swing.ListModel;
 import javax.swing.ListSelectionModel;
+import javax.swing.Scrollable;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.ListDataListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.xml.parsers.DocumentBuilder;
@@ -142,6 +257,8 @@ public class FontChooserDialog
             properties.getProperty("FontChooserDialog.cancel", "Cancel");
     private static final String STR_FAMILY        =                                 //
             properties.getProperty("FontChooserDialog.family", "Family");
+    private static final String STR_FAST_RENDERING =                                //
+            properties.getProperty("FontChooserDialog.fast_rendering", "Fast Rendering");
     private static final String STR_FONT          =                                 //
             properties.getProperty("FontChooserDialog.font", "Font");
     private static final String STR_FONT_STANDARD =                                 //
@@ -149,6 +266,10 @@ public class FontChooserDialog
                                    "Arial,Courier,Garamond,Helvetica,Monaco,Times");
     private static final String STR_ITALIC        =                                 //
             properties.getProperty("FontChooserDialog.italic", "Italic");
+    private static final String STR_NARROW        =                                 //
+            properties.getProperty("FontChooserDialog.narrow", "Narrow");
+    private static final String STR_NARROW_RANGE  =                                 //
+            properties.getProperty("FontChooserDialog.narrow_range", "width < 0.5");
     private static final String STR_OK            =                                 //
             properties.getProperty("FontChooserDialog.ok", "OK");
     private static final String STR_PREVIEW       =                                 //
@@ -156,6 +277,8 @@ public class FontChooserDialog
                                    "The quick brown fox jumps over the lazy dog");
     private static final String STR_REGULAR       =                                 //
             properties.getProperty("FontChooserDialog.regular", "Regular");
+    private static final String STR_SIMILAR       =                                 //
+            properties.getProperty("FontChooserDialog.similar", "Similar");
     private static final String STR_SIZE          =                                 //
             properties.getProperty("FontChooserDialog.size", "Size");
     private static final String STR_SIZE_LIST     =                                 //
@@ -175,9 +298,12 @@ public class FontChooserDialog
     // Default window title;
     private static final String DEFAULT_TITLE     = "Font";                         //$NON-NLS-1$
 
-    private final JPanel        mChooserPane;
-    private final SettingsPanel mSettingsPanel;
+    private final FontChooserPanel mChooserPanel;
     private int                 mResult;
+    private boolean             mDisposeOnClose   = true;
+    @Nullable
+    private GlyphWarmer         mWarmer;
+    private CompletableFuture<Font> mWarmUp       = CompletableFuture.completedFuture(null);
 
     /**
      * Create the Dialog with the window title set to "Font", and the 1st item of each list (family,
@@ -234,6 +360,7 @@ public class FontChooserDialog
                              @Nullable final AbstractFontFilter... filters) {
         super(frame, title == null ? DEFAULT_TITLE : title, ModalityType.APPLICATION_MODAL);
         setName("FontChooserDialog");
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
 
         // Order of the next 2 lines is important.
         FontRegistry.getInstance(); // load all font information
@@ -244,18 +371,12 @@ public class FontChooserDialog
         // if MacOS then load files in <user.home>/Library/FontCollections and create filters
         FilterRegistry.processCollections();
 
-        mChooserPane = new JPanel();
-        mChooserPane.setLayout(new BorderLayout());
-
-        final PreviewPanel previewPane = new PreviewPanel(this);
-        mSettingsPanel = new SettingsPanel(previewPane);
-        mChooserPane.add(mSettingsPanel, BorderLayout.CENTER);
-        mChooserPane.add(previewPane, BorderLayout.SOUTH);
+        mChooserPanel = new FontChooserPanel();
 
         // Set contents of dialog
         final Container contentPane = getContentPane();
         contentPane.setLayout(new BorderLayout());
-        contentPane.add(mChooserPane, BorderLayout.CENTER);
+        contentPane.add(mChooserPanel, BorderLayout.CENTER);
 
         // Cancel button
         final JButton cancelButton = new JButton(STR_CANCEL);
@@ -264,8 +385,7 @@ public class FontChooserDialog
         cancelButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(final ActionEvent event) {
-                setVisible(false); // just hide the dialog
-                mResult = JOptionPane.CANCEL_OPTION;
+                close(JOptionPane.CANCEL_OPTION);
             }
         });
 
@@ -277,8 +397,10 @@ public class FontChooserDialog
         okButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(final ActionEvent event) {
-                setVisible(false); // just hide the dialog
-                mResult = JOptionPane.YES_OPTION;
+                if (mWarmer != null) {
+                    mWarmUp = mWarmer.warm(getSelectedFont());
+                }
+                close(JOptionPane.YES_OPTION);
             }
         });
 
@@ -306,6 +428,32 @@ public class FontChooserDialog
         return this;
     }
 
+    /**
+     * Hide the dialog and release its native resources. The selection can still be read, and the
+     * dialog shown again, afterwards. A hidden dialog that is not disposed keeps its peer, so one
+     * created per use would be retained until the application exits.
+     *
+     * @param result
+     *            JOptionPane.YES_OPTION or JOptionPane.CANCEL_OPTION
+     */
+    private void close(final int result) {
+        mResult = result;
+        setVisible(false);
+        if (mDisposeOnClose) {
+            dispose();
+        }
+    }
+
+    /**
+     * @param disposeOnClose
+     *            false to only hide the dialog on OK, Cancel, and close, for a dialog that is kept
+     *            to be shown again
+     */
+    void setDisposeOnClose(final boolean disposeOnClose) {
+        mDisposeOnClose = disposeOnClose;
+        setDefaultCloseOperation(disposeOnClose ? DISPOSE_ON_CLOSE : HIDE_ON_CLOSE);
+    }
+
     /**
      * @return JOptionPane.YES_OPTION or JOptionPane.CANCEL_OPTION
      */
@@ -314,762 +462,7740 @@ public class FontChooserDialog
     }
 
     public Font getSelectedFont() throws IllegalArgumentException {
-        return mSettingsPanel.getSelectedFont();
+        return mChooserPanel.getSelectedFont();
     }
 
     public void setSelectFont(final Font font) {
-        mSettingsPanel.setSelectedFont(font);
+        mChooserPanel.setSelectedFont(font);
     }
 
     /**
-     * The area of the dialog with the lists of font families, fonts, styles, sizes, size text
-     * field, size slider and filter JComboBox.
+     * @return the lists and preview shown by the dialog
      */
-    private static class SettingsPanel
-        extends
-            JPanel {
-
-        private static final long       serialVersionUID = 1L;
-        public static final String      FILTER_NAME      = "filterSelection"; // AspectJ name
-
-        private final FontFamilyList    mFontFamilyList;
-        private final FontList          mFontList;
-        private final FontStyleList     mFontStyleList;
-        private final FontSizeList      mFontSizeList;
-        private final FontSizeText      mFontSizeText;
-        private final FontSizeSlider    mFontSizeSlider;
-        private final JComboBox<String> mComboBox;
-
-        /**
-         * @param previewPanel
-         *            listener for updating the sample text as inputs are changed
-         */
-        public SettingsPanel(final PreviewPanel previewPanel) {
-            super();
-            setLayout(new BorderLayout());
-            mFontFamilyList = new FontFamilyList();
-            mFontList = new FontList();
-            mFontList.setPreferredSize(new Dimension(
-                    ((int) (mFontFamilyList.getPreferredSize().width * 0.6)),
-                    mFontFamilyList.getPreferredSize().height));
-            mFontStyleList = new FontStyleList();
-            mFontSizeList = new FontSizeList();
-            mFontSizeText = new FontSizeText();
-            mFontSizeSlider = new FontSizeSlider();
-
-            mFontSizeSlider.addChangeListener(mFontSizeText);
-            mFontSizeSlider.addChangeListener(mFontSizeList);
+    public FontChooserPanel getChooserPanel() {
+        return mChooserPanel;
+    }
 
-            mFontFamilyList.addListSelectionListener(mFontList);
+    /**
+     * Publishes the selection each time it changes, for a host application to restyle its
+     * document live while the user browses. Slow subscribers only get the latest selection.
+     *
+     * @return publisher of the selected font, delivering on the common ForkJoinPool unless
+     *         changed with {@link SelectionPublisher#setExecutor(Executor)}
+     */
+    public SelectionPublisher getSelectionPublisher() {
+        return mChooserPanel.getSelectionPublisher();
+    }
 
-            // update values after leaving JTextField
-            mFontSizeText.addFocusListener(mFontSizeSlider);
-            mFontSizeText.addFocusListener(mFontSizeList);
+    /**
+     * Warm the glyph caches for the selected font when OK is pressed, so the host's first paint in
+     * it does not stall. See {@link #getWarmUp()}.
+     *
+     * @param warmer
+     *            characters and sizes to render, null for no warm-up
+     * @return this
+     */
+    public FontChooserDialog setWarmUpOnOk(@Nullable final GlyphWarmer warmer) {
+        mWarmer = warmer;
+        return this;
+    }
 
-            mFontSizeList.addListSelectionListener(mFontSizeText);
-            mFontSizeList.addListSelectionListener(mFontSizeSlider);
+    /**
+     * @return warm-up started by the last OK, completed with the font when the glyphs are cached,
+     *         or completed with null if none was started
+     */
+    public CompletableFuture<Font> getWarmUp() {
+        return mWarmUp;
+    }
 
-            mFontFamilyList.setSelectedIndex(0);
-            mFontSizeList.setSelectedIndex(0);
+    /**
+     * Preview a long sample, such as a chapter, on many lines instead of one.
+     *
+     * @param text
+     *            sample text, or null for the one line preview
+     * @return this
+     * @see DocumentPreview
+     */
+    public FontChooserDialog setPreviewDocument(@Nullable final String text) {
+        mChooserPanel.setPreviewDocument(text);
+        pack();
+        return this;
+    }
 
-            mComboBox = FilterRegistry.getInstance().getComboBox();
-            mComboBox.setName(FILTER_NAME);
-            mComboBox.addActionListener(new ActionListener() {
-                @Override
-                public void actionPerformed(final ActionEvent event) {
-                    final String selectedName = (String) mComboBox.getSelectedItem();
-                    mFontFamilyList.setFamilyNames(FilterRegistry.getInstance()
-                                                                 .getByName(selectedName));
-                }
-            });
+    /**
+     * Show or hide the families that look most like the selected one below the family list.
+     *
+     * @param visible
+     *            true to show the similar families
+     * @return this
+     * @see SimilarityIndex
+     */
+    public FontChooserDialog setSimilarVisible(final boolean visible) {
+        if (mChooserPanel.isSimilarVisible() != visible) {
+            mChooserPanel.setSimilarVisible(visible);
+            pack();
+        }
+        return this;
+    }
 
-            // Family name
-            final Box familyBox = Box.createVerticalBox();
-            familyBox.add(Box.createVerticalStrut(10));
-            final JLabel familyNameLabel = new JLabel(STR_FAMILY);
-            familyBox.add(familyNameLabel);
-            // mFontFamilyList.addListSelectionListener(listener);
-            final JScrollPane familyPane = new JScrollPane(mFontFamilyList);
-            familyBox.add(familyPane);
-            familyBox.add(Box.createVerticalStrut(10));
+    /**
+     * Show or hide the preview text at every size below the preview.
+     *
+     * @param visible
+     *            true to show the waterfall
+     * @return this
+     */
+    public FontChooserDialog setWaterfallVisible(final boolean visible) {
+        if (mChooserPanel.isWaterfallVisible() != visible) {
+            mChooserPanel.setWaterfallVisible(visible);
+            pack();
+        }
+        return this;
+    }
 
-            // Font name
-            final Box fontBox = Box.createVerticalBox();
-            fontBox.add(Box.createVerticalStrut(10));
-            final JLabel fontNameLabel = new JLabel(STR_FONT);
-            fontBox.add(fontNameLabel);
-            mFontList.addListSelectionListener(previewPanel);
-            final JScrollPane fontPane = new JScrollPane(mFontList);
-            fontBox.add(fontPane);
-            fontBox.add(Box.createVerticalStrut(10));
+    /**
+     * Return a hidden dialog to the state a newly created one would have, so it can be shown again
+     * without being rebuilt. Used by {@link Factory}.
+     *
+     * @param title
+     *            the dialog title (for the title bar), if null use "Font"
+     * @param selectedFont
+     *            the initially selected font. If null then select first of each list.
+     * @param filters
+     *            list of filters to add, if null do not add any
+     * @return this
+     */
+    FontChooserDialog reset(@Nullable final String title,
+                            @Nullable final Font selectedFont,
+                            @Nullable final AbstractFontFilter... filters) {
+        setTitle(title == null ? DEFAULT_TITLE : title);
+        if (filters != null) {
+            FilterRegistry.getInstance().addFilter(filters);
+        }
+        mChooserPanel.resetFilters();
+        if (selectedFont == null) {
+            mChooserPanel.selectFirst();
+        } else {
+            setSelectFont(selectedFont);
+        }
+        mResult = JOptionPane.CANCEL_OPTION;
+        setLocationRelativeTo(null); // center position of screen
+        return this;
+    }
 
-            // Font style
-            final Box styleBox = Box.createVerticalBox();
-            styleBox.add(Box.createVerticalStrut(10));
-            final JLabel fontStyleLabel = new JLabel(STR_STYLE);
-            styleBox.add(fontStyleLabel);
-            mFontStyleList.addListSelectionListener(previewPanel);
-            final JScrollPane stylePane = new JScrollPane(mFontStyleList);
-            styleBox.add(stylePane);
-            styleBox.add(Box.createVerticalStrut(10));
+    /**
+     * Keeps one dialog built and hidden between uses so toolbars that open the chooser often do
+     * not pay for rebuilding the lists, measuring widths, and packing each time. The font
+     * information is loaded on a background thread and the dialog is built on the EDT by
+     * {@link #prewarm()}. Each {@link #showDialog(String, Font, AbstractFontFilter...)} resets the
+     * title, filters, and selection. A hidden dialog keeps its native peer, so it is disposed and
+     * dropped when the heap is still nearly full after a collection, and rebuilt on the next use.
+     * <p>
+     * <b>Example</b> <pre>{@code
+           final FontChooserDialog.Factory factory = new FontChooserDialog.Factory(frame).prewarm();
+           ...
+           final FontChooserDialog dialog = factory.showDialog("Font", currentFont);
+           if (dialog.getResult() == JOptionPane.YES_OPTION) {
+               currentFont = dialog.getSelectedFont();
+           }
+         }</pre>
+     */
+    public static final class Factory {
 
-            // Font size (size list, size text, and size slider)
-            final Box sizeBox = Box.createVerticalBox();
-            sizeBox.add(Box.createVerticalStrut(10));
-            final JLabel fontSizeLabel = new JLabel(STR_SIZE);
-            sizeBox.add(fontSizeLabel);
-            final JPanel tempPane = new JPanel();
-            tempPane.setLayout(new BorderLayout());
-            mFontSizeList.addListSelectionListener(previewPanel);
-            mFontSizeText.addFocusListener(mFontSizeList);
-            mFontSizeText.addFocusListener(previewPanel);
-            tempPane.add(mFontSizeText, BorderLayout.NORTH);
-            tempPane.add(mFontSizeSlider, BorderLayout.EAST);
-            final JScrollPane sizePane = new JScrollPane(mFontSizeList);
-            tempPane.add(sizePane, BorderLayout.CENTER);
-            sizeBox.add(tempPane);
-            sizeBox.add(Box.createVerticalStrut(10));
+        /** Heap used after a collection, as a fraction of the maximum, that releases dialogs. */
+        private static final double       PRESSURE   = 0.8;
+        private static final Set<Factory> sFactories = //
+                Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+        private static boolean            sListening;
 
-            // filter comboBox
-            final JPanel filterNames = new JPanel();
-            filterNames.setLayout(new BorderLayout());
-            filterNames.add(mComboBox, BorderLayout.WEST);
-            filterNames.setBorder(BorderFactory.createEmptyBorder(5, 0, 10, 0));
+        private final JFrame              mFrame;
+        @Nullable
+        private volatile FontChooserDialog mDialog;
 
-            final Box mainBox = Box.createHorizontalBox();
-            mainBox.add(Box.createHorizontalStrut(10)); // space between
-            mainBox.add(familyBox);
-            mainBox.add(Box.createHorizontalStrut(10));
-            mainBox.add(fontBox);
-            mainBox.add(Box.createHorizontalStrut(10));
-            mainBox.add(styleBox);
-            mainBox.add(Box.createHorizontalStrut(10));
-            mainBox.add(sizeBox);
-            mainBox.add(Box.createHorizontalStrut(10));
+        /**
+         * @param frame
+         *            the parent component of the dialogs, maybe null
+         */
+        public Factory(@Nullable final JFrame frame) {
+            mFrame = frame;
+            listen(this);
+        }
 
-            add(mainBox, BorderLayout.CENTER);
-            add(filterNames, BorderLayout.SOUTH);
+        /**
+         * Release the hidden dialog of a factory when the heap is nearly full after a collection.
+         * The threshold is set on the heap pools that support one and have none set yet.
+         *
+         * @param factory
+         *            factory to release, only weakly held
+         */
+        private static synchronized void listen(final Factory factory) {
+            sFactories.add(factory);
+            if (sListening) {
+                return;
+            }
+            sListening = true;
+            for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                final long max = pool.getUsage().getMax();
+                if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()
+                        && max > 0 && pool.getCollectionUsageThreshold() == 0) {
+                    pool.setCollectionUsageThreshold((long) (max * PRESSURE));
+                }
+            }
+            final String exceeded = MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED;
+            final NotificationEmitter memory = //
+                    (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+            memory.addNotificationListener((notification, handback) -> //
+            SwingUtilities.invokeLater(Factory::releaseHidden),
+                                           notification -> exceeded.equals(notification.getType()),
+                                           null);
         }
 
         /**
-         * @return Returns the selected font, derived from the user's list choices.
+         * Dispose and drop the dialogs of all factories that are not showing, so they are rebuilt
+         * on their next use. Called on the EDT when the heap is under pressure.
          */
-        public Font getSelectedFont() {
-            final Font result = new Font(
-                    FontRegistry.getInstance()
-                                .getFontName(mFontFamilyList.getFamilyName(),
-                                             mFontList.getFontName()),
-                    mFontStyleList.getFontStyle(),
-                    mFontSizeText.getTextSize());
-            return result;
+        static void releaseHidden() {
+            final List<Factory> factories;
+            synchronized (sFactories) {
+                factories = new ArrayList<>(sFactories);
+            }
+            for (final Factory factory : factories) {
+                final FontChooserDialog dialog = factory.mDialog;
+                if (dialog != null && !dialog.isVisible()) {
+                    factory.release();
+                }
+            }
         }
 
         /**
-         * Set all lists and text to match this font.
+         * Load the font information on a background thread, then build the dialog on the EDT once
+         * the pending events have been processed. Does nothing if the dialog already exists.
          *
-         * @param font
-         *            font to set dialog with
+         * @return this
          */
-        public void setSelectedFont(final Font font) {
-            mFontFamilyList.setSelectedValue(font.getFamily(), true);
-            mFontList.setSelectedValue(FontRegistry.stripFamily(font), true);
-            mFontStyleList.setSelectedValue(FontStyle.fromInt(font.getStyle()).get().getName(),
-                                            true);
-            mFontSizeList.setSelectedValue(String.valueOf(font.getSize()), true);
+        public Factory prewarm() {
+            if (mDialog == null) {
+                final Thread thread = new Thread(() -> {
+                    FontRegistry.getInstance();
+                    SwingUtilities.invokeLater(() -> getDialog());
+                }, "FontChooserDialog.Factory"); //$NON-NLS-1$
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                thread.start();
+            }
+            return this;
         }
-    }
-
-    /**
-     * List of all installed font families or subset based on selected filter.
-     */
-    public static class FontFamilyList
-        extends
-            AbstractJList {
-
-        private static final long  serialVersionUID = 1L;
-        public static final String NAME             = "fontFamilyName"; //$NON-NLS-1$ AspectJ name
 
-        public FontFamilyList() {
-            super(makeModel());
-            setName(NAME);
+        /**
+         * Reset the dialog and display it. Must be called on the EDT.
+         *
+         * @param title
+         *            the dialog title (for the title bar), if null use "Font"
+         * @param selectedFont
+         *            the initially selected font. If null then select first of each list.
+         * @param filters
+         *            list of filters to add, if null do not add any
+         * @return the dialog, after it has been closed
+         */
+        public FontChooserDialog showDialog(@Nullable final String title,
+                                            @Nullable final Font selectedFont,
+                                            @Nullable final AbstractFontFilter... filters) {
+            return prepare(title, selectedFont, filters).showDialog();
         }
 
-        public String getFamilyName() {
-            final String name = getSelectedValue();
-            return name;
+        /**
+         * Drop the dialog so it is rebuilt on the next use.
+         */
+        public void release() {
+            final FontChooserDialog dialog = mDialog;
+            mDialog = null;
+            if (dialog != null) {
+                dialog.dispose();
+            }
         }
 
-        public void setFamilyNames(final Predicate<String> filter) {
-            final String selection = getSelectedValue();
-            final DefaultListModel<String> model = (DefaultListModel<String>) getModel();
-            model.removeAllElements();
-            model.addAll(Arrays.asList(FontRegistry.getInstance().getFamilyNames())
-                               .stream()
-                               .filter(filter)
-                               .sorted()
-                               .collect(Collectors.toList()));
-            setModel(model);
-            if (selection == null) {
-                setSelectedIndex(0);
-                ensureIndexIsVisible(0);
-            } else {
-                setSelectedValue(selection, true);
-                if (getSelectedIndex() == -1) {
-                    setSelectedIndex(0);
-                    ensureIndexIsVisible(0);
-                }
-            }
+        /**
+         * Reset the dialog without displaying it.
+         *
+         * @param title
+         *            the dialog title, if null use "Font"
+         * @param selectedFont
+         *            the initially selected font, maybe null
+         * @param filters
+         *            list of filters to add, maybe null
+         * @return the dialog, ready to show
+         */
+        FontChooserDialog prepare(@Nullable final String title,
+                                  @Nullable final Font selectedFont,
+                                  @Nullable final AbstractFontFilter... filters) {
+            return getDialog().reset(title, selectedFont, filters);
         }
 
-        private static DefaultListModel<String> makeModel() {
-            final DefaultListModel<String> model = new DefaultListModel<>();
-            model.addAll(Arrays.asList(FontRegistry.getInstance().getFamilyNames())
-                               .stream()
-                               .sorted()
-                               .collect(Collectors.toList()));
-            return model;
+        private FontChooserDialog getDialog() {
+            FontChooserDialog dialog = mDialog;
+            if (dialog == null) {
+                dialog = new FontChooserDialog(mFrame, null);
+                dialog.setDisposeOnClose(false);
+                mDialog = dialog;
+            }
+            return dialog;
         }
     }
 
     /**
-     * List of all installed fonts or subset based on selected filter.
+     * Measures a cold start of the chooser: the time from the start of the JVM until the dialog is
+     * visible, or without a display until its content is built. The same start is the training
+     * run of the AppCDS archive built by the appcds profile of the pom.
+     * <p>
+     * <b>Usage</b> <pre>
+     * java -cp FontChooserDialog-1.0.0.jar \
+     *     'com.billsdesk.github.fontchooserdialog.FontChooserDialog$Startup' [runs [archive]]
+     *         start the chooser in new JVMs, runs times with the default CDS archive and with
+     *         the archive (target/FontChooserDialog.jsa), and print the times
+     * java ... 'com.billsdesk.github.fontchooserdialog.FontChooserDialog$Startup' --once
+     *         start the chooser once and print the milliseconds until it is visible
+     * </pre>
      */
-    public static class FontList
-        extends
-            AbstractJList
-        implements
-            ListSelectionListener {
+    public static final class Startup {
 
-        private static final long  serialVersionUID = 1L;
-        public static final String NAME             = "fontName"; //$NON-NLS-1$ AspectJ name
+        private static final String ONCE = "--once"; //$NON-NLS-1$
 
-        public FontList() {
-            super(makeModel());
-            setName(FontList.NAME);
+        private Startup() {
+            super();
         }
 
-        public String getFontName() throws IllegalArgumentException {
-            final String result = getSelectedValue();
-            if (result == null) {
-                throw new IllegalArgumentException();
+        public static void main(final String[] args) throws Exception {
+            if (args.length > 0 && args[0].equals(ONCE)) {
+                System.out.println(startOnce());
+                System.exit(0);
+            }
+            final int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+            final Path archive = Paths.get(args.length > 1
+                    ? args[1]
+                    : "target/FontChooserDialog.jsa"); //$NON-NLS-1$
+            report("default CDS", time(runs, null)); //$NON-NLS-1$
+            if (Files.isRegularFile(archive)) {
+                report("AppCDS " + archive, time(runs, archive)); //$NON-NLS-1$
+            } else {
+                System.out.println(archive
+                        + " not found, build it with mvn -Pappcds package"); //$NON-NLS-1$
             }
-            return result;
         }
 
-        public void setFontNames(final String familyName) {
-            final String selection = getSelectedValue();
-            final DefaultListModel<String> model = (DefaultListModel<String>) getModel();
-            model.removeAllElements();
-            model.addAll(Arrays.asList(FontRegistry.getInstance().getFontNames(familyName))
-                               .stream()
-                               .collect(Collectors.toList()));
-            setModel(model);
-            if (selection == null) {
-                setSelectedIndex(0);
-                ensureIndexIsVisible(0);
-            } else {
-                setSelectedValue(selection, true);
-                if (getSelectedIndex() == -1) {
-                    setSelectedIndex(0);
-                    ensureIndexIsVisible(0);
+        /**
+         * @return milliseconds from the start of the JVM until the chooser is visible
+         */
+        static long startOnce() throws InterruptedException, InvocationTargetException {
+            final CountDownLatch visible = new CountDownLatch(1);
+            final long[] uptime = new long[1];
+            SwingUtilities.invokeAndWait(() -> {
+                if (GraphicsEnvironment.isHeadless()) {
+                    final SettingsPanel[] settings = new SettingsPanel[1];
+                    settings[0] = new SettingsPanel(new PreviewPanel(() -> settings[0]
+                            .getSelectedFont()));
+                    uptime[0] = ManagementFactory.getRuntimeMXBean().getUptime();
+                    visible.countDown();
+                } else {
+                    final FontChooserDialog dialog = new FontChooserDialog();
+                    dialog.addWindowListener(new WindowAdapter() {
+                        @Override
+                        public void windowOpened(final WindowEvent event) {
+                            uptime[0] = ManagementFactory.getRuntimeMXBean().getUptime();
+                            visible.countDown();
+                            dialog.dispose();
+                        }
+                    });
+                    dialog.setModal(false); // return, to wait for it to open
+                    dialog.setVisible(true);
                 }
-            }
+            });
+            visible.await();
+            return uptime[0];
         }
 
-        @Override
-        public void valueChanged(final ListSelectionEvent event) {
-            @SuppressWarnings("unchecked")
-            final JList<String> list = (JList<String>) event.getSource();
-            final ListSelectionModel model = list.getSelectionModel();
-            if (!model.isSelectionEmpty()) {
-                setFontNames(list.getSelectedValue());
+        /**
+         * Start the chooser in new JVMs.
+         *
+         * @param runs
+         *            number of JVMs
+         * @param archive
+         *            AppCDS archive, null for the default CDS archive of the JDK
+         * @return sorted milliseconds until visible
+         */
+        private static long[] time(final int runs,
+                                   @Nullable final Path archive) throws IOException,
+                                                                 InterruptedException {
+            final List<String> command = new ArrayList<>();
+            final String javaHome = System.getProperty("java.home"); //$NON-NLS-1$
+            command.add(Paths.get(javaHome, "bin", "java").toString()); //$NON-NLS-1$ //$NON-NLS-2$
+            ManagementFactory.getRuntimeMXBean()
+                             .getInputArguments()
+                             .stream()
+                             .filter(a -> a.equals("--enable-preview") //$NON-NLS-1$
+                                     || a.startsWith("-D")) //$NON-NLS-1$
+                             .forEach(command::add);
+            if (archive != null) {
+                command.add("-XX:SharedArchiveFile=" + archive); //$NON-NLS-1$
+            }
+            command.addAll(Arrays.asList("-cp", //$NON-NLS-1$
+                                         System.getProperty("java.class.path"), //$NON-NLS-1$
+                                         Startup.class.getName(),
+                                         ONCE));
+            final long[] result = new long[runs];
+            for (int run = 0; run < runs; run++) {
+                final Process process = new ProcessBuilder(command).redirectError(Redirect.INHERIT)
+                                                                   .start();
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(process.getInputStream()))) {
+                    String last = null;
+                    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                        last = line;
+                    }
+                    if (process.waitFor() != 0 || last == null) {
+                        throw new IOException("start failed: " + command); //$NON-NLS-1$
+                    }
+                    result[run] = Long.parseLong(last.trim());
+                }
             }
+            Arrays.sort(result);
+            return result;
         }
 
-        private static DefaultListModel<String> makeModel() {
-            final DefaultListModel<String> model = new DefaultListModel<>();
-            model.addAll(Arrays.asList(FontRegistry.getInstance().getFontNames("Courier")) //$NON-NLS-1$
-                               .stream()
-                               .collect(Collectors.toList()));
-            return model;
+        private static void report(final String name, final long[] times) {
+            System.out.println(String.format("%-36s median %,5d min %,5d max %,5d ms", //$NON-NLS-1$
+                                             name,
+                                             times[times.length / 2],
+                                             times[0],
+                                             times[times.length - 1]));
         }
     }
 
     /**
-     * List of all installed font styles.
+     * The command line of {@link Inventory} and {@link SpecimenSheets}: a command or directory,
+     * then options. Both select families with --family REGEX, found anywhere in the name, and
+     * --filter NAME, a filter of the {@link FilterRegistry}; each names its other options.
+     */
+    static final class CommandLine {
+
+        private static final String       FAMILY   = "--family"; //$NON-NLS-1$
+        private static final String       FILTER   = "--filter"; //$NON-NLS-1$
+
+        private final String              mFirst;
+        private final Map<String, String> mOptions = new HashMap<>(); // "" for a flag
+        @Nullable
+        private final Pattern             mFamily;
+        @Nullable
+        private AbstractFontFilter        mFilter;
+
+        /**
+         * @param args
+         *            command or directory, then options
+         * @param valued
+         *            options followed by a value, beside --family and --filter
+         * @param flags
+         *            options without a value
+         * @throws IllegalArgumentException
+         *             no command, an option not known or without its value, or --family not a
+         *             regular expression
+         */
+        CommandLine(final String[] args,
+                    final Collection<String> valued,
+                    final Collection<String> flags) throws IllegalArgumentException {
+            if (args.length == 0) {
+                throw new IllegalArgumentException();
+            }
+            mFirst = args[0];
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals(FAMILY) || args[i].equals(FILTER) || valued.contains(args[i])) {
+                    if (i + 1 == args.length) {
+                        throw new IllegalArgumentException(args[i]);
+                    }
+                    mOptions.put(args[i], args[++i]);
+                } else if (flags.contains(args[i])) {
+                    mOptions.put(args[i], ""); //$NON-NLS-1$
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+            final String family = mOptions.get(FAMILY);
+            mFamily = family == null ? null : Pattern.compile(family);
+        }
+
+        /**
+         * @param usage
+         *            how the tool is run
+         * @return exit status of a command line that is wrong
+         */
+        static int usage(final String usage) {
+            System.err.println(usage);
+            return 2;
+        }
+
+        /**
+         * @return the command or directory
+         */
+        String getFirst() {
+            return mFirst;
+        }
+
+        /**
+         * @param option
+         *            option with a value
+         * @param defaultValue
+         *            value if the option is not given
+         * @return value of the option
+         */
+        String get(final String option, final String defaultValue) {
+            return mOptions.getOrDefault(option, defaultValue);
+        }
+
+        /**
+         * @param option
+         *            option with a value
+         * @param defaultValue
+         *            value if the option is not given
+         * @return value of the option
+         * @throws NumberFormatException
+         *             value not an int
+         */
+        int getInt(final String option, final int defaultValue) throws NumberFormatException {
+            final String value = mOptions.get(option);
+            return value == null ? defaultValue : Integer.parseInt(value);
+        }
+
+        /**
+         * @param flag
+         *            option without a value
+         * @return true if given
+         */
+        boolean has(final String flag) {
+            return mOptions.containsKey(flag);
+        }
+
+        /**
+         * Look up the filter of --filter, once the registry the filters use is set, and wait
+         * until it is prepared, see {@link AbstractFontFilter#prepare()}.
+         *
+         * @return false, and "no filter" is written to the error output, if there is no such
+         *         filter
+         */
+        boolean findFilter() {
+            final String filterName = mOptions.get(FILTER);
+            if (filterName != null) {
+                mFilter = FilterRegistry.getInstance()
+                                        .stream()
+                                        .filter(f -> f.getFilterName().equals(filterName))
+                                        .findFirst()
+                                        .orElse(null); // getByName() fails if there is none
+                if (mFilter == null) {
+                    System.err.println("no filter " + filterName); //$NON-NLS-1$
+                    return false;
+                }
+                mFilter.prepare().join();
+            }
+            return true;
+        }
+
+        /**
+         * @return the filter of --filter, or null for all families
+         */
+        @Nullable
+        AbstractFontFilter getFilter() {
+            return mFilter;
+        }
+
+        /**
+         * @param familyName
+         *            family name
+         * @return true if --family is not given or found in the name
+         */
+        boolean matches(final String familyName) {
+            return mFamily == null || mFamily.matcher(familyName).find();
+        }
+
+        /**
+         * @param familyName
+         *            family name
+         * @return true if the family {@link #matches(String)} and is accepted by the filter
+         */
+        boolean accept(final String familyName) {
+            return matches(familyName) && (mFilter == null || mFilter.test(familyName));
+        }
+
+        /**
+         * @param familyNames
+         *            family names
+         * @return the families accepted, in the same order
+         */
+        List<String> select(final String[] familyNames) {
+            final List<String> result = new ArrayList<>();
+            for (final String familyName : familyNames) {
+                if (accept(familyName)) {
+                    result.add(familyName);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Lists the installed families, their fonts and the filters that show them, for auditing the
+     * fonts of many hosts. Records are written one at a time as JSON Lines or CSV, and the catalog
+     * is read from a {@link CatalogCache} when the fonts have not changed, so nothing waits for the
+     * fonts to be enumerated and nothing is held for the whole output. Families are in String
+     * order. Filters that measure the fonts, such as Fast Rendering, are waited for, so the
+     * first run on a host takes longer.
+     * <p>
+     * <b>Example</b> <pre>
+       INVENTORY='com.billsdesk.github.fontchooserdialog.FontChooserDialog$Inventory'
+       java -cp FontChooserDialog.jar $INVENTORY families --filter Standard --format csv
+       java -cp FontChooserDialog.jar $INVENTORY faces --family '^DejaVu'
+       java -cp FontChooserDialog.jar $INVENTORY filters
+     </pre>
+     */
+    public static final class Inventory {
+
+        private static final String USAGE = //
+                "usage: Inventory families|faces|filters [--family REGEX]" //$NON-NLS-1$
+                        + " [--filter NAME] [--format jsonl|csv]" //$NON-NLS-1$
+                        + " [--cache FILE] [--refresh]"; //$NON-NLS-1$
+
+        private static final String HEADLESS = "java.awt.headless"; //$NON-NLS-1$
+        private static final String FORMAT   = "--format";          //$NON-NLS-1$
+        private static final String CACHE    = "--cache";           //$NON-NLS-1$
+        private static final String REFRESH  = "--refresh";         //$NON-NLS-1$
+
+        private Inventory() {
+            super();
+        }
+
+        public static void main(final String[] args) throws IOException {
+            if (System.getProperty(HEADLESS) == null) {
+                System.setProperty(HEADLESS, "true"); //$NON-NLS-1$
+            }
+            final Writer out = new BufferedWriter(
+                    new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            final int status = run(args, out);
+            out.flush();
+            System.exit(status);
+        }
+
+        /**
+         * Run a command. Replaces the registry with one over the catalog read, so meant for a
+         * process of its own.
+         *
+         * @param args
+         *            command and options, see {@link #USAGE}
+         * @param out
+         *            where the records are written
+         * @return exit status, 0 if the command ran
+         * @throws IOException
+         *             output failed
+         */
+        static int run(final String[] args, final Writer out) throws IOException {
+            final CommandLine line;
+            final Path cache;
+            try {
+                line = new CommandLine(args, Arrays.asList(FORMAT, CACHE), Arrays.asList(REFRESH));
+                cache = Paths.get(line.get(CACHE, CatalogCache.getDefaultFile().toString()));
+            } catch (final IllegalArgumentException error) {
+                return CommandLine.usage(USAGE);
+            }
+            final FontCatalog catalog = new CatalogCache(cache).load(line.has(REFRESH));
+            FontRegistry.setInstance(new FontRegistry(catalog)); // filters must not enumerate
+            final List<AbstractFontFilter> filters = FilterRegistry.getInstance();
+            if (!line.findFilter()) {
+                return 1;
+            }
+            // measured filters accept nothing until the fonts are measured
+            filters.stream()
+                   .map(AbstractFontFilter::prepare)
+                   .collect(Collectors.toList())
+                   .forEach(CompletableFuture::join);
+            final AbstractFontFilter only = line.getFilter();
+            final boolean csv = line.get(FORMAT, "jsonl").equals("csv"); //$NON-NLS-1$ //$NON-NLS-2$
+            final RecordWriter records = new RecordWriter(out, csv);
+            switch (line.getFirst()) {
+            case "families": //$NON-NLS-1$
+                records.header("family", //$NON-NLS-1$
+                               "faces", //$NON-NLS-1$
+                               "filters"); //$NON-NLS-1$
+                final List<String> names = new ArrayList<>();
+                for (int i = 0; i < catalog.getFamilyCount(); i++) {
+                    final String familyName = catalog.getFamilyName(i);
+                    if (line.accept(familyName)) {
+                        names.clear();
+                        for (final AbstractFontFilter filter : filters) {
+                            if (filter.test(familyName)) {
+                                names.add(filter.getFilterName());
+                            }
+                        }
+                        records.record(familyName,
+                                       catalog.getEndFace(i) - catalog.getFirstFace(i),
+                                       names);
+                    }
+                }
+                break;
+            case "faces": //$NON-NLS-1$
+                records.header("family", //$NON-NLS-1$
+                               "font", //$NON-NLS-1$
+                               "face"); //$NON-NLS-1$
+                for (int i = 0; i < catalog.getFamilyCount(); i++) {
+                    final String familyName = catalog.getFamilyName(i);
+                    if (line.accept(familyName)) {
+                        for (int face = catalog.getFirstFace(i); face < catalog.getEndFace(i);
+                                face++) {
+                            records.record(familyName,
+                                           catalog.getFaceName(face),
+                                           catalog.getStrippedName(face));
+                        }
+                    }
+                }
+                break;
+            case "filters": //$NON-NLS-1$
+                records.header("filter", "families"); //$NON-NLS-1$ //$NON-NLS-2$
+                for (final AbstractFontFilter filter : filters) {
+                    if (only == null || only == filter) {
+                        int count = 0;
+                        for (int i = 0; i < catalog.getFamilyCount(); i++) {
+                            final String familyName = catalog.getFamilyName(i);
+                            if (filter.test(familyName) && line.matches(familyName)) {
+                                count++;
+                            }
+                        }
+                        records.record(filter.getFilterName(), count);
+                    }
+                }
+                break;
+            default:
+                return CommandLine.usage(USAGE);
+            }
+            return 0;
+        }
+
+        /**
+         * Writes records as they come, as JSON objects one per line or as CSV rows after a header.
+         * Values are strings, numbers, or lists of strings, which CSV joins with ';'.
+         */
+        private static final class RecordWriter {
+
+            private static final String LIST = ";"; //$NON-NLS-1$
+
+            private final Writer        mOut;
+            private final boolean       mCsv;
+            private String[]            mColumns;
+
+            RecordWriter(final Writer out, final boolean csv) {
+                mOut = out;
+                mCsv = csv;
+            }
+
+            void header(final String... columns) throws IOException {
+                mColumns = columns;
+                if (mCsv) {
+                    record((Object[]) columns);
+                }
+            }
+
+            void record(final Object... values) throws IOException {
+                if (!mCsv) {
+                    mOut.write('{');
+                }
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) {
+                        mOut.write(',');
+                    }
+                    if (mCsv) {
+                        writeCsv(values[i] instanceof List
+                                ? ((List< ? >) values[i]).stream()
+                                                         .map(Object::toString)
+                                                         .collect(Collectors.joining(LIST))
+                                : values[i].toString());
+                    } else {
+                        writeJson(mColumns[i]);
+                        mOut.write(':');
+                        writeJson(values[i]);
+                    }
+                }
+                mOut.write(mCsv ? "\r\n" : "}\n"); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+
+            private void writeCsv(final String value) throws IOException {
+                if (value.indexOf(',') == -1 && value.indexOf('"') == -1
+                        && value.indexOf('\n') == -1 && value.indexOf('\r') == -1) {
+                    mOut.write(value);
+                } else {
+                    mOut.write('"');
+                    mOut.write(value.replace("\"", "\"\"")); //$NON-NLS-1$ //$NON-NLS-2$
+                    mOut.write('"');
+                }
+            }
+
+            private void writeJson(final Object value) throws IOException {
+                if (value instanceof Number) {
+                    mOut.write(value.toString());
+                } else if (value instanceof List) {
+                    mOut.write('[');
+                    boolean first = true;
+                    for (final Object item : (List< ? >) value) {
+                        if (!first) {
+                            mOut.write(',');
+                        }
+                        writeJson(item);
+                        first = false;
+                    }
+                    mOut.write(']');
+                } else {
+                    final String string = value.toString();
+                    mOut.write('"');
+                    for (int i = 0; i < string.length(); i++) {
+                        final char c = string.charAt(i);
+                        if (c == '"' || c == '\\') {
+                            mOut.write('\\');
+                            mOut.write(c);
+                        } else if (c < ' ') {
+                            mOut.write(String.format("\\u%04x", (int) c)); //$NON-NLS-1$
+                        } else {
+                            mOut.write(c);
+                        }
+                    }
+                    mOut.write('"');
+                }
+            }
+        }
+    }
+
+    /**
+     * Publishes the selected font of a dialog as it changes. Each subscription keeps only the
+     * latest font not yet delivered, so a subscriber that is slow, or has not requested more, gets
+     * the current selection when it is ready rather than a backlog of every slider tick. Fonts are
+     * delivered off the EDT, one at a time per subscriber, on the executor. A new subscriber first
+     * gets the current selection. The dialog can be shown again after it is closed, so
+     * subscriptions are not completed; cancel them when done.
+     * <p>
+     * <b>Example</b> <pre>{@code
+           dialog.getSelectionPublisher().subscribe(new Flow.Subscriber<Font>() {
+               private Flow.Subscription mSubscription;
+               public void onSubscribe(final Flow.Subscription subscription) {
+                   mSubscription = subscription;
+                   subscription.request(1);
+               }
+               public void onNext(final Font font) {
+                   document.restyle(font); // slow
+                   mSubscription.request(1);
+               }
+               ...
+           });
+         }</pre>
+     */
+    public static final class SelectionPublisher
+        implements
+            Flow.Publisher<Font> {
+
+        private volatile Executor                         mExecutor;
+        private final List<ConflatingSubscription>        mSubscriptions = //
+                new CopyOnWriteArrayList<>();
+        @Nullable
+        private volatile Font                             mLatest;
+
+        /**
+         * @param executor
+         *            executor to deliver on
+         */
+        SelectionPublisher(final Executor executor) {
+            mExecutor = executor;
+        }
+
+        /**
+         * @param executor
+         *            executor for the deliveries from now on, such as a single thread that owns the
+         *            host's document
+         * @return this
+         */
+        public SelectionPublisher setExecutor(final Executor executor) {
+            mExecutor = executor;
+            return this;
+        }
+
+        @Override
+        public void subscribe(final Flow.Subscriber< ? super Font> subscriber) {
+            final ConflatingSubscription subscription = new ConflatingSubscription(subscriber);
+            mSubscriptions.add(subscription);
+            final Font latest = mLatest;
+            if (latest != null) {
+                subscription.offer(latest);
+            }
+            subscription.schedule(); // onSubscribe
+        }
+
+        /**
+         * Offer the selected font to all subscribers, if it changed.
+         *
+         * @param font
+         *            the selected font
+         */
+        void publish(final Font font) {
+            if (font.equals(mLatest)) {
+                return;
+            }
+            mLatest = font;
+            if (!mSubscriptions.isEmpty()) {
+                for (final ConflatingSubscription subscription : mSubscriptions) {
+                    subscription.offer(font);
+                }
+            }
+        }
+
+        /**
+         * @return number of subscriptions not cancelled
+         */
+        int getSubscriberCount() {
+            return mSubscriptions.size();
+        }
+
+        /**
+         * The subscription of one subscriber: the latest font not yet delivered, the number
+         * requested, and a drain that runs on the executor while there is work, never twice at
+         * once.
+         */
+        private final class ConflatingSubscription
+            implements
+                Flow.Subscription {
+
+            private final Flow.Subscriber< ? super Font> mSubscriber;
+            private final AtomicReference<Font>         mPending    = new AtomicReference<>();
+            private final AtomicLong                    mRequested  = new AtomicLong();
+            private final AtomicInteger                 mWork       = new AtomicInteger();
+            private boolean                             mSubscribed;  // drain only
+            private volatile boolean                    mCancelled;
+            @Nullable
+            private volatile Throwable                  mError;
+
+            ConflatingSubscription(final Flow.Subscriber< ? super Font> subscriber) {
+                mSubscriber = subscriber;
+            }
+
+            void offer(final Font font) {
+                mPending.set(font); // replaces any font not delivered yet
+                schedule();
+            }
+
+            @Override
+            public void request(final long count) {
+                if (count <= 0) {
+                    mError = new IllegalArgumentException("request " + count); //$NON-NLS-1$
+                } else {
+                    mRequested.accumulateAndGet(count,
+                                                (r, n) -> r + n < 0 ? Long.MAX_VALUE : r + n);
+                }
+                schedule();
+            }
+
+            @Override
+            public void cancel() {
+                mCancelled = true;
+                mSubscriptions.remove(this);
+            }
+
+            void schedule() {
+                if (mWork.getAndIncrement() == 0) {
+                    try {
+                        mExecutor.execute(this::drain);
+                    } catch (final RejectedExecutionException error) {
+                        mWork.set(0);
+                        cancel();
+                    }
+                }
+            }
+
+            private void drain() {
+                int work = mWork.get();
+                while (true) {
+                    if (!mSubscribed) {
+                        mSubscribed = true;
+                        mSubscriber.onSubscribe(this);
+                    }
+                    final Throwable error = mError;
+                    if (error != null && !mCancelled) {
+                        cancel();
+                        mSubscriber.onError(error);
+                    }
+                    while (!mCancelled && mRequested.get() > 0) {
+                        final Font font = mPending.getAndSet(null);
+                        if (font == null) {
+                            break;
+                        }
+                        if (mRequested.get() != Long.MAX_VALUE) {
+                            mRequested.decrementAndGet();
+                        }
+                        try {
+                            mSubscriber.onNext(font);
+                        } catch (final RuntimeException failure) {
+                            cancel();
+                            mSubscriber.onError(failure);
+                        }
+                    }
+                    work = mWork.addAndGet(-work);
+                    if (work == 0) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Renders a set of characters in a font at a list of sizes on a background thread, so Java2D
+     * has rasterized and cached their glyphs before the host paints a document in the font. The
+     * glyphs are drawn with the desktop text hints and the screen's default transform, as Swing
+     * text on the screen is, since the glyph cache is kept per hint and scale.
+     * <p>
+     * <b>Example</b> <pre>{@code
+           new GlyphWarmer(GlyphWarmer.LATIN_1, 12, 14).warm(dialog.getSelectedFont())
+                                                      .thenRun(() -> log("ready"));
+         }</pre>
+     */
+    public static final class GlyphWarmer {
+
+        /** Printable ASCII and Latin-1 characters. */
+        public static final String           LATIN_1       = range(' ', '~')
+                + range('\u00a0', '\u00ff');
+        private static final String          DESKTOP_HINTS = "awt.font.desktophints"; //$NON-NLS-1$
+        /** Characters drawn per line, to keep the image small at large sizes. */
+        private static final int             LINE          = 32;
+        private static final ExecutorService sExecutor     = //
+                Executors.newSingleThreadExecutor(runnable -> {
+                    final Thread thread = new Thread(runnable, "GlyphWarmer"); //$NON-NLS-1$
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        private final String                 mCharacters;
+        private final int[]                  mSizes;
+
+        /**
+         * Warm {@link #LATIN_1} at the size of the font.
+         */
+        public GlyphWarmer() {
+            this(LATIN_1);
+        }
+
+        /**
+         * @param characters
+         *            characters to render
+         * @param sizes
+         *            point sizes to render at, none for the size of the font
+         */
+        public GlyphWarmer(final String characters, final int... sizes) {
+            mCharacters = characters;
+            mSizes = sizes.clone();
+        }
+
+        /**
+         * @param font
+         *            font to warm, such as {@link FontChooserDialog#getSelectedFont()}
+         * @return completed with the font when all glyphs were rendered
+         */
+        public CompletableFuture<Font> warm(final Font font) {
+            return CompletableFuture.supplyAsync(() -> {
+                final AffineTransform transform = GraphicsEnvironment.isHeadless()
+                        ? new AffineTransform()
+                        : GraphicsEnvironment.getLocalGraphicsEnvironment()
+                                             .getDefaultScreenDevice()
+                                             .getDefaultConfiguration()
+                                             .getDefaultTransform();
+                if (mSizes.length == 0) {
+                    render(font, transform);
+                }
+                for (final int size : mSizes) {
+                    render(font.deriveFont((float) size), transform);
+                }
+                return font;
+            }, sExecutor);
+        }
+
+        private void render(final Font font, final AffineTransform transform) {
+            final int size = font.getSize();
+            final BufferedImage image = new BufferedImage(
+                    (int) Math.ceil(size * LINE * transform.getScaleX()),
+                    (int) Math.ceil(size * 2 * transform.getScaleY()),
+                    BufferedImage.TYPE_INT_ARGB);
+            final Graphics2D graphics = image.createGraphics();
+            try {
+                setDesktopHints(graphics);
+                graphics.transform(transform);
+                graphics.setFont(font);
+                for (int start = 0; start < mCharacters.length(); start += LINE) {
+                    final int end = Math.min(mCharacters.length(), start + LINE);
+                    graphics.drawString(mCharacters.substring(start, end), 0, size * 3 / 2);
+                }
+            } finally {
+                graphics.dispose();
+            }
+        }
+
+        /**
+         * Set the text hints of the desktop, which Swing text components render with.
+         *
+         * @param graphics
+         *            graphics to set
+         */
+        static void setDesktopHints(final Graphics2D graphics) {
+            final Object hints = Toolkit.getDefaultToolkit().getDesktopProperty(DESKTOP_HINTS);
+            if (hints instanceof Map) {
+                graphics.addRenderingHints((Map< ? , ? >) hints);
+            }
+        }
+
+        private static String range(final char first, final char last) {
+            final StringBuilder result = new StringBuilder();
+            for (char c = first; c <= last; c++) {
+                result.append(c);
+            }
+            return result.toString();
+        }
+    }
+
+    /**
+     * The selection of a {@link SettingsPanel}: family, font, style, and size. The lists, the size
+     * text field, the slider, and the preview observe it, and a user action on any of them only
+     * sets it, so one action is one change, told once to each observer, rather than a cascade of
+     * components updating each other. Setting the values it already has changes nothing, which is
+     * what stops an observer showing a value from changing it again. A new family keeps the font
+     * name if the family has a font of that name, and otherwise has its first font.
+     */
+    public static final class SelectionModel {
+
+        private final ChangeEvent      mEvent     = new ChangeEvent(this);
+        private ChangeListener[]       mListeners = new ChangeListener[0];
+        private String                 mFamilyName;
+        private String                 mFontName;
+        private int                    mStyle;
+        private int                    mSize;
+        private int                    mChanges;
+
+        /**
+         * Create with nothing selected, see {@link #set(String, String, int, int)}.
+         */
+        public SelectionModel() {
+            super();
+            mFamilyName = ""; //$NON-NLS-1$
+            mFontName = ""; //$NON-NLS-1$
+        }
+
+        public String getFamilyName() {
+            return mFamilyName;
+        }
+
+        /**
+         * @return stripped font name, see {@link FontRegistry#getFontNames(String)}
+         */
+        public String getFontName() {
+            return mFontName;
+        }
+
+        /**
+         * @return Font.PLAIN, Font.BOLD, ...
+         */
+        public int getStyle() {
+            return mStyle;
+        }
+
+        public int getSize() {
+            return mSize;
+        }
+
+        /**
+         * @return the selected font
+         * @throws IllegalArgumentException
+         *             the family or font is not in the registry
+         */
+        public Font getFont() throws IllegalArgumentException {
+            return FontRegistry.getInstance().getFont(mFamilyName, mFontName, mStyle, mSize);
+        }
+
+        public void setFamilyName(final String familyName) {
+            set(familyName, mFontName, mStyle, mSize);
+        }
+
+        public void setFontName(final String fontName) {
+            set(mFamilyName, fontName, mStyle, mSize);
+        }
+
+        public void setStyle(final int style) {
+            set(mFamilyName, mFontName, style, mSize);
+        }
+
+        public void setSize(final int size) {
+            set(mFamilyName, mFontName, mStyle, size);
+        }
+
+        /**
+         * Select all values at once, and tell the observers once if any changed.
+         *
+         * @param familyName
+         *            family name
+         * @param fontName
+         *            stripped font name, replaced by the first font of the family if it has no
+         *            font of this name
+         * @param style
+         *            Font.PLAIN, Font.BOLD, ...
+         * @param size
+         *            point size
+         */
+        public void set(final String familyName,
+                        final String fontName,
+                        final int style,
+                        final int size) {
+            final ImmutableListModel faces = SharedListModels.getInstance()
+                                                             .getFaceModel(familyName);
+            final String face = faces.indexOf(fontName) != -1 || faces.getSize() == 0
+                    ? fontName
+                    : faces.getElementAt(0);
+            if (familyName.equals(mFamilyName) && face.equals(mFontName) && style == mStyle
+                    && size == mSize) {
+                return;
+            }
+            mFamilyName = familyName;
+            mFontName = face;
+            mStyle = style;
+            mSize = size;
+            mChanges++;
+            final ChangeListener[] listeners = mListeners;
+            for (int i = 0; i < listeners.length; i++) {
+                listeners[i].stateChanged(mEvent);
+            }
+        }
+
+        /**
+         * Select the family, font, style, and size of a font.
+         *
+         * @param font
+         *            font to select
+         */
+        public void setFont(final Font font) {
+            set(font.getFamily(), FontRegistry.stripFamily(font), font.getStyle(), font.getSize());
+        }
+
+        /**
+         * Select the first family of a list, its first font, plain, and the first size of the size
+         * list, as a newly created chooser has.
+         *
+         * @param families
+         *            family names as listed
+         */
+        void selectFirst(final ListModel<String> families) {
+            final String familyName = families.getSize() == 0
+                    ? "" //$NON-NLS-1$
+                    : families.getElementAt(0);
+            final ImmutableListModel faces = SharedListModels.getInstance()
+                                                             .getFaceModel(familyName);
+            set(familyName,
+                faces.getSize() == 0 ? "" : faces.getElementAt(0), //$NON-NLS-1$
+                Font.PLAIN,
+                Integer.parseInt(SharedListModels.SIZE_MODEL.getElementAt(0)));
+        }
+
+        /**
+         * @param listener
+         *            told after each change, in the order added, with this as the source
+         */
+        public void addChangeListener(final ChangeListener listener) {
+            final ChangeListener[] listeners = Arrays.copyOf(mListeners, mListeners.length + 1);
+            listeners[mListeners.length] = listener;
+            mListeners = listeners;
+        }
+
+        public void removeChangeListener(final ChangeListener listener) {
+            final List<ChangeListener> listeners = new ArrayList<>(Arrays.asList(mListeners));
+            listeners.remove(listener);
+            mListeners = listeners.toArray(new ChangeListener[listeners.size()]);
+        }
+
+        /**
+         * @return number of changes so far, for tests
+         */
+        int getChangeCount() {
+            return mChanges;
+        }
+    }
+
+    /**
+     * The lists, size controls, and preview of the chooser as a component of its own, to dock in a
+     * side panel instead of showing a modal dialog. {@link FontChooserDialog} shows one.
+     * <p>
+     * Creating a panel only selects a font. Its components are built when it is first added to a
+     * displayable container, and the size slider and filter JComboBox when they are first shown,
+     * see {@link #setSizeSliderVisible(boolean)}. All panels share the {@link FontRegistry} catalog
+     * and the {@link SharedListModels}, so another panel only costs its components.
+     * <p>
+     * <b>Example</b> <pre>{@code
+           final FontChooserPanel chooser = new FontChooserPanel(editor.getFont());
+           chooser.setSizeSliderVisible(false);
+           chooser.getSelection()
+                  .addChangeListener(event -> editor.setFont(chooser.getSelectedFont()));
+           sidePanel.add(chooser, BorderLayout.CENTER);
+         }</pre>
+     */
+    public static class FontChooserPanel
+        extends
+            JPanel {
+
+        private static final long        serialVersionUID    = 1L;
+        public static final String       NAME                = "fontChooserPanel"; //$NON-NLS-1$ AspectJ name
+
+        private final SelectionModel     mSelection          = new SelectionModel();
+        private final SelectionPublisher mSelectionPublisher = //
+                new SelectionPublisher(ForkJoinPool.commonPool());
+        private boolean                  mSliderVisible      = true;
+        private boolean                  mFiltersVisible     = true;
+        @Nullable
+        private SettingsPanel            mSettingsPanel;
+        @Nullable
+        private PreviewPanel             mPreviewPanel;
+
+        /**
+         * Create with the first item of each list (family, font, style, size) selected.
+         */
+        public FontChooserPanel() {
+            this(null);
+        }
+
+        /**
+         * @param selectedFont
+         *            the initially selected font. If null then select first of each list.
+         */
+        public FontChooserPanel(@Nullable final Font selectedFont) {
+            super();
+            setName(NAME);
+            setLayout(new BorderLayout());
+            if (selectedFont == null) {
+                selectFirst();
+            } else {
+                setSelectedFont(selectedFont);
+            }
+        }
+
+        @Override
+        public void addNotify() {
+            super.addNotify();
+            build();
+        }
+
+        /**
+         * Build the lists and preview, the first time only.
+         */
+        private void build() {
+            if (mSettingsPanel == null) {
+                mPreviewPanel = new PreviewPanel(this::getSelectedFont, mSelectionPublisher);
+                mSettingsPanel = new SettingsPanel(mPreviewPanel, mSelection);
+                mSettingsPanel.setSizeSliderVisible(mSliderVisible);
+                mSettingsPanel.setFiltersVisible(mFiltersVisible);
+                add(mSettingsPanel, BorderLayout.CENTER);
+                add(mPreviewPanel, BorderLayout.SOUTH);
+                revalidate();
+            }
+        }
+
+        /**
+         * @return true once the components are built, for tests
+         */
+        boolean isBuilt() {
+            return mSettingsPanel != null;
+        }
+
+        /**
+         * @return the selected font
+         * @throws IllegalArgumentException
+         *             the family or font is no longer in the registry
+         */
+        public Font getSelectedFont() throws IllegalArgumentException {
+            return mSelection.getFont();
+        }
+
+        public void setSelectedFont(final Font font) {
+            mSelection.setFont(font);
+        }
+
+        /**
+         * @return the selection the components show, to listen to as it changes on the EDT
+         */
+        public SelectionModel getSelection() {
+            return mSelection;
+        }
+
+        /**
+         * @return publisher of the selected font, see
+         *         {@link FontChooserDialog#getSelectionPublisher()}
+         */
+        public SelectionPublisher getSelectionPublisher() {
+            return mSelectionPublisher;
+        }
+
+        /**
+         * Select the first item of each list, as a newly created panel has.
+         */
+        void selectFirst() {
+            if (mSettingsPanel != null) {
+                mSettingsPanel.selectFirst();
+            } else {
+                mSelection.selectFirst(SharedListModels.getInstance()
+                                                       .getFamilyModel(SharedListModels.ALL));
+            }
+        }
+
+        /**
+         * Reload the filter names, see {@link SettingsPanel#resetFilters()}.
+         */
+        void resetFilters() {
+            if (mSettingsPanel != null) {
+                mSettingsPanel.resetFilters();
+            } // else read when built
+        }
+
+        /**
+         * Show or hide the size slider, which is built when first shown. Hiding it leaves the
+         * size list and text field for a narrow panel.
+         *
+         * @param visible
+         *            true to show the slider
+         */
+        public void setSizeSliderVisible(final boolean visible) {
+            mSliderVisible = visible;
+            if (mSettingsPanel != null) {
+                mSettingsPanel.setSizeSliderVisible(visible);
+            }
+        }
+
+        public boolean isSizeSliderVisible() {
+            return mSliderVisible;
+        }
+
+        /**
+         * Show or hide the filter JComboBox, which is built when first shown.
+         *
+         * @param visible
+         *            true to show the filters
+         */
+        public void setFiltersVisible(final boolean visible) {
+            mFiltersVisible = visible;
+            if (mSettingsPanel != null) {
+                mSettingsPanel.setFiltersVisible(visible);
+            }
+        }
+
+        public boolean isFiltersVisible() {
+            return mFiltersVisible;
+        }
+
+        /**
+         * @param text
+         *            sample text, or null for the one line preview
+         * @see FontChooserDialog#setPreviewDocument(String)
+         */
+        public void setPreviewDocument(@Nullable final String text) {
+            build();
+            mPreviewPanel.setDocument(text);
+        }
+
+        /**
+         * @param visible
+         *            true to show the similar families
+         * @see FontChooserDialog#setSimilarVisible(boolean)
+         */
+        public void setSimilarVisible(final boolean visible) {
+            build();
+            mSettingsPanel.setSimilarVisible(visible);
+        }
+
+        public boolean isSimilarVisible() {
+            return mSettingsPanel != null && mSettingsPanel.isSimilarVisible();
+        }
+
+        /**
+         * @param visible
+         *            true to show the waterfall
+         * @see FontChooserDialog#setWaterfallVisible(boolean)
+         */
+        public void setWaterfallVisible(final boolean visible) {
+            build();
+            mPreviewPanel.setWaterfallVisible(visible);
+        }
+
+        public boolean isWaterfallVisible() {
+            return mPreviewPanel != null && mPreviewPanel.isWaterfallVisible();
+        }
+    }
+
+    /**
+     * Holds the place of a component that is built the first time the holder is both displayable
+     * and visible.
+     */
+    static final class DeferredComponent
+        extends
+            JPanel {
+
+        private static final long                     serialVersionUID = 1L;
+
+        @Nullable
+        private transient Supplier<? extends JComponent> mFactory;
+        @Nullable
+        private JComponent                            mComponent;
+
+        /**
+         * @param factory
+         *            builds the component, on the EDT
+         */
+        DeferredComponent(final Supplier<? extends JComponent> factory) {
+            super();
+            setLayout(new BorderLayout());
+            setOpaque(false);
+            mFactory = factory;
+        }
+
+        @Override
+        public void addNotify() {
+            super.addNotify();
+            if (isVisible()) {
+                build();
+            }
+        }
+
+        @Override
+        public void setVisible(final boolean visible) {
+            super.setVisible(visible);
+            if (visible && isDisplayable()) {
+                build();
+            }
+        }
+
+        /**
+         * @return the component, or null if not built yet
+         */
+        @Nullable
+        JComponent getComponent() {
+            return mComponent;
+        }
+
+        private void build() {
+            if (mComponent == null && mFactory != null) {
+                mComponent = mFactory.get();
+                mFactory = null;
+                add(mComponent, BorderLayout.CENTER);
+                revalidate();
+            }
+        }
+    }
+
+    /**
+     * The area of the dialog with the lists of font families, fonts, styles, sizes, size text
+     * field, size slider and filter JComboBox. The components show the values of one
+     * {@link SelectionModel} and user actions on them set it.
+     */
+    static class SettingsPanel
+        extends
+            JPanel {
+
+        private static final long       serialVersionUID = 1L;
+        public static final String      FILTER_NAME      = "filterSelection"; // AspectJ name
+        public static final String      SIMILAR_NAME     = "similarFamilies"; //$NON-NLS-1$ AspectJ name
+        /** Similar families shown. */
+        static final int                SIMILAR_COUNT    = 5;
+
+        private final FontFamilyList    mFontFamilyList;
+        private final FontList          mFontList;
+        private final FontStyleList     mFontStyleList;
+        private final FontSizeList      mFontSizeList;
+        private final FontSizeText      mFontSizeText;
+        private final DeferredComponent mSliderHolder;
+        private final DeferredComponent mFilterHolder;
+        private final SelectionModel    mSelection;
+        @Nullable
+        private FontSizeSlider          mFontSizeSlider;
+        @Nullable
+        private JComboBox<String>       mComboBox;
+        private final FamilyPrefetcher  mPrefetcher      = new FamilyPrefetcher();
+        private final Box               mFamilyBox       = Box.createVerticalBox();
+        private JList<String>           mSimilarList;
+        private JPanel                  mSimilarPanel;
+        private String                  mSimilarFamily;  // family the similar list is for
+
+        /**
+         * @param previewPanel
+         *            listener for updating the sample text as inputs are changed
+         */
+        public SettingsPanel(final PreviewPanel previewPanel) {
+            this(previewPanel, new SelectionModel());
+        }
+
+        /**
+         * @param previewPanel
+         *            listener for updating the sample text as inputs are changed
+         * @param selection
+         *            selection to show and set, the first of each list if nothing is selected
+         */
+        SettingsPanel(final PreviewPanel previewPanel, final SelectionModel selection) {
+            super();
+            mSelection = selection;
+            setLayout(new BorderLayout());
+            mFontFamilyList = new FontFamilyList();
+            mFontList = new FontList();
+            mFontList.setPreferredSize(new Dimension(
+                    ((int) (mFontFamilyList.getPreferredSize().width * 0.6)),
+                    mFontFamilyList.getPreferredSize().height));
+            mFontStyleList = new FontStyleList();
+            mFontSizeList = new FontSizeList();
+            mFontSizeText = new FontSizeText();
+            mSliderHolder = new DeferredComponent(this::createSlider);
+            mFilterHolder = new DeferredComponent(this::createFilters);
+
+            // the components show the selection
+            final ChangeListener[] components = {mFontFamilyList, mFontList, mFontStyleList,
+                    mFontSizeList, mFontSizeText};
+            for (final ChangeListener component : components) {
+                mSelection.addChangeListener(component);
+            }
+            final boolean selected = !mSelection.getFamilyName().isEmpty();
+            if (!selected) {
+                selectFirst();
+            } else {
+                for (final ChangeListener component : components) {
+                    component.stateChanged(new ChangeEvent(mSelection));
+                }
+            }
+            // the preview from the next change, its supplier may need this panel
+            mSelection.addChangeListener(previewPanel);
+            if (selected) {
+                previewPanel.stateChanged(new ChangeEvent(mSelection));
+            }
+            mSelection.addChangeListener(new ChangeListener() {
+                @Override
+                public void stateChanged(final ChangeEvent event) {
+                    final int index = mFontFamilyList.getSelectedIndex();
+                    if (index != -1) {
+                        mPrefetcher.selectionMoved(mFontFamilyList.getModel(),
+                                                   index,
+                                                   mSelection.getFontName(),
+                                                   mSelection.getStyle(),
+                                                   mSelection.getSize(),
+                                                   previewPanel.getPreviewText());
+                    }
+                    if (mSimilarList != null
+                            && !mSelection.getFamilyName().equals(mSimilarFamily)) {
+                        showSimilar();
+                    }
+                }
+            });
+
+            // and user actions on them only set it
+            mFontFamilyList.addListSelectionListener(event -> {
+                final String familyName = mFontFamilyList.getSelectedValue();
+                if (familyName != null) {
+                    mSelection.setFamilyName(familyName);
+                }
+            });
+            mFontList.addListSelectionListener(event -> {
+                final String fontName = mFontList.getSelectedValue();
+                if (fontName != null) {
+                    mSelection.setFontName(fontName);
+                }
+            });
+            mFontStyleList.addListSelectionListener(event -> {
+                final String styleName = mFontStyleList.getSelectedValue();
+                if (styleName != null) {
+                    mSelection.setStyle(FontStyle.fromName(styleName).get().getStyle());
+                }
+            });
+            mFontSizeList.addListSelectionListener(event -> {
+                final String sizeName = mFontSizeList.getSelectedValue();
+                if (sizeName != null) {
+                    mSelection.setSize(mFontSizeList.getFontSize());
+                }
+            });
+            // the size typed is used when leaving the field or on Enter
+            mFontSizeText.addFocusListener(new FocusListener() {
+                @Override
+                public void focusGained(final FocusEvent event) {
+                    // do nothing
+                }
+
+                @Override
+                public void focusLost(final FocusEvent event) {
+                    setTypedSize();
+                }
+            });
+            mFontSizeText.addActionListener(event -> setTypedSize());
+
+            // Family name
+            final Box familyBox = mFamilyBox;
+            familyBox.add(Box.createVerticalStrut(10));
+            final JLabel familyNameLabel = new JLabel(STR_FAMILY);
+            familyBox.add(familyNameLabel);
+            // mFontFamilyList.addListSelectionListener(listener);
+            final JScrollPane familyPane = new JScrollPane(mFontFamilyList);
+            familyBox.add(familyPane);
+            familyBox.add(Box.createVerticalStrut(10));
+
+            // Font name
+            final Box fontBox = Box.createVerticalBox();
+            fontBox.add(Box.createVerticalStrut(10));
+            final JLabel fontNameLabel = new JLabel(STR_FONT);
+            fontBox.add(fontNameLabel);
+            final JScrollPane fontPane = new JScrollPane(mFontList);
+            fontBox.add(fontPane);
+            fontBox.add(Box.createVerticalStrut(10));
+
+            // Font style
+            final Box styleBox = Box.createVerticalBox();
+            styleBox.add(Box.createVerticalStrut(10));
+            final JLabel fontStyleLabel = new JLabel(STR_STYLE);
+            styleBox.add(fontStyleLabel);
+            final JScrollPane stylePane = new JScrollPane(mFontStyleList);
+            styleBox.add(stylePane);
+            styleBox.add(Box.createVerticalStrut(10));
+
+            // Font size (size list, size text, and size slider)
+            final Box sizeBox = Box.createVerticalBox();
+            sizeBox.add(Box.createVerticalStrut(10));
+            final JLabel fontSizeLabel = new JLabel(STR_SIZE);
+            sizeBox.add(fontSizeLabel);
+            final JPanel tempPane = new JPanel();
+            tempPane.setLayout(new BorderLayout());
+            tempPane.add(mFontSizeText, BorderLayout.NORTH);
+            tempPane.add(mSliderHolder, BorderLayout.EAST);
+            final JScrollPane sizePane = new JScrollPane(mFontSizeList);
+            tempPane.add(sizePane, BorderLayout.CENTER);
+            sizeBox.add(tempPane);
+            sizeBox.add(Box.createVerticalStrut(10));
+
+            // filter comboBox
+            final JPanel filterNames = new JPanel();
+            filterNames.setLayout(new BorderLayout());
+            filterNames.add(mFilterHolder, BorderLayout.WEST);
+            filterNames.setBorder(BorderFactory.createEmptyBorder(5, 0, 10, 0));
+
+            final Box mainBox = Box.createHorizontalBox();
+            mainBox.add(Box.createHorizontalStrut(10)); // space between
+            mainBox.add(familyBox);
+            mainBox.add(Box.createHorizontalStrut(10));
+            mainBox.add(fontBox);
+            mainBox.add(Box.createHorizontalStrut(10));
+            mainBox.add(styleBox);
+            mainBox.add(Box.createHorizontalStrut(10));
+            mainBox.add(sizeBox);
+            mainBox.add(Box.createHorizontalStrut(10));
+
+            add(mainBox, BorderLayout.CENTER);
+            add(filterNames, BorderLayout.SOUTH);
+        }
+
+        /**
+         * @return the size slider, showing and setting the selected size
+         */
+        private FontSizeSlider createSlider() {
+            final FontSizeSlider slider = new FontSizeSlider();
+            mSelection.addChangeListener(slider);
+            slider.stateChanged(new ChangeEvent(mSelection));
+            slider.addChangeListener(event -> {
+                if (!slider.isShowingSelection()) { // not the value clamped to the range
+                    mSelection.setSize(slider.getValue());
+                }
+            });
+            mFontSizeSlider = slider;
+            return slider;
+        }
+
+        /**
+         * @return the filter JComboBox, showing the families of the selected filter
+         */
+        private JComboBox<String> createFilters() {
+            FilterRegistry.processCollections();
+            final JComboBox<String> comboBox = FilterRegistry.getInstance().getComboBox();
+            comboBox.setName(FILTER_NAME);
+            comboBox.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(final ActionEvent event) {
+                    final String selectedName = (String) comboBox.getSelectedItem();
+                    mFontFamilyList.setFamilyNames(FilterRegistry.getInstance()
+                                                                 .getByName(selectedName));
+                }
+            });
+            mComboBox = comboBox;
+            return comboBox;
+        }
+
+        /**
+         * Show or hide the size slider, built when first shown.
+         *
+         * @param visible
+         *            true to show the slider
+         */
+        public void setSizeSliderVisible(final boolean visible) {
+            mSliderHolder.setVisible(visible);
+        }
+
+        public boolean isSizeSliderVisible() {
+            return mSliderHolder.isVisible();
+        }
+
+        /**
+         * Show or hide the filter JComboBox, built when first shown. The families of the filter
+         * selected are still listed while it is hidden.
+         *
+         * @param visible
+         *            true to show the filters
+         */
+        public void setFiltersVisible(final boolean visible) {
+            mFilterHolder.setVisible(visible);
+        }
+
+        public boolean isFiltersVisible() {
+            return mFilterHolder.isVisible();
+        }
+
+        /**
+         * @return Returns the selected font, derived from the user's list choices.
+         */
+        public Font getSelectedFont() {
+            return mSelection.getFont();
+        }
+
+        /**
+         * @return the selection the components show
+         */
+        public SelectionModel getSelection() {
+            return mSelection;
+        }
+
+        /**
+         * Set all lists and text to match this font.
+         *
+         * @param font
+         *            font to set dialog with
+         */
+        public void setSelectedFont(final Font font) {
+            mSelection.setFont(font);
+        }
+
+        /**
+         * Show or hide the families most like the selected one below the family list. Selecting
+         * one selects it in the family list, with the first filter if the current one does not
+         * list it.
+         *
+         * @param visible
+         *            true to show the similar families
+         */
+        public void setSimilarVisible(final boolean visible) {
+            if (visible && mSimilarList == null) {
+                mSimilarList = new JList<>();
+                mSimilarList.setName(SIMILAR_NAME);
+                mSimilarList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+                mSimilarList.setVisibleRowCount(SIMILAR_COUNT);
+                mSimilarList.addListSelectionListener(new ListSelectionListener() {
+                    @Override
+                    public void valueChanged(final ListSelectionEvent event) {
+                        final String familyName = mSimilarList.getSelectedValue();
+                        if (!event.getValueIsAdjusting() && familyName != null) {
+                            // not while the list notifies, as selecting replaces its items
+                            SwingUtilities.invokeLater(() -> selectFamily(familyName));
+                        }
+                    }
+                });
+                mSimilarPanel = new JPanel(new BorderLayout());
+                mSimilarPanel.add(new JLabel(STR_SIMILAR), BorderLayout.NORTH);
+                mSimilarPanel.add(new JScrollPane(mSimilarList), BorderLayout.CENTER);
+                mFamilyBox.add(mSimilarPanel, mFamilyBox.getComponentCount() - 1);
+                showSimilar();
+            } else if (!visible && mSimilarList != null) {
+                mFamilyBox.remove(mSimilarPanel);
+                mSimilarList = null;
+                mSimilarPanel = null;
+            }
+            revalidate();
+        }
+
+        public boolean isSimilarVisible() {
+            return mSimilarList != null;
+        }
+
+        /**
+         * @return the families shown as similar, for tests
+         */
+        List<String> getSimilarFamilies() {
+            final List<String> result = new ArrayList<>();
+            for (int i = 0; mSimilarList != null && i < mSimilarList.getModel().getSize(); i++) {
+                result.add(mSimilarList.getModel().getElementAt(i));
+            }
+            return result;
+        }
+
+        private void showSimilar() {
+            final String familyName = mSelection.getFamilyName();
+            mSimilarFamily = familyName;
+            if (mSimilarList == null) {
+                return;
+            }
+            final SimilarityIndex index = SimilarityIndex.getInstance();
+            final List<String> similar = index.getSimilarFamilies(familyName, SIMILAR_COUNT);
+            mSimilarList.setListData(similar.toArray(new String[similar.size()]));
+            final CompletableFuture<Void> update = index.getUpdate();
+            if (similar.isEmpty() && !update.isDone()) {
+                update.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+                    if (familyName.equals(mSelection.getFamilyName())) {
+                        showSimilar();
+                    }
+                }));
+            }
+        }
+
+        private void selectFamily(final String familyName) {
+            if (mFontFamilyList.getNames().indexOf(familyName) == -1) {
+                if (mComboBox != null) {
+                    mComboBox.setSelectedIndex(0); // keeps the selected family
+                } else {
+                    final FilterRegistry filters = FilterRegistry.getInstance();
+                    mFontFamilyList.setFamilyNames(filters.getByName(filters.getFilterNames()[0]));
+                }
+            }
+            mSelection.setFamilyName(familyName);
+        }
+
+        /**
+         * Select the first item of each list, as a newly created panel has.
+         */
+        public void selectFirst() {
+            mSelection.selectFirst(mFontFamilyList.getModel());
+            mFontFamilyList.ensureIndexIsVisible(0);
+            mFontList.ensureIndexIsVisible(0);
+            mFontSizeList.ensureIndexIsVisible(0);
+        }
+
+        /**
+         * Select the size typed, or show the selected size again if it is not a number.
+         */
+        private void setTypedSize() {
+            try {
+                mSelection.setSize(mFontSizeText.getTextSize());
+            } catch (final NumberFormatException error) {
+                mFontSizeText.stateChanged(new ChangeEvent(mSelection));
+            }
+        }
+
+        /**
+         * Reload the filter names, to pick up filters added since the panel was created, and show
+         * the family names of the first filter.
+         */
+        public void resetFilters() {
+            final FilterRegistry registry = FilterRegistry.getInstance();
+            final String[] names = registry.getFilterNames();
+            if (mComboBox != null) {
+                mComboBox.setModel(new DefaultComboBoxModel<>(names));
+                mComboBox.setMaximumRowCount(registry.size());
+            }
+            mFontFamilyList.setFamilyNames(registry.getByName(mComboBox == null
+                    ? names[0]
+                    : (String) mComboBox.getSelectedItem()));
+        }
+    }
+
+    /**
+     * List of all installed font families or subset based on selected filter.
+     */
+    public static class FontFamilyList
+        extends
+            AbstractJList
+        implements
+            ChangeListener,
+            RegistryListener {
+
+        private static final long     serialVersionUID = 1L;
+        public static final String    NAME             = "fontFamilyName"; //$NON-NLS-1$ AspectJ name
+
+        private final FamilyListModel mModel;
+        private Predicate<String>     mFilter          = SharedListModels.ALL;
+        private boolean               mPainted;
+
+        public FontFamilyList() {
+            this(new FamilyListModel(SharedListModels.getInstance()
+                                                     .getFamilyModel(SharedListModels.ALL)));
+        }
+
+        private FontFamilyList(final FamilyListModel model) {
+            super(model, model.getNames());
+            mModel = model;
+            setName(NAME);
+            FontRegistry.getInstance().addListener(this);
+        }
+
+        public String getFamilyName() {
+            final String name = getSelectedValue();
+            return name;
+        }
+
+        /**
+         * The first paint lets a lazy registry read the fonts it could not find, see
+         * {@link FontRegistry#loadAllFontsLater()}.
+         */
+        @Override
+        protected void paintComponent(final Graphics graphics) {
+            super.paintComponent(graphics);
+            if (!mPainted) {
+                mPainted = true;
+                FontRegistry.getInstance().loadAllFontsLater();
+            }
+        }
+
+        /**
+         * @return the shared names shown, for the active filter
+         */
+        ImmutableListModel getNames() {
+            return mModel.getNames();
+        }
+
+        /**
+         * Show the family of the selection, if the filter lists it.
+         *
+         * @param event
+         *            from the {@link SelectionModel}
+         */
+        @Override
+        public void stateChanged(final ChangeEvent event) {
+            final String familyName = ((SelectionModel) event.getSource()).getFamilyName();
+            if (!familyName.equals(getSelectedValue())) {
+                setSelectedValue(familyName, true);
+            }
+        }
+
+        public void setFamilyNames(final Predicate<String> filter) {
+            final String selection = getSelectedValue();
+            if (filter instanceof AbstractFontFilter) {
+                ((AbstractFontFilter) filter).prepare();
+            }
+            mFilter = filter;
+            clearSelection();
+            mModel.setNames(SharedListModels.getInstance().getFamilyModel(filter));
+            if (selection == null) {
+                setSelectedIndex(0);
+                ensureIndexIsVisible(0);
+            } else {
+                setSelectedValue(selection, true);
+                if (getSelectedIndex() == -1) {
+                    setSelectedIndex(0);
+                    ensureIndexIsVisible(0);
+                }
+            }
+        }
+
+        /**
+         * Move to the names of the active filter in the changed registry. Only the families added
+         * or removed are reported to the list, so the selection and scroll position are kept.
+         *
+         * @param change
+         *            the change
+         */
+        @Override
+        public void registryChanged(final RegistryChange change) {
+            if (change.isOrderChanged()) {
+                setFamilyNames(mFilter);
+                return;
+            }
+            final boolean selected = !isSelectionEmpty();
+            mModel.update(SharedListModels.getInstance().getFamilyModel(mFilter));
+            if (selected && isSelectionEmpty() && mModel.getSize() > 0) {
+                setSelectedIndex(0);
+                ensureIndexIsVisible(0);
+            }
+        }
+    }
+
+    /**
+     * List of all installed fonts or subset based on selected filter.
+     */
+    public static class FontList
+        extends
+            AbstractJList
+        implements
+            ChangeListener,
+            RegistryListener {
+
+        private static final long  serialVersionUID = 1L;
+        public static final String NAME             = "fontName"; //$NON-NLS-1$ AspectJ name
+
+        private String             mFamilyName      = "Courier";  //$NON-NLS-1$
+
+        public FontList() {
+            super(SharedListModels.getInstance().getFaceModel("Courier")); //$NON-NLS-1$
+            setName(FontList.NAME);
+            FontRegistry.getInstance().addListener(this);
+        }
+
+        public String getFontName() throws IllegalArgumentException {
+            final String result = getSelectedValue();
+            if (result == null) {
+                throw new IllegalArgumentException();
+            }
+            return result;
+        }
+
+        public void setFontNames(final String familyName) {
+            final String selection = getSelectedValue();
+            mFamilyName = familyName;
+            setModel(SharedListModels.getInstance().getFaceModel(familyName));
+            if (selection == null) {
+                setSelectedIndex(0);
+                ensureIndexIsVisible(0);
+            } else {
+                setSelectedValue(selection, true);
+                if (getSelectedIndex() == -1) {
+                    setSelectedIndex(0);
+                    ensureIndexIsVisible(0);
+                }
+            }
+        }
+
+        /**
+         * Show the fonts of the family of the selection, and the font selected.
+         *
+         * @param event
+         *            from the {@link SelectionModel}
+         */
+        @Override
+        public void stateChanged(final ChangeEvent event) {
+            final SelectionModel selection = (SelectionModel) event.getSource();
+            if (!selection.getFamilyName().equals(mFamilyName)) {
+                mFamilyName = selection.getFamilyName();
+                setModel(SharedListModels.getInstance().getFaceModel(mFamilyName));
+            }
+            if (!selection.getFontName().equals(getSelectedValue())) {
+                setSelectedValue(selection.getFontName(), true);
+            }
+        }
+
+        /**
+         * Reload the font names if fonts of the family shown were added or removed.
+         *
+         * @param change
+         *            the change
+         */
+        @Override
+        public void registryChanged(final RegistryChange change) {
+            if (change.getChangedFamilies().contains(mFamilyName)) {
+                setFontNames(mFamilyName);
+            }
+        }
+    }
+
+    /**
+     * Warms, in the background, what the next families in the direction the selection moves
+     * through the family list will need: the face list, the font the selected face, style and size
+     * resolve to, and the glyphs of the preview text. At most {@link #AHEAD} families ahead of the
+     * selection are queued. Work queued for one direction, or for another face, style, size or
+     * text, is dropped when that changes or the selection jumps, and families the selection has
+     * passed are skipped.
+     */
+    static final class FamilyPrefetcher {
+
+        /** Families ahead of the selection to warm. */
+        static final int           AHEAD         = 6;
+        /** Size of the preview text field, to draw the glyphs it would show. */
+        private static final int   RENDER_WIDTH  = 500;
+        private static final int   RENDER_HEIGHT = 100;
+
+        private final AtomicInteger mGeneration  = new AtomicInteger();
+        private final AtomicInteger mWarmed      = new AtomicInteger();
+        private volatile int       mIndex        = -1; // selected family
+        private int                mDirection    = 1;  // EDT only, 1 down the list, -1 up
+        private int                mQueued       = -1; // EDT only, furthest family queued
+        @Nullable
+        private String             mFontName;          // EDT only, the template of the queued work
+        private int                mStyle;
+        private int                mSize;
+        @Nullable
+        private String             mText;
+        @Nullable
+        private BufferedImage      mImage;             // prefetch thread only
+
+        /**
+         * The selection moved to a family; queue the families ahead of it not yet queued.
+         *
+         * @param families
+         *            families in display order
+         * @param index
+         *            index of the selected family
+         * @param fontName
+         *            stripped name of the selected face, kept in the next family if it has it
+         * @param style
+         *            selected style
+         * @param size
+         *            selected size
+         * @param text
+         *            preview text
+         */
+        void selectionMoved(final ListModel<String> families,
+                            final int index,
+                            final String fontName,
+                            final int style,
+                            final int size,
+                            final String text) {
+            final int previous = mIndex;
+            final int step = Integer.signum(index - previous);
+            mIndex = index;
+            if (previous == -1 || Math.abs(index - previous) > AHEAD
+                    || (step != 0 && step != mDirection) || !fontName.equals(mFontName)
+                    || style != mStyle || size != mSize || !text.equals(mText)) {
+                mGeneration.incrementAndGet(); // drop the work queued so far
+                mDirection = step != 0 ? step : mDirection;
+                mQueued = index;
+                mFontName = fontName;
+                mStyle = style;
+                mSize = size;
+                mText = text;
+            }
+            final int generation = mGeneration.get();
+            final int direction = mDirection;
+            final int end = direction > 0
+                    ? Math.min(families.getSize() - 1, index + AHEAD)
+                    : Math.max(0, index - AHEAD);
+            for (int i = mQueued + direction; (end - i) * direction >= 0; i += direction) {
+                final int familyIndex = i;
+                final String familyName = families.getElementAt(i);
+                FontRegistry.getInstance()
+                            .prefetch(() -> warm(generation,
+                                                 direction,
+                                                 familyIndex,
+                                                 familyName,
+                                                 fontName,
+                                                 style,
+                                                 size,
+                                                 text));
+                mQueued = i;
+            }
+        }
+
+        /**
+         * @return number of families warmed, for tests
+         */
+        int getWarmedCount() {
+            return mWarmed.get();
+        }
+
+        /**
+         * Warm one family, unless the work was dropped or the selection is already there.
+         */
+        private void warm(final int generation,
+                          final int direction,
+                          final int index,
+                          final String familyName,
+                          final String fontName,
+                          final int style,
+                          final int size,
+                          final String text) {
+            if (!isAhead(generation, direction, index)) {
+                return;
+            }
+            final ImmutableListModel faces = SharedListModels.getInstance()
+                                                             .getFaceModel(familyName);
+            if (faces.getSize() == 0 || !isAhead(generation, direction, index)) {
+                return;
+            }
+            String face = faces.getElementAt(0); // as FontList.setFontNames selects
+            for (int i = 0; i < faces.getSize(); i++) {
+                if (faces.getElementAt(i).equals(fontName)) {
+                    face = fontName;
+                    break;
+                }
+            }
+            final Font font;
+            try {
+                font = FontRegistry.getInstance().getFont(familyName, face, style, size);
+            } catch (final IllegalArgumentException error) {
+                return; // removed from the registry meanwhile
+            }
+            if (!isAhead(generation, direction, index)) {
+                return;
+            }
+            if (mImage == null) {
+                mImage = new BufferedImage(RENDER_WIDTH,
+                                           RENDER_HEIGHT,
+                                           BufferedImage.TYPE_INT_ARGB);
+            }
+            final Graphics2D graphics = mImage.createGraphics();
+            try {
+                GlyphWarmer.setDesktopHints(graphics); // as the text field renders
+                graphics.setFont(font);
+                graphics.drawString(text, 0, RENDER_HEIGHT / 2);
+            } finally {
+                graphics.dispose();
+            }
+            mWarmed.incrementAndGet();
+        }
+
+        private boolean isAhead(final int generation, final int direction, final int index) {
+            return generation == mGeneration.get() && (index - mIndex) * direction > 0;
+        }
+    }
+
+    /**
+     * List of all installed font styles.
      */
     static class FontStyleList
         extends
-            AbstractJList {
+            AbstractJList
+        implements
+            ChangeListener {
+
+        private static final long  serialVersionUID = 1L;
+        public static final String NAME             = "styleName"; //$NON-NLS-1$ AspectJ name
+
+        public FontStyleList() {
+            super(SharedListModels.STYLE_MODEL);
+            setName(NAME);
+            setSelectedIndex(0);
+            setVisibleRowCount(5);
+        }
+
+        public int getFontStyle() {
+            return FontStyle.fromName(getSelectedValue()).get().getStyle();
+        }
+
+        /**
+         * Show the style of the selection.
+         *
+         * @param event
+         *            from the {@link SelectionModel}
+         */
+        @Override
+        public void stateChanged(final ChangeEvent event) {
+            final int style = ((SelectionModel) event.getSource()).getStyle();
+            final String name = FontStyle.fromInt(style).map(FontStyle::getName).orElse(null);
+            if (name == null) {
+                clearSelection();
+            } else if (!name.equals(getSelectedValue())) {
+                setSelectedValue(name, true);
+            }
+        }
+    }
+
+    /**
+     * List of all installed font sizes based upon FontChooserDialog.size_list in .properties file.
+     */
+    public static class FontSizeList
+        extends
+            AbstractJList
+        implements
+            ChangeListener {
+
+        private static final long     serialVersionUID = 1L;
+        public static final String    NAME             = "sizeName"; //$NON-NLS-1$ AspectJ name
+
+        private static final String[] SIZE_NAMES       = new String[FontSizeSlider.MAX_SIZE + 1];
+        static {
+            for (int size = 0; size < SIZE_NAMES.length; size++) {
+                SIZE_NAMES[size] = String.valueOf(size).intern();
+            }
+        }
+
+        /**
+         * @param size
+         *            font size
+         * @return the size as text, without creating a string for sizes of the slider
+         */
+        static String getSizeName(final int size) {
+            return size >= 0 && size < SIZE_NAMES.length ? SIZE_NAMES[size] : String.valueOf(size);
+        }
+
+        FontSizeList() {
+            super(SharedListModels.SIZE_MODEL);
+            setName(NAME);
+            setSelectedValue(STR_SIZE_DEFAULT, true);
+            setVisibleRowCount(5);
+            final FontMetrics fontMetrics = new JLabel().getFontMetrics(getFont());
+            setPreferredSize(new Dimension(fontMetrics.stringWidth("9999"), //$NON-NLS-1$
+                    getPreferredSize().height));
+        }
+
+        /**
+         * @return the selected font size.
+         */
+        public int getFontSize() throws IllegalArgumentException {
+            try {
+                final int size = Integer.parseInt(getSelectedValue());
+                return size;
+            } catch (final NumberFormatException error) {
+                throw new IllegalArgumentException(error);
+            }
+        }
+
+        /**
+         * Show the size of the selection, or no size if it is not listed.
+         *
+         * @param event
+         *            from the {@link SelectionModel}
+         */
+        @Override
+        public void stateChanged(final ChangeEvent event) {
+            final String name = getSizeName(((SelectionModel) event.getSource()).getSize());
+            if (!name.equals(getSelectedValue())) {
+                setSelectedValue(name, true);
+                if (!name.equals(getSelectedValue())) {
+                    clearSelection();
+                }
+            }
+        }
+    }
+
+    /**
+     * Base class for the font family, font, style, and size list to have a common way to set the
+     * preferred size, initial selection, and visible number of rows.
+     */
+    private abstract static class AbstractJList
+        extends
+            JList<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        public AbstractJList(final ImmutableListModel model) {
+            this(model, model);
+        }
+
+        /**
+         * @param model
+         *            model of the list
+         * @param names
+         *            all names the model may show, for the width of the list
+         */
+        public AbstractJList(final ListModel<String> model, final ImmutableListModel names) {
+            super(model);
+            setSelectedIndex(0);
+            setVisibleRowCount(10);
+            /*
+             * get the max width of all font names so the list will be the same width regardless of
+             * the filtered list.
+             */
+            final int maxWidth = names.getMaxWidth(getFontMetrics(getFont()));
+            setPreferredSize(new Dimension(maxWidth + 20, getPreferredSize().height));
+        }
+    }
+
+    /**
+     * The model of one {@link FontFamilyList}: a view of the shared names for its filter. When the
+     * registry changes it moves to the new shared names and only reports the families removed and
+     * added, rather than the whole list.
+     */
+    static final class FamilyListModel
+        extends
+            AbstractListModel<String> {
+
+        private static final long  serialVersionUID = 1L;
+
+        private ImmutableListModel mNames;
+
+        FamilyListModel(final ImmutableListModel names) {
+            super();
+            mNames = names;
+        }
+
+        ImmutableListModel getNames() {
+            return mNames;
+        }
+
+        @Override
+        public int getSize() {
+            return mNames.getSize();
+        }
+
+        @Override
+        public String getElementAt(final int index) {
+            return mNames.getElementAt(index);
+        }
+
+        /**
+         * Show different names, such as for another filter.
+         *
+         * @param names
+         *            new names
+         */
+        void setNames(final ImmutableListModel names) {
+            final int oldSize = mNames.getSize();
+            mNames = names;
+            if (oldSize > 0) {
+                fireIntervalRemoved(this, 0, oldSize - 1);
+            }
+            if (names.getSize() > 0) {
+                fireIntervalAdded(this, 0, names.getSize() - 1);
+            }
+        }
+
+        /**
+         * Move to the same names after a registry change, firing one event per family removed or
+         * added. Families in both keep their relative order.
+         *
+         * @param names
+         *            new names
+         */
+        void update(final ImmutableListModel names) {
+            final ImmutableListModel old = mNames;
+            if (old == names) {
+                return;
+            }
+            final Set<String> oldNames = new HashSet<>(Arrays.asList(old.mNames));
+            final Set<String> newNames = new HashSet<>(Arrays.asList(names.mNames));
+            mNames = names;
+            // removals from the end, so the indexes of the ones before do not move
+            for (int index = old.getSize() - 1; index >= 0; index--) {
+                if (!newNames.contains(old.getElementAt(index))) {
+                    fireIntervalRemoved(this, index, index);
+                }
+            }
+            // additions from the start, so everything before each one is in place
+            for (int index = 0; index < names.getSize(); index++) {
+                if (!oldNames.contains(names.getElementAt(index))) {
+                    fireIntervalAdded(this, index, index);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read only list model over an array of names. The same instance is shared by every list that
+     * shows the same names, so it never fires events and does not keep the lists that use it as
+     * listeners (which would hold on to every dialog ever created).
+     */
+    static final class ImmutableListModel
+        extends
+            AbstractListModel<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String[]    mNames;
+        private transient Font    mWidthFont;
+        private transient int     mMaxWidth;
+
+        ImmutableListModel(final String[] names) {
+            super();
+            mNames = names;
+        }
+
+        @Override
+        public int getSize() {
+            return mNames.length;
+        }
+
+        @Override
+        public String getElementAt(final int index) {
+            return mNames[index];
+        }
+
+        /**
+         * @param name
+         *            name to find
+         * @return index of the name, or -1 if not listed
+         */
+        int indexOf(final String name) {
+            for (int i = 0; i < mNames.length; i++) {
+                if (mNames[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public void addListDataListener(final ListDataListener listener) {
+            // contents never change, nothing to notify
+        }
+
+        @Override
+        public void removeListDataListener(final ListDataListener listener) {
+            // never added
+        }
+
+        /**
+         * Width of the widest name, remembered for the last font measured with.
+         *
+         * @param fontMetrics
+         *            metrics of the list font
+         * @return max width of all names, 0 if empty
+         */
+        synchronized int getMaxWidth(final FontMetrics fontMetrics) {
+            if (!fontMetrics.getFont().equals(mWidthFont)) {
+                int maxWidth = 0;
+                for (final String name : mNames) {
+                    maxWidth = Math.max(maxWidth, fontMetrics.stringWidth(name));
+                }
+                mMaxWidth = maxWidth;
+                mWidthFont = fontMetrics.getFont();
+            }
+            return mMaxWidth;
+        }
+    }
+
+    /**
+     * Read only list models built once from the {@link FontRegistry} and shared by all open
+     * dialogs. Each list only owns its selection and the active filter, so another open chooser
+     * costs a few objects rather than a copy of every family and font name.
+     */
+    static final class SharedListModels {
+
+        /** Filter used for the unfiltered family list. */
+        static final AbstractFontFilter                        ALL          = new FilterAll();
+
+        static final ImmutableListModel                        STYLE_MODEL  = //
+                new ImmutableListModel(FontStyle.getNames());
+        static final ImmutableListModel                        SIZE_MODEL   = //
+                new ImmutableListModel(STR_SIZE_LIST.split(",", Integer.MAX_VALUE));
+
+        private static SharedListModels                        sInstance;
+
+        private final FontRegistry                             mRegistry;
+        private final FontCatalog                              mCatalog;
+        private final FamilyOrder                              mOrder;
+        private final String[]                                 mFamilyNames;
+        private final Map<Predicate<String>, ImmutableListModel> mFamilyModels = //
+                new ConcurrentHashMap<>();
+        private final Map<String, ImmutableListModel>          mFaceModels  = //
+                new ConcurrentHashMap<>();
+
+        /**
+         * @return the models for the current registry
+         */
+        static synchronized SharedListModels getInstance() {
+            final FontRegistry registry = FontRegistry.getInstance();
+            if (sInstance == null || sInstance.mRegistry != registry
+                    || sInstance.mCatalog != registry.getCatalog()
+                    || sInstance.mOrder != registry.getOrder()) {
+                sInstance = new SharedListModels(registry);
+            }
+            return sInstance;
+        }
+
+        /**
+         * Derive the models for a changed registry from the current ones. Filters are applied to
+         * the added families only, and only the font lists of changed families are dropped.
+         *
+         * @param registry
+         *            registry that changed
+         * @param oldCatalog
+         *            catalog before the change
+         * @param change
+         *            the change
+         */
+        static synchronized void update(final FontRegistry registry,
+                                        final FontCatalog oldCatalog,
+                                        final RegistryChange change) {
+            if (sInstance != null && sInstance.mRegistry == registry
+                    && sInstance.mCatalog == oldCatalog) {
+                sInstance = new SharedListModels(sInstance, registry.getCatalog(), change);
+            }
+        }
+
+        private SharedListModels(final FontRegistry registry) {
+            mRegistry = registry;
+            mCatalog = registry.getCatalog();
+            mOrder = registry.getOrder();
+            mFamilyNames = mOrder.getFamilyNames();
+        }
+
+        private SharedListModels(final SharedListModels old,
+                                 final FontCatalog catalog,
+                                 final RegistryChange change) {
+            mRegistry = old.mRegistry;
+            mCatalog = catalog;
+            mOrder = mRegistry.getOrder();
+            mFamilyNames = mOrder.getFamilyNames();
+            if (mOrder.getLocale().equals(old.mOrder.getLocale())) {
+                old.mFamilyModels.forEach((filter, model) -> {
+                    if (getOrder(filter) == null) { // others are sorted again when next used
+                        mFamilyModels.put(filter,
+                                          new ImmutableListModel(merge(model.mNames,
+                                                                       change,
+                                                                       filter,
+                                                                       mOrder)));
+                    }
+                });
+            }
+            old.mFaceModels.forEach((familyName, model) -> {
+                if (!change.contains(familyName)) {
+                    mFaceModels.put(familyName, model);
+                }
+            });
+        }
+
+        /**
+         * @return names without the removed families and with the added ones the filter accepts,
+         *         placed by their rank in the order
+         */
+        private static String[] merge(final String[] names,
+                                      final RegistryChange change,
+                                      final Predicate<String> filter,
+                                      final FamilyOrder order) {
+            final List<String> result = new ArrayList<>(names.length);
+            for (final String name : names) {
+                if (!change.getRemovedFamilies().contains(name)) {
+                    result.add(name);
+                }
+            }
+            for (final String name : change.getAddedFamilies()) {
+                final int index = Collections.binarySearch(result,
+                                                           name,
+                                                           Comparator.comparingInt(order::getRank));
+                if (index < 0 && filter.test(name)) {
+                    result.add(-index - 1, name);
+                }
+            }
+            return result.toArray(new String[result.size()]);
+        }
+
+        /**
+         * Drop the family lists of a kind of filter, whose families changed without the registry
+         * changing, and tell the lists of the registry, so a list showing such a filter filters
+         * again.
+         *
+         * @param filterClass
+         *            class of the filters
+         */
+        static synchronized void dropFamilyModels(final Class< ? > filterClass) {
+            if (sInstance != null
+                    && sInstance.mFamilyModels.keySet().removeIf(filterClass::isInstance)) {
+                sInstance.mRegistry.fireFiltersChanged();
+            }
+        }
+
+        /**
+         * Get the family names accepted by a filter, in the order of the registry. The names are
+         * already sorted, so filtering keeps their order. Filters are compared with equals(), so
+         * a filter must not change its names after it has been used here.
+         *
+         * @param filter
+         *            filter to apply
+         * @return shared model
+         */
+        ImmutableListModel getFamilyModel(final Predicate<String> filter) {
+            return mFamilyModels.computeIfAbsent(filter, f -> {
+                final Stream<String> names = Arrays.asList(mFamilyNames).stream().filter(f);
+                final Comparator<String> order = getOrder(f);
+                return new ImmutableListModel((order == null ? names : names.sorted(order))
+                        .toArray(String[]::new));
+            });
+        }
+
+        /**
+         * @return order of the filter, null for the order of the registry
+         */
+        @Nullable
+        private static Comparator<String> getOrder(final Predicate<String> filter) {
+            return filter instanceof AbstractFontFilter
+                    ? ((AbstractFontFilter) filter).getOrder()
+                    : null;
+        }
+
+        /**
+         * @param familyName
+         *            family name to look up
+         * @return shared model of the font names of a family, see
+         *         {@link FontRegistry#getFontNames(String)}
+         */
+        ImmutableListModel getFaceModel(final String familyName) {
+            return mFaceModels.computeIfAbsent(familyName,
+                                               f -> new ImmutableListModel(
+                                                       mRegistry.getFontNames(f)));
+        }
+    }
+
+    /**
+     * A text field to type in a new size. When the focus is lost, the font size list and slider
+     * will adjust.
+     */
+    public static class FontSizeText
+        extends
+            JTextField
+        implements
+            ChangeListener,
+            DocumentListener {
+
+        private static final long  serialVersionUID = 1L;
+        public static final String NAME             = "sizeText"; //$NON-NLS-1$ AspectJ name
+
+        // the size last parsed or set, valid until the text is edited
+        private int                mSize;
+        private boolean            mSizeValid;
+
+        public FontSizeText() {
+            setName(NAME);
+        }
+
+        /**
+         * @return the size typed, parsed only after the text changes
+         * @throws NumberFormatException
+         *             the text is not a number
+         */
+        public int getTextSize() {
+            if (!mSizeValid) {
+                mSize = Integer.parseInt(getText());
+                mSizeValid = true;
+            }
+            return mSize;
+        }
+
+        /**
+         * Show a size, if not already shown.
+         */
+        private void setTextSize(final int size, final String text) {
+            if (!mSizeValid || mSize != size) {
+                setText(text);
+                mSize = size;
+                mSizeValid = true;
+            }
+        }
+
+        @Override
+        public void setDocument(final javax.swing.text.Document document) {
+            final javax.swing.text.Document old = getDocument();
+            if (old != null) {
+                old.removeDocumentListener(this);
+            }
+            super.setDocument(document);
+            document.addDocumentListener(this);
+            mSizeValid = false;
+        }
+
+        /**
+         * Show the size of the selection.
+         *
+         * @param event
+         *            from the {@link SelectionModel}
+         */
+        @Override
+        public void stateChanged(final ChangeEvent event) {
+            final int size = ((SelectionModel) event.getSource()).getSize();
+            setTextSize(size, FontSizeList.getSizeName(size));
+        }
+
+        @Override
+        public void insertUpdate(final DocumentEvent event) {
+            mSizeValid = false;
+        }
+
+        @Override
+        public void removeUpdate(final DocumentEvent event) {
+            mSizeValid = false;
+        }
+
+        @Override
+        public void changedUpdate(final DocumentEvent event) {
+            // attributes only
+        }
+    }
+
+    /**
+     * A slider to adjust the font size.
+     */
+    public static class FontSizeSlider
+        extends
+            JSlider
+        implements
+            ChangeListener {
+
+        private static final long  serialVersionUID = 1L;
+        public static final String NAME             = "sizeSzlider"; //$NON-NLS-1$ AspectJ name
+
+        static final int           MAX_SIZE         = 144;
+
+        private boolean            mShowingSelection;
+
+        public FontSizeSlider() {
+            super(SwingConstants.VERTICAL, 0, MAX_SIZE, 50);
+            setName(NAME);
+            setMinorTickSpacing(5);
+            setMajorTickSpacing(20);
+            setPaintTicks(true);
+            setPaintLabels(true);
+
+        }
+
+        /**
+         * Show the size of the selection, as near as the range allows.
+         *
+         * @param event
+         *            from the {@link SelectionModel}
+         */
+        @Override
+        public void stateChanged(final ChangeEvent event) {
+            final int size = ((SelectionModel) event.getSource()).getSize();
+            if (getValue() != size) {
+                mShowingSelection = true;
+                try {
+                    setValue(size);
+                } finally {
+                    mShowingSelection = false;
+                }
+            }
+        }
+
+        /**
+         * @return true while the slider moves to the size selected, rather than by the user
+         */
+        boolean isShowingSelection() {
+            return mShowingSelection;
+        }
+    }
+
+    /**
+     * Display sample text using selected font.
+     */
+    public static class PreviewPanel
+        extends
+            JPanel
+        implements
+            ChangeListener {
+
+        private static final long       serialVersionUID = 1L;
+        public static final String      TEXTFIELD_NAME   = "textField";                //$NON-NLS-1$ AspectJ name
+
+        private final JTextField        mTextField       = new JTextField(STR_PREVIEW);
+        private final Supplier<Font>    mSelectedFont;
+        @Nullable
+        private final SelectionPublisher mPublisher;
+        private final JPanel            mTextPane        = new JPanel();
+        private WaterfallPanel          mWaterfall;
+        private JScrollPane             mWaterfallPane;
+        private DocumentPreview         mDocument;
+        private JScrollPane             mDocumentPane;
+        private int                     mShowCount;
+
+        public PreviewPanel(final FontChooserDialog dialog) {
+            this(dialog::getSelectedFont, dialog.getSelectionPublisher());
+        }
+
+        /**
+         * @param selectedFont
+         *            gives the font selected in the lists, called as they change
+         */
+        public PreviewPanel(final Supplier<Font> selectedFont) {
+            this(selectedFont, null);
+        }
+
+        private PreviewPanel(final Supplier<Font> selectedFont,
+                             @Nullable final SelectionPublisher publisher) {
+            super();
+            mSelectedFont = selectedFont;
+            mPublisher = publisher;
+            setLayout(new BorderLayout());
+
+            mTextField.setName(PreviewPanel.TEXTFIELD_NAME);
+            mTextField.setEditable(true);
+            mTextField.setBackground(Color.WHITE);
+            mTextField.setForeground(Color.BLACK);
+
+            final JScrollPane pane = new JScrollPane(mTextField);
+            pane.setPreferredSize(new Dimension(500, 100));
+
+            mTextPane.setLayout(new FlowLayout());
+            mTextPane.add(pane);
+            add(mTextPane, BorderLayout.NORTH);
+        }
+
+        /**
+         * Show a long sample, such as a chapter, in a multi-line preview instead of the one line
+         * text field.
+         *
+         * @param text
+         *            sample text, or null to show the text field again
+         */
+        public void setDocument(@Nullable final String text) {
+            if (text != null) {
+                if (mDocument == null) {
+                    mDocument = new DocumentPreview();
+                    mDocumentPane = new JScrollPane(mDocument);
+                    mDocumentPane.setPreferredSize(new Dimension(500, 300));
+                    remove(mTextPane);
+                    add(mDocumentPane, BorderLayout.NORTH);
+                }
+                mDocument.setFont(mTextField.getFont());
+                mDocument.setText(text);
+            } else if (mDocument != null) {
+                remove(mDocumentPane);
+                add(mTextPane, BorderLayout.NORTH);
+                mDocument = null;
+                mDocumentPane = null;
+            }
+            revalidate();
+        }
+
+        /**
+         * Show or hide the waterfall of the preview text at every size below the preview.
+         *
+         * @param visible
+         *            true to show
+         */
+        public void setWaterfallVisible(final boolean visible) {
+            if (visible && mWaterfall == null) {
+                mWaterfall = new WaterfallPanel();
+                mWaterfallPane = new JScrollPane(mWaterfall);
+                mWaterfallPane.setPreferredSize(new Dimension(500, 300));
+                mWaterfallPane.setBorder(BorderFactory.createEmptyBorder(0, 5, 5, 5));
+                add(mWaterfallPane, BorderLayout.CENTER);
+                showFont(mTextField.getFont());
+            } else if (!visible && mWaterfall != null) {
+                mWaterfall.cancel();
+                remove(mWaterfallPane);
+                mWaterfall = null;
+                mWaterfallPane = null;
+            }
+            revalidate();
+        }
+
+        public boolean isWaterfallVisible() {
+            return mWaterfall != null;
+        }
+
+        /**
+         * @return the text the preview shows, as edited by the user
+         */
+        String getPreviewText() {
+            return mTextField.getText();
+        }
+
+        /**
+         * Show the selected font.
+         *
+         * @param event
+         *            from the {@link SelectionModel}
+         */
+        @Override
+        public void stateChanged(final ChangeEvent event) {
+            try {
+                showFont(mSelectedFont.get());
+            } catch (final IllegalArgumentException error) {
+                // Ignore
+            }
+        }
+
+        /**
+         * @return number of times a font was shown, for tests
+         */
+        int getShowCount() {
+            return mShowCount;
+        }
+
+        private void showFont(final Font font) {
+            mShowCount++;
+            mTextField.setFont(font);
+            if (mDocument != null) {
+                mDocument.setFont(font);
+            }
+            if (mPublisher != null) {
+                mPublisher.publish(font);
+            }
+            if (mWaterfall != null) {
+                mWaterfall.showFont(font, mTextField.getText());
+            }
+        }
+    }
+
+    /**
+     * A multi-line preview for long samples, such as a whole chapter. The text is split into
+     * paragraphs once, and each paragraph is laid out into {@link TextLayout} lines only when it is
+     * first painted. The lines are kept until the font or the width changes. Paragraphs not laid
+     * out yet have a height estimated from their length, so changing the font of a sample of
+     * megabytes only lays out the paragraphs in view, and keeps the first of them at the top.
+     * Paragraphs longer than {@link #PIECE} characters are laid out in pieces that each start a
+     * line. The sample can be replaced by pasting into the preview.
+     */
+    public static class DocumentPreview
+        extends
+            JComponent
+        implements
+            Scrollable {
+
+        private static final long   serialVersionUID = 1L;
+        public static final String  NAME             = "documentPreview"; //$NON-NLS-1$ AspectJ name
+
+        /** Characters after which a long paragraph is broken at the next white space. */
+        static final int            PIECE            = 2_000;
+        private static final int    INSET            = 5;
+        /** Paragraphs whose lines are kept, beyond which only the lines in view are kept. */
+        private static final int    MAX_LAID_OUT     = 2_000;
+        private static final String PASTE            = "paste"; //$NON-NLS-1$
+
+        private String              mText            = ""; //$NON-NLS-1$
+        private int[]               mStarts          = {
+                                                        0
+        };
+        private int[]               mEnds            = {
+                                                        0
+        };
+        private TextLayout[][]      mLines           = new TextLayout[1][];
+        private float[]             mHeights         = new float[1];
+        private float[]             mTops            = {
+                                                        INSET, INSET
+        };
+        private int                 mTopsValid;       // mTops are right up to this paragraph
+        private int                 mLaidOut;         // paragraphs with lines
+        private float               mWrapWidth       = -1;
+        private float               mLineHeight;
+        private float               mAdvance;         // estimated advance of one character
+
+        public DocumentPreview() {
+            super();
+            setName(NAME);
+            setOpaque(true);
+            setBackground(Color.WHITE);
+            setForeground(Color.BLACK);
+            setFont(new Font(Font.SERIF, Font.PLAIN, 12));
+            setFocusable(true);
+            if (!GraphicsEnvironment.isHeadless()) {
+                final int shortcut = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+                getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_V, shortcut), PASTE);
+                getActionMap().put(PASTE, new AbstractAction() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    public void actionPerformed(final ActionEvent event) {
+                        paste();
+                    }
+                });
+                addMouseListener(new MouseAdapter() {
+                    @Override
+                    public void mousePressed(final MouseEvent event) {
+                        requestFocusInWindow();
+                    }
+                });
+            }
+        }
+
+        /**
+         * @param text
+         *            sample text, paragraphs separated by new lines
+         */
+        public void setText(final String text) {
+            mText = text;
+            int count = 0;
+            int[] starts = new int[16];
+            int[] ends = new int[16];
+            int start = 0;
+            while (start <= text.length()) {
+                int end = text.indexOf('\n', start);
+                int next = end + 1;
+                if (end == -1) {
+                    end = text.length();
+                    next = end + 1;
+                }
+                if (end - start > PIECE) {
+                    final int space = indexOfSpace(text, start + PIECE, end);
+                    if (space != -1) {
+                        end = space;
+                        next = space + 1;
+                    }
+                }
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                    ends = Arrays.copyOf(ends, count * 2);
+                }
+                starts[count] = start;
+                ends[count] = end > start && text.charAt(end - 1) == '\r' ? end - 1 : end;
+                count++;
+                start = next;
+            }
+            mStarts = Arrays.copyOf(starts, count);
+            mEnds = Arrays.copyOf(ends, count);
+            mLines = new TextLayout[count][];
+            mHeights = new float[count];
+            mTops = new float[count + 1];
+            mTops[0] = INSET;
+            mLaidOut = 0;
+            estimate();
+            revalidate();
+            repaint();
+        }
+
+        public String getText() {
+            return mText;
+        }
+
+        /**
+         * Show the text in another font. Only the paragraphs in view are laid out again, when
+         * painted, and the first of them stays at the top.
+         *
+         * @param font
+         *            new font
+         */
+        @Override
+        public void setFont(final Font font) {
+            final int anchor = mLines == null ? 0 : paragraphAt(getVisibleRect().y);
+            super.setFont(font);
+            if (mLines != null) {
+                clearLines();
+                estimate();
+                final int top = (int) getTop(anchor);
+                revalidate();
+                repaint();
+                SwingUtilities.invokeLater(() -> {
+                    if (getParent() instanceof JViewport) {
+                        ((JViewport) getParent()).setViewPosition(new Point(0, top));
+                    }
+                });
+            }
+        }
+
+        /**
+         * @return number of paragraphs laid out since the font or width last changed
+         */
+        int getLaidOutCount() {
+            return mLaidOut;
+        }
+
+        int getParagraphCount() {
+            return mLines.length;
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            return new Dimension(500, (int) Math.ceil(getTop(mLines.length) + INSET));
+        }
+
+        @Override
+        public Dimension getPreferredScrollableViewportSize() {
+            return new Dimension(500, 300);
+        }
+
+        @Override
+        public int getScrollableUnitIncrement(final Rectangle visible,
+                                              final int orientation,
+                                              final int direction) {
+            return Math.max(1, (int) mLineHeight);
+        }
+
+        @Override
+        public int getScrollableBlockIncrement(final Rectangle visible,
+                                               final int orientation,
+                                               final int direction) {
+            return orientation == SwingConstants.VERTICAL ? visible.height : visible.width;
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportWidth() {
+            return true;
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportHeight() {
+            return false;
+        }
+
+        @Override
+        protected void paintComponent(final Graphics g) {
+            final Graphics2D graphics = (Graphics2D) g;
+            final Rectangle clip = graphics.getClipBounds() == null
+                    ? new Rectangle(getSize())
+                    : graphics.getClipBounds();
+            graphics.setColor(getBackground());
+            graphics.fillRect(clip.x, clip.y, clip.width, clip.height);
+            graphics.setColor(getForeground());
+            GlyphWarmer.setDesktopHints(graphics);
+            final float width = Math.max(1, getWidth() - 2 * INSET);
+            if (width != mWrapWidth) {
+                mWrapWidth = width;
+                clearLines();
+                estimate();
+            } else if (mLaidOut > MAX_LAID_OUT) {
+                clearLines();
+            }
+            final FontRenderContext context = graphics.getFontRenderContext();
+            final float height = getTop(mLines.length);
+            int paragraph = paragraphAt(clip.y);
+            float y = getTop(paragraph);
+            while (paragraph < mLines.length && y < clip.y + clip.height) {
+                final TextLayout[] lines = layout(paragraph, context);
+                for (final TextLayout line : lines) {
+                    y += line.getAscent();
+                    line.draw(graphics,
+                              line.isLeftToRight() ? INSET : INSET + width - line.getAdvance(),
+                              y);
+                    y += line.getDescent() + line.getLeading();
+                }
+                if (lines.length == 0) {
+                    y += mLineHeight;
+                }
+                paragraph++;
+            }
+            if (getTop(mLines.length) != height) {
+                revalidate(); // estimates replaced by the height laid out
+            }
+        }
+
+        /**
+         * @return the lines of a paragraph, laid out if not yet
+         */
+        private TextLayout[] layout(final int paragraph, final FontRenderContext context) {
+            TextLayout[] lines = mLines[paragraph];
+            if (lines == null) {
+                final int start = mStarts[paragraph];
+                final int end = mEnds[paragraph];
+                final List<TextLayout> result = new ArrayList<>();
+                if (end > start) {
+                    final AttributedString text = //
+                            new AttributedString(mText.substring(start, end));
+                    text.addAttribute(TextAttribute.FONT, getFont());
+                    final LineBreakMeasurer measurer = //
+                            new LineBreakMeasurer(text.getIterator(), context);
+                    while (measurer.getPosition() < end - start) {
+                        result.add(measurer.nextLayout(mWrapWidth));
+                    }
+                }
+                lines = result.toArray(new TextLayout[result.size()]);
+                float height = lines.length == 0 ? mLineHeight : 0;
+                for (final TextLayout line : lines) {
+                    height += line.getAscent() + line.getDescent() + line.getLeading();
+                }
+                mLines[paragraph] = lines;
+                mLaidOut++;
+                setHeight(paragraph, height);
+            }
+            return lines;
+        }
+
+        /**
+         * Estimate the height of the paragraphs not laid out from their length and the average
+         * advance of the font.
+         */
+        private void estimate() {
+            final Font font = getFont();
+            final FontRenderContext context = new FontRenderContext(null, true, true);
+            final LineMetrics metrics = font.getLineMetrics(STR_PREVIEW, context);
+            mLineHeight = metrics.getAscent() + metrics.getDescent() + metrics.getLeading();
+            mAdvance = (float) font.getStringBounds(STR_PREVIEW, context).getWidth()
+                    / STR_PREVIEW.length();
+            final float width = Math.max(mAdvance,
+                                         mWrapWidth > 0 ? mWrapWidth : 500 - 2 * INSET);
+            for (int i = 0; i < mLines.length; i++) {
+                if (mLines[i] == null) {
+                    final int lines = (int) Math.ceil((mEnds[i] - mStarts[i]) * mAdvance / width);
+                    mHeights[i] = Math.max(1, lines) * mLineHeight;
+                }
+            }
+            mTopsValid = 0;
+        }
+
+        private void clearLines() {
+            Arrays.fill(mLines, null);
+            mLaidOut = 0;
+        }
+
+        private void setHeight(final int paragraph, final float height) {
+            if (mHeights[paragraph] != height) {
+                mHeights[paragraph] = height;
+                mTopsValid = Math.min(mTopsValid, paragraph);
+            }
+        }
+
+        /**
+         * @return y of the top of a paragraph, or of the end of the text for the paragraph count
+         */
+        private float getTop(final int paragraph) {
+            for (int i = mTopsValid; i < paragraph; i++) {
+                mTops[i + 1] = mTops[i] + mHeights[i];
+            }
+            mTopsValid = Math.max(mTopsValid, paragraph);
+            return mTops[paragraph];
+        }
+
+        /**
+         * @return the paragraph at y, the last one if below the text
+         */
+        private int paragraphAt(final int y) {
+            getTop(mLines.length);
+            int low = 0;
+            int high = mLines.length - 1;
+            while (low < high) {
+                final int middle = (low + high + 1) >>> 1;
+                if (mTops[middle] <= y) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+
+        private static int indexOfSpace(final String text, final int from, final int to) {
+            for (int i = from; i < to; i++) {
+                if (Character.isWhitespace(text.charAt(i))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void paste() {
+            try {
+                final Object text = Toolkit.getDefaultToolkit()
+                                           .getSystemClipboard()
+                                           .getData(DataFlavor.stringFlavor);
+                setText((String) text);
+            } catch (final UnsupportedFlavorException | IOException | IllegalStateException error) {
+                // nothing to paste
+            }
+        }
+    }
+
+    /**
+     * The preview text at every size of FontChooserDialog.size_list at once. Each size is rendered
+     * into an image by its own task on a shared background pool and painted as soon as it is
+     * ready. Renders still outstanding are cancelled when the family, font, or style changes, so
+     * browsing quickly never queues up stale work. Changing only the size does not render again.
+     */
+    public static class WaterfallPanel
+        extends
+            JPanel {
+
+        private static final long            serialVersionUID = 1L;
+        public static final String           NAME             = "waterfall";        //$NON-NLS-1$ AspectJ name
+
+        private static final int             GAP              = 4;
+        private static final int             LABEL_WIDTH      = 30;
+
+        private static ExecutorService       sPool;
+
+        private final int[]                  mSizes;
+        private final BufferedImage[]        mImages;
+        private final List<Future< ? >>      mTasks           = new ArrayList<>();
+        private Font                         mFont;
+        private String                       mText;
+        private int                          mGeneration;
+
+        public WaterfallPanel() {
+            super();
+            setName(NAME);
+            setBackground(Color.WHITE);
+            mSizes = Arrays.asList(STR_SIZE_LIST.split(",", Integer.MAX_VALUE))
+                           .stream()
+                           .mapToInt(Integer::parseInt)
+                           .toArray();
+            mImages = new BufferedImage[mSizes.length];
+        }
+
+        /**
+         * Render the text in the font at every size. Must be called on the EDT.
+         *
+         * @param font
+         *            font to show, its size is ignored
+         * @param text
+         *            text to show
+         */
+        public void showFont(final Font font, final String text) {
+            if (mFont != null && mFont.getName().equals(font.getName())
+                    && mFont.getStyle() == font.getStyle() && mText.equals(text)) {
+                return;
+            }
+            cancel();
+            mFont = font;
+            mText = text;
+            Arrays.fill(mImages, null);
+            final int generation = ++mGeneration;
+            for (int i = 0; i < mSizes.length; i++) {
+                final int index = i;
+                final Font sized = font.deriveFont((float) mSizes[i]);
+                mTasks.add(getPool().submit(() -> {
+                    final BufferedImage image = render(sized, text);
+                    SwingUtilities.invokeLater(() -> {
+                        if (generation == mGeneration) {
+                            mImages[index] = image;
+                            revalidate();
+                            repaint();
+                        }
+                    });
+                }));
+            }
+            revalidate();
+            repaint();
+        }
+
+        /**
+         * Cancel all renders that have not finished.
+         */
+        public void cancel() {
+            mTasks.stream().forEach(t -> t.cancel(true));
+            mTasks.clear();
+            mGeneration++;
+        }
+
+        /**
+         * @return true if every size has been rendered
+         */
+        boolean isComplete() {
+            return Arrays.asList(mImages).stream().allMatch(i -> i != null);
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            int width = 0;
+            int height = GAP;
+            for (int i = 0; i < mSizes.length; i++) {
+                final BufferedImage image = mImages[i];
+                width = Math.max(width, image == null ? 0 : image.getWidth());
+                height += (image == null ? mSizes[i] * 3 / 2 : image.getHeight()) + GAP;
+            }
+            return new Dimension(LABEL_WIDTH + width + GAP, height);
+        }
+
+        @Override
+        protected void paintComponent(final Graphics graphics) {
+            super.paintComponent(graphics);
+            graphics.setColor(Color.GRAY);
+            int y = GAP;
+            for (int i = 0; i < mSizes.length; i++) {
+                final BufferedImage image = mImages[i];
+                final int height = image == null ? mSizes[i] * 3 / 2 : image.getHeight();
+                graphics.drawString(String.valueOf(mSizes[i]), GAP, y + height / 2);
+                if (image != null) {
+                    graphics.drawImage(image, LABEL_WIDTH, y, null);
+                }
+                y += height + GAP;
+            }
+        }
+
+        private static BufferedImage render(final Font font, final String text) {
+            final FontRenderContext context = new FontRenderContext(null, true, true);
+            final LineMetrics metrics = font.getLineMetrics(text, context);
+            final int width = Math.max(1,
+                                       (int) Math.ceil(font.getStringBounds(text, context)
+                                                           .getWidth()));
+            final int height = Math.max(1, (int) Math.ceil(metrics.getHeight()));
+            final BufferedImage image = //
+                    new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            final Graphics2D graphics = image.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                                          RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS,
+                                          RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+                graphics.setColor(Color.BLACK);
+                graphics.setFont(font);
+                graphics.drawString(text, 0, metrics.getAscent());
+            } finally {
+                graphics.dispose();
+            }
+            return image;
+        }
+
+        private static synchronized ExecutorService getPool() {
+            if (sPool == null) {
+                final int threads = Runtime.getRuntime().availableProcessors();
+                sPool = Executors.newFixedThreadPool(threads, runnable -> {
+                    final Thread thread = new Thread(runnable, "WaterfallPanel.render"); //$NON-NLS-1$
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            return sPool;
+        }
+    }
+
+    /**
+     * Enum to support converting between Font.style and Style names.
+     */
+    public enum FontStyle {
+        // @formatter:off
+            PLAIN(STR_REGULAR,            Font.PLAIN),
+            BOLD(STR_BOLD,                Font.BOLD),
+            ITALIC(STR_ITALIC,            Font.ITALIC),
+            BOLD_ITALIC(STR_BOLD_ITALIC,  Font.BOLD + Font.ITALIC);
+        // @formatter:on
+
+        private static final FontStyle[] VALUES = values();
+        private static final String[]    NAMES  = //
+                Arrays.stream(VALUES).map(FontStyle::getName).toArray(String[]::new);
+
+        private final String              mName;
+        private final int                 mStyle;
+        private final Optional<FontStyle> mOptional;
+
+        private FontStyle(final String name, final int style) {
+            mName = name;
+            mStyle = style;
+            mOptional = Optional.of(this);
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public int getStyle() {
+            return mStyle;
+        }
+
+        public static String[] getNames() {
+            return NAMES.clone();
+        }
+
+        /*
+         * The lookups are called on every selection change, so they return the Optional each
+         * constant holds rather than creating one.
+         */
+
+        public static Optional<FontStyle> fromName(final String name) {
+            for (final FontStyle style : VALUES) {
+                if (style.mName.equals(name)) {
+                    return style.mOptional;
+                }
+            }
+            return Optional.empty();
+        }
+
+        public static Optional<FontStyle> fromInt(final int value) {
+            for (final FontStyle style : VALUES) {
+                if (style.mStyle == value) {
+                    return style.mOptional;
+                }
+            }
+            return Optional.empty();
+        }
+    };
+
+    /**
+     * A font written as text, for configuration files and style sheets. Two forms are read:
+     * <ul>
+     * <li>family, font, styles and size: <code>DejaVu Sans Bold 24</code>,
+     * <code>"DejaVu Sans" Regular Bold Italic 12pt</code>; the font is the stripped font name
+     * or its part after the family, see {@link FontRegistry#getFontNames(String)}, Regular if
+     * left out; the styles are the constant names such as BOLD, or {@link FontStyle#getName()}
+     * names; the family may be quoted to tell it from a longer family</li>
+     * <li>CSS shorthand: <code>italic bold 12pt "DejaVu Sans", serif</code>; the first
+     * installed family of the list is used, and px are taken as pt, as Java2D draws 72 dpi</li>
+     * </ul>
+     * Names are matched ignoring case and resolved through the {@link FontRegistry}, so a spec
+     * holds the registry's family and font names. {@link #toString()} writes the first form so
+     * that it reads back as the same spec, also for {@link #valueOf(Font)} of
+     * {@link FontChooserDialog#getSelectedFont()}, and after fonts are installed. It writes
+     * Regular, Bold and Italic in English, so saved specs do not depend on the language.
+     * <p>
+     * Specs are interned, so equal specs are the same object while one is referenced. The spec of
+     * each text parsed is kept, see {@link #parse(String)}; those texts are forgotten when they
+     * reach 65,536.
+     */
+    public static final class FontSpec {
+
+        /** Texts kept by {@link #parse(String)}. */
+        private static final int                    MAX_CACHED       = 1 << 16;
+        private static final Pattern                SPACE            = //
+                Pattern.compile("\\s+"); //$NON-NLS-1$
+        private static final Pattern                SIZE             = //
+                Pattern.compile("(\\d+)(?:pt)?", Pattern.CASE_INSENSITIVE); //$NON-NLS-1$
+        private static final Pattern                QUOTED           = //
+                Pattern.compile("\"([^\"]+)\"\\s*(.*)"); //$NON-NLS-1$
+        /** Keywords, size with unit, optional line height, and families. */
+        private static final Pattern                CSS              = Pattern.compile(
+                "((?:\\S+\\s+)*?)(\\d+(?:\\.\\d+)?)(?:px|pt)(?:/\\S+)?\\s+(.+)", //$NON-NLS-1$
+                Pattern.CASE_INSENSITIVE);
+        private static final Pattern                QUOTES           = //
+                Pattern.compile("^[\"']|[\"']$"); //$NON-NLS-1$
+        private static final String                 REGULAR          = "Regular"; //$NON-NLS-1$
+        private static final String                 BOLD             = "Bold"; //$NON-NLS-1$
+        private static final String                 ITALIC           = "Italic"; //$NON-NLS-1$
+        /** Words of each {@link FontStyle#getName()} by ordinal, as translated to one or more. */
+        private static final String[][]             STYLE_WORDS      = //
+                Arrays.stream(FontStyle.values())
+                      .map(style -> style.getName().trim().split("\\s+")) //$NON-NLS-1$
+                      .toArray(String[][]::new);
+
+        private static final Map<String, ParsedSpec> sParsed         = new ConcurrentHashMap<>();
+        private static final Map<FontSpec, WeakReference<FontSpec>> sInterned = //
+                Collections.synchronizedMap(new WeakHashMap<>());
+        private static volatile Resolver            sResolver;
+
+        private final String                        mFamilyName;
+        private final String                        mFontName;
+        private final int                           mStyle;
+        private final int                           mSize;
+        @Nullable
+        private volatile CanonicalText              mText;
+
+        private FontSpec(final String familyName,
+                         final String fontName,
+                         final int style,
+                         final int size) {
+            mFamilyName = familyName;
+            mFontName = fontName;
+            mStyle = style;
+            mSize = size;
+        }
+
+        /**
+         * Parse a spec. Parsing the same text again, as for every use of a style sheet, costs a
+         * hash and a compare until the registry changes.
+         *
+         * @param text
+         *            spec in either form
+         * @return interned spec
+         * @throws IllegalArgumentException
+         *             not a spec, or the family or font is not in the registry
+         */
+        public static FontSpec parse(final String text) throws IllegalArgumentException {
+            final FontRegistry registry = FontRegistry.getInstance();
+            final FontCatalog catalog = registry.getCatalog();
+            final ParsedSpec cached = sParsed.get(text);
+            if (cached != null && cached.mCatalog == catalog) {
+                return cached.mSpec;
+            }
+            final Resolver resolver = getResolver(registry, catalog);
+            final FontSpec spec = intern(resolver.parse(text));
+            if (sParsed.size() >= MAX_CACHED) {
+                sParsed.clear();
+            }
+            sParsed.put(text, new ParsedSpec(catalog, spec));
+            return spec;
+        }
+
+        /**
+         * @param font
+         *            a font of the registry, such as {@link FontChooserDialog#getSelectedFont()}
+         * @return interned spec of the font
+         * @throws IllegalArgumentException
+         *             the family or font is not in the registry
+         */
+        public static FontSpec valueOf(final Font font) throws IllegalArgumentException {
+            final FontRegistry registry = FontRegistry.getInstance();
+            final Resolver resolver = getResolver(registry, registry.getCatalog());
+            final String familyName = resolver.getFamilyName(font.getFamily());
+            final String fontName = familyName == null ? null
+                    : resolver.getFaces(familyName)
+                              .get(lower(registry.getFontNameForList(font)));
+            if (fontName == null) {
+                throw new IllegalArgumentException(font.toString());
+            }
+            return intern(new FontSpec(familyName, fontName, font.getStyle(), font.getSize()));
+        }
+
+        /**
+         * @param font
+         *            a font of the registry
+         * @return the font as text, see {@link #toString()}
+         * @throws IllegalArgumentException
+         *             the family or font is not in the registry
+         */
+        public static String format(final Font font) throws IllegalArgumentException {
+            return valueOf(font).toString();
+        }
+
+        /**
+         * @return the resolver of the catalog, made again when the registry changes
+         */
+        private static Resolver getResolver(final FontRegistry registry,
+                                            final FontCatalog catalog) {
+            Resolver resolver = sResolver;
+            if (resolver == null || resolver.mCatalog != catalog
+                    || resolver.mRegistry != registry) {
+                resolver = new Resolver(registry, catalog);
+                sResolver = resolver;
+            }
+            return resolver;
+        }
+
+        public String getFamilyName() {
+            return mFamilyName;
+        }
+
+        /**
+         * @return stripped font name, see {@link FontRegistry#getFontNames(String)}
+         */
+        public String getFontName() {
+            return mFontName;
+        }
+
+        /**
+         * @return Font.PLAIN, Font.BOLD, ...
+         */
+        public int getStyle() {
+            return mStyle;
+        }
+
+        public int getSize() {
+            return mSize;
+        }
+
+        /**
+         * @return the font, the same one as last time if still cached by the registry
+         * @throws IllegalArgumentException
+         *             the family or font is no longer in the registry
+         */
+        public Font getFont() throws IllegalArgumentException {
+            return FontRegistry.getInstance().getFont(mFamilyName, mFontName, mStyle, mSize);
+        }
+
+        /**
+         * @return the spec as CSS shorthand, such as <code>bold 24pt "DejaVu Sans"</code>
+         */
+        public String toCss() {
+            final boolean italic = (mStyle & Font.ITALIC) != 0;
+            final boolean bold = (mStyle & Font.BOLD) != 0;
+            return String.format("%s%s%dpt \"%s%s\"", //$NON-NLS-1$
+                                 italic ? "italic " : "", //$NON-NLS-1$ //$NON-NLS-2$
+                                 bold ? "bold " : "", //$NON-NLS-1$ //$NON-NLS-2$
+                                 mSize,
+                                 mFamilyName,
+                                 getFaceWords());
+        }
+
+        /**
+         * @return the font as words after the family, empty for Regular
+         */
+        private String getFaceWords() {
+            if (mFontName.equals(STR_REGULAR)) {
+                return ""; //$NON-NLS-1$
+            } else if (mFontName.startsWith(mFamilyName + ' ')) {
+                return mFontName.substring(mFamilyName.length());
+            } else {
+                return ' ' + mFontName;
+            }
+        }
+
+        /**
+         * @return the spec kept for the equal specs while one is referenced
+         */
+        private static FontSpec intern(final FontSpec spec) {
+            synchronized (sInterned) {
+                final WeakReference<FontSpec> reference = sInterned.get(spec);
+                final FontSpec interned = reference == null ? null : reference.get();
+                if (interned != null) {
+                    return interned;
+                }
+                sInterned.put(spec, new WeakReference<>(spec));
+                return spec;
+            }
+        }
+
+        /**
+         * @return the canonical text, such as <code>DejaVu Sans Bold 24</code>, which parses back
+         *         to this spec; made again when the registry changes, as a font installed since
+         *         may read as a longer family or font
+         */
+        @Override
+        public String toString() {
+            final FontRegistry registry = FontRegistry.getInstance();
+            final FontCatalog catalog = registry.getCatalog();
+            CanonicalText text = mText;
+            if (text == null || text.mCatalog != catalog) {
+                text = new CanonicalText(catalog, getResolver(registry, catalog).format(this));
+                mText = text;
+            }
+            return text.mText;
+        }
+
+        /**
+         * @param quote
+         *            true to quote the family
+         * @param regular
+         *            true to write Regular for the regular font
+         * @return the text of the first form
+         */
+        private String format(final boolean quote, final boolean regular) {
+            final StringBuilder text = new StringBuilder();
+            text.append(quote ? '"' + mFamilyName + '"' : mFamilyName);
+            text.append(regular ? ' ' + REGULAR : getFaceWords());
+            if ((mStyle & Font.BOLD) != 0) {
+                text.append(' ').append(BOLD);
+            }
+            if ((mStyle & Font.ITALIC) != 0) {
+                text.append(' ').append(ITALIC);
+            }
+            return text.append(' ').append(mSize).toString();
+        }
+
+        @Override
+        public boolean equals(final Object object) {
+            if (!(object instanceof FontSpec)) {
+                return false;
+            }
+            final FontSpec other = (FontSpec) object;
+            return mStyle == other.mStyle && mSize == other.mSize
+                    && mFamilyName.equals(other.mFamilyName) && mFontName.equals(other.mFontName);
+        }
+
+        @Override
+        public int hashCode() {
+            return mFamilyName.hashCode()
+                    + 31 * (mFontName.hashCode() + 31 * (mStyle + 31 * mSize));
+        }
+
+        private static String lower(final String text) {
+            return text.toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * The names of one catalog, matched ignoring case, and the parser using them.
+         */
+        private static final class Resolver {
+
+            private final FontRegistry                     mRegistry;
+            private final FontCatalog                      mCatalog;
+            private final Map<String, String>              mFamilies       = new HashMap<>();
+            private final Map<String, String>              mFamiliesByFont = new HashMap<>();
+            private final Map<String, Map<String, String>> mFaces          = //
+                    new ConcurrentHashMap<>();
+
+            Resolver(final FontRegistry registry, final FontCatalog catalog) {
+                mRegistry = registry;
+                mCatalog = catalog;
+                for (int family = 0; family < catalog.getFamilyCount(); family++) {
+                    mFamilies.put(lower(catalog.getFamilyName(family)),
+                                  catalog.getFamilyName(family));
+                }
+                catalog.getFamiliesByFont().forEach((fontName, familyName) -> //
+                mFamiliesByFont.put(lower(fontName), familyName));
+            }
+
+            /**
+             * @return the family name as in the registry, or null if not a family
+             */
+            @Nullable
+            String getFamilyName(final String name) {
+                return mFamilies.get(lower(name));
+            }
+
+            /**
+             * @return the stripped font names of a family by lower case font and the part after
+             *         the family, with Regular for the regular font
+             */
+            Map<String, String> getFaces(final String familyName) {
+                return mFaces.computeIfAbsent(familyName, key -> {
+                    final Map<String, String> faces = new HashMap<>();
+                    for (final String fontName : mRegistry.getFontNames(familyName)) {
+                        faces.put(lower(fontName), fontName);
+                        if (fontName.startsWith(familyName + ' ')) {
+                            faces.put(lower(fontName.substring(familyName.length() + 1)),
+                                      fontName);
+                        }
+                    }
+                    faces.put(lower(REGULAR), STR_REGULAR);
+                    faces.put(lower(STR_REGULAR), STR_REGULAR);
+                    return faces;
+                });
+            }
+
+            /**
+             * @return the spec of the text, not interned
+             * @throws IllegalArgumentException
+             *             not a spec, or the family or font is not in the registry
+             */
+            FontSpec parse(final String text) throws IllegalArgumentException {
+                final String trimmed = text.trim();
+                final String[] words = SPACE.split(trimmed);
+                final Matcher size = SIZE.matcher(words[words.length - 1]);
+                FontSpec spec = null;
+                if (words.length > 1 && size.matches()) {
+                    final Matcher quoted = QUOTED.matcher(trimmed);
+                    if (quoted.matches()) {
+                        final String familyName = getFamilyName(quoted.group(1));
+                        final String[] rest = SPACE.split(quoted.group(2));
+                        if (familyName != null) {
+                            spec = resolveFace(familyName,
+                                               rest,
+                                               0,
+                                               rest.length - 1,
+                                               Font.PLAIN,
+                                               toSize(size.group(1)));
+                        }
+                    } else {
+                        spec = resolve(words, words.length - 1, Font.PLAIN, toSize(size.group(1)));
+                    }
+                } else {
+                    spec = parseCss(trimmed);
+                }
+                if (spec == null) {
+                    throw new IllegalArgumentException(text);
+                }
+                return spec;
+            }
+
+            /**
+             * @return the spec of CSS shorthand, or null if no family of the list is installed
+             * @throws IllegalArgumentException
+             *             not CSS shorthand
+             */
+            @Nullable
+            private FontSpec parseCss(final String text) throws IllegalArgumentException {
+                final Matcher css = CSS.matcher(text);
+                if (!css.matches()) {
+                    throw new IllegalArgumentException(text);
+                }
+                int style = Font.PLAIN;
+                for (final String keyword : SPACE.split(css.group(1).trim())) {
+                    switch (lower(keyword)) {
+                        case "italic": //$NON-NLS-1$
+                        case "oblique": //$NON-NLS-1$
+                            style |= Font.ITALIC;
+                            break;
+                        case "bold": //$NON-NLS-1$
+                        case "bolder": //$NON-NLS-1$
+                            style |= Font.BOLD;
+                            break;
+                        case "": //$NON-NLS-1$
+                        case "normal": //$NON-NLS-1$
+                        case "lighter": //$NON-NLS-1$
+                            break;
+                        default:
+                            if (!keyword.matches("[1-9]00")) { //$NON-NLS-1$
+                                throw new IllegalArgumentException(text);
+                            }
+                            style |= Integer.parseInt(keyword) >= 600 ? Font.BOLD : Font.PLAIN;
+                    }
+                }
+                final int size = toSize(css.group(2));
+                for (final String item : css.group(3).split(",")) { //$NON-NLS-1$
+                    final String name = QUOTES.matcher(item.trim()).replaceAll(""); //$NON-NLS-1$
+                    final String[] words = SPACE.split(getGenericFamily(name));
+                    final FontSpec spec = resolve(words, words.length, style, size);
+                    if (spec != null) {
+                        return spec;
+                    }
+                }
+                return null;
+            }
+
+            /**
+             * @return the logical family of a CSS generic family, else the name
+             */
+            private static String getGenericFamily(final String name) {
+                switch (lower(name)) {
+                    case "serif": //$NON-NLS-1$
+                        return Font.SERIF;
+                    case "sans-serif": //$NON-NLS-1$
+                        return Font.SANS_SERIF;
+                    case "monospace": //$NON-NLS-1$
+                        return Font.MONOSPACED;
+                    case "system-ui": //$NON-NLS-1$
+                        return Font.DIALOG;
+                    default:
+                        return name;
+                }
+            }
+
+            private static int toSize(final String number) throws IllegalArgumentException {
+                final int size = Math.round(Float.parseFloat(number));
+                if (size <= 0) {
+                    throw new IllegalArgumentException(number);
+                }
+                return size;
+            }
+
+            /**
+             * Take the longest family or font name of the leading words that the rest of the
+             * words fit.
+             *
+             * @param words
+             *            family or font name, font and styles
+             * @param end
+             *            index after the last word
+             * @param style
+             *            styles to add to those of the words
+             * @param size
+             *            point size
+             * @return the spec, or null if none fits
+             */
+            @Nullable
+            private FontSpec resolve(final String[] words,
+                                     final int end,
+                                     final int style,
+                                     final int size) {
+                for (int last = end; last > 0; last--) {
+                    final String name = join(words, 0, last);
+                    final String familyName = getFamilyName(name);
+                    if (familyName != null) {
+                        final FontSpec spec = //
+                                resolveFace(familyName, words, last, end, style, size);
+                        if (spec != null) {
+                            return spec;
+                        }
+                    }
+                    final String fontFamily = mFamiliesByFont.get(lower(name));
+                    if (fontFamily != null) {
+                        final String fontName = getFaces(fontFamily)
+                                .get(lower(FontRegistry.stripFamily(name)));
+                        final int styles = toStyle(words, last, end);
+                        if (fontName != null && styles != -1) {
+                            return new FontSpec(fontFamily, fontName, style | styles, size);
+                        }
+                    }
+                }
+                return null;
+            }
+
+            /**
+             * @return the spec with the longest font of the leading words that the rest of the
+             *         words fit as styles, or null if none fits
+             */
+            @Nullable
+            private FontSpec resolveFace(final String familyName,
+                                         final String[] words,
+                                         final int start,
+                                         final int end,
+                                         final int style,
+                                         final int size) {
+                final Map<String, String> faces = getFaces(familyName);
+                for (int last = end; last >= start; last--) {
+                    final String fontName = last == start ? STR_REGULAR
+                            : faces.get(lower(join(words, start, last)));
+                    final int styles = toStyle(words, last, end);
+                    if (fontName != null && styles != -1) {
+                        return new FontSpec(familyName, fontName, style | styles, size);
+                    }
+                }
+                return null;
+            }
+
+            private static String join(final String[] words, final int start, final int end) {
+                return String.join(" ", Arrays.asList(words).subList(start, end)); //$NON-NLS-1$
+            }
+
+            /**
+             * @return the sum of the {@link FontStyle} names of the words, -1 if one is not; the
+             *         constant names, such as BOLD_ITALIC, are read too
+             */
+            private static int toStyle(final String[] words, final int start, final int end) {
+                int result = Font.PLAIN;
+                for (int i = start; i < end;) {
+                    final int word = i;
+                    for (final FontStyle fontStyle : FontStyle.values()) {
+                        final String[] name = STYLE_WORDS[fontStyle.ordinal()];
+                        if (i == word && i + name.length <= end && matches(words, i, name)) {
+                            result |= fontStyle.getStyle();
+                            i += name.length;
+                        }
+                    }
+                    for (final FontStyle fontStyle : FontStyle.values()) {
+                        if (i == word && fontStyle.name().equalsIgnoreCase(words[i])) {
+                            result |= fontStyle.getStyle();
+                            i++;
+                        }
+                    }
+                    if (i == word) {
+                        return -1;
+                    }
+                }
+                return result;
+            }
+
+            /**
+             * @return true if the words from start are the name, ignoring case
+             */
+            private static boolean matches(final String[] words,
+                                           final int start,
+                                           final String[] name) {
+                for (int i = 0; i < name.length; i++) {
+                    if (!name[i].equalsIgnoreCase(words[start + i])) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            /**
+             * @return the first text that parses back to the spec with this catalog
+             */
+            String format(final FontSpec spec) {
+                final boolean isRegular = spec.getFaceWords().isEmpty();
+                for (int i = 0; i < 4; i++) {
+                    final boolean regular = (i & 1) != 0;
+                    if (regular && !isRegular) {
+                        continue;
+                    }
+                    final String candidate = spec.format(i >= 2, regular);
+                    try {
+                        if (parse(candidate).equals(spec)) {
+                            return candidate;
+                        }
+                    } catch (final IllegalArgumentException error) {
+                        // read as a longer family or font, try the next
+                    }
+                }
+                return spec.format(true, isRegular);
+            }
+        }
+
+        /**
+         * The spec of a text parsed with a catalog, parsed again once the registry changes.
+         */
+        private static final class ParsedSpec {
+
+            private final FontCatalog mCatalog;
+            private final FontSpec    mSpec;
+
+            ParsedSpec(final FontCatalog catalog, final FontSpec spec) {
+                mCatalog = catalog;
+                mSpec = spec;
+            }
+        }
+
+        /**
+         * The canonical text of a spec, written again once the registry changes.
+         */
+        private static final class CanonicalText {
+
+            private final FontCatalog mCatalog;
+            private final String      mText;
+
+            CanonicalText(final FontCatalog catalog, final String text) {
+                mCatalog = catalog;
+                mText = text;
+            }
+        }
+    }
+
+    /**
+     * All installed font family names and the fonts for each. The names are held in a compact
+     * {@link FontCatalog}; java.awt.Font objects are only created when a font is asked for.
+     */
+    public static final class FontRegistry {
+
+        /** Fonts kept by {@link #getFont(String, String, int, int)}, a power of 2. */
+        private static final int               FONT_CACHE_SIZE    = 256;
+
+        /** Shared by every registry, so one replaced does not leave its thread behind. */
+        private static final ExecutorService   sPrefetcher        = newPrefetcher();
+
+        private static volatile FontRegistry   sInstance;
+        private static boolean                 sLazy              = false;
+
+        private volatile FontCatalog           mCatalog;
+        private final boolean                  mLazy;
+        private final Map<String, FontCatalog> mLazyFaces         = new ConcurrentHashMap<>();
+        private final AtomicBoolean            mAllFontsQueued    = new AtomicBoolean();
+        private volatile boolean               mAllFontsLoaded;
+        private final Map<RegistryListener, Boolean> mListeners   = //
+                Collections.synchronizedMap(new WeakHashMap<>());
+        private final Map<String, List<FontPack>> mPacks          = new ConcurrentHashMap<>();
+        private final CachedFont[]             mFontCache         = new CachedFont[FONT_CACHE_SIZE];
+        private volatile Locale                mLocale            = //
+                Locale.getDefault(Locale.Category.DISPLAY);
+        private volatile FamilyOrder           mOrder;
+
+        /**
+         * @return the registry the dialogs use; only locks while the first one is created, as
+         *         {@link FontSpec#parse(String)} asks for it on every parse
+         */
+        public static FontRegistry getInstance() {
+            FontRegistry registry = sInstance;
+            if (registry == null) {
+                synchronized (FontRegistry.class) {
+                    registry = sInstance;
+                    if (registry == null) {
+                        registry = new FontRegistry(sLazy);
+                        sInstance = registry;
+                    }
+                }
+            }
+            return registry;
+        }
+
+        /**
+         * Replace the registry the dialogs use, such as with a synthetic catalog for a benchmark.
+         *
+         * @param registry
+         *            the registry, or null to create the default one on next use
+         */
+        static synchronized void setInstance(@Nullable final FontRegistry registry) {
+            sInstance = registry;
+        }
+
+        /**
+         * Only load the family names when the registry is created and load the fonts of each
+         * family when first asked for. Opening the first dialog then costs about as much as
+         * getAvailableFontFamilyNames(). Must be called prior to creating the dialog.
+         * <p>
+         * Until all fonts are read, the fonts of a family are found from the family in each
+         * {@link FontStyle}, which misses fonts no style maps to (Light, Condensed, ...). All fonts
+         * are read in the background once the family list is first painted, and the families are
+         * updated with them, see {@link #loadAllFontsLater()}.
+         *
+         * @param lazy
+         *            true to load the fonts of each family on first use
+         */
+        public static synchronized void setLazy(final boolean lazy) {
+            sLazy = lazy;
+        }
+
+        /**
+         * Create a catalog of all installed family names and fonts for each.
+         *
+         * @param lazy
+         *            if true, only load family names, see {@link #setLazy(boolean)}
+         */
+        FontRegistry(final boolean lazy) {
+            super();
+            mLazy = lazy;
+            final GraphicsEnvironment environment = //
+                    GraphicsEnvironment.getLocalGraphicsEnvironment();
+            final FontCatalog.Builder builder = new FontCatalog.Builder();
+            for (final String familyName : environment.getAvailableFontFamilyNames()) {
+                builder.addFamily(familyName);
+            }
+            if (!lazy) {
+                // the Font objects are only read for their names and then left for the GC
+                for (final Font font : environment.getAllFonts()) {
+                    builder.addFont(font.getFamily(), font.getName());
+                }
+            }
+            mCatalog = builder.build();
+            // dump();
+        }
+
+        /**
+         * Create a registry of the fonts in a catalog, for tests.
+         *
+         * @param catalog
+         *            families and fonts
+         */
+        FontRegistry(final FontCatalog catalog) {
+            super();
+            mLazy = false;
+            mCatalog = catalog;
+        }
+
+        /**
+         * @return the current catalog, replaced as a whole when the registry changes
+         */
+        FontCatalog getCatalog() {
+            return mCatalog;
+        }
+
+        /**
+         * Add a listener to be told on the EDT about changes. The registry lives as long as the
+         * application, so it only keeps a weak reference; the caller must hold on to the listener.
+         *
+         * @param listener
+         *            listener to add
+         */
+        public void addListener(final RegistryListener listener) {
+            mListeners.put(listener, Boolean.TRUE);
+        }
+
+        public void removeListener(final RegistryListener listener) {
+            mListeners.remove(listener);
+        }
+
+        /**
+         * Add and remove fonts, such as ones installed while the application is running. Only the
+         * families of these fonts are rebuilt. The new catalog replaces the old one in one step,
+         * the shared list models are updated with the difference, and the listeners are told on
+         * the EDT. A family is removed when its last font is, except in lazy mode where the
+         * GraphicsEnvironment may still have fonts of it.
+         *
+         * @param added
+         *            fonts to add, ones already in the registry are ignored
+         * @param removed
+         *            fonts to remove
+         * @return the change, maybe empty
+         */
+        public RegistryChange update(final Collection<Font> added, final Collection<Font> removed) {
+            return update(byFamily(added), byFamily(removed));
+        }
+
+        private static Map<String, List<String>> byFamily(final Collection<Font> fonts) {
+            final Map<String, List<String>> result = new HashMap<>();
+            for (final Font font : fonts) {
+                result.computeIfAbsent(font.getFamily(), f -> new ArrayList<>())
+                      .add(font.getName());
+            }
+            return result;
+        }
+
+        /**
+         * See {@link #update(Collection, Collection)}, with the fonts given by name, so fonts can
+         * be listed before they are read.
+         *
+         * @param added
+         *            font names to add by family name
+         * @param removed
+         *            font names to remove by family name
+         * @return the change, maybe empty
+         */
+        RegistryChange update(final Map<String, ? extends Collection<String>> added,
+                              final Map<String, ? extends Collection<String>> removed) {
+            final RegistryChange change;
+            synchronized (this) {
+                final FontCatalog old = mCatalog;
+                final Map<String, List<String>> families = new HashMap<>();
+                removed.forEach((familyName, names) -> {
+                    families.computeIfAbsent(familyName, f -> getCatalogFontNames(old, f))
+                            .removeAll(names);
+                });
+                added.forEach((familyName, names) -> {
+                    final List<String> fontNames = //
+                            families.computeIfAbsent(familyName, f -> getCatalogFontNames(old, f));
+                    for (final String name : names) {
+                        if (!fontNames.contains(name)) {
+                            fontNames.add(name);
+                        }
+                    }
+                });
+                final Set<String> addedFamilies = new TreeSet<>();
+                final Set<String> removedFamilies = new TreeSet<>();
+                final Set<String> changedFamilies = new TreeSet<>();
+                families.forEach((familyName, fontNames) -> {
+                    final boolean existed = old.indexOfFamily(familyName) != -1;
+                    if (!existed && !fontNames.isEmpty()) {
+                        addedFamilies.add(familyName);
+                    } else if (existed && fontNames.isEmpty() && !mLazy) {
+                        removedFamilies.add(familyName);
+                    } else if (existed
+                            && !new HashSet<>(fontNames).equals(
+                                    new HashSet<>(getCatalogFontNames(old, familyName)))) {
+                        changedFamilies.add(familyName);
+                    }
+                });
+                change = new RegistryChange(addedFamilies, removedFamilies, changedFamilies);
+                if (change.isEmpty()) {
+                    return change;
+                }
+                final FontCatalog.Builder builder = new FontCatalog.Builder();
+                builder.addCatalog(old, change::contains);
+                families.forEach((familyName, fontNames) -> {
+                    if (change.contains(familyName) && !removedFamilies.contains(familyName)) {
+                        builder.addFamily(familyName);
+                        fontNames.stream().forEach(n -> builder.addFont(familyName, n));
+                    }
+                });
+                mCatalog = builder.build();
+                mLazyFaces.keySet().removeIf(change::contains);
+                Arrays.fill(mFontCache, null);
+                SharedListModels.update(this, old, change);
+            }
+            SwingUtilities.invokeLater(() -> fireChanged(change));
+            return change;
+        }
+
+        /**
+         * Tell the listeners, on the EDT, that the families some filters accept changed, so the
+         * lists filter again. Sent as a {@link RegistryChange#ORDER} change, which keeps the
+         * selection.
+         */
+        void fireFiltersChanged() {
+            SwingUtilities.invokeLater(() -> fireChanged(RegistryChange.ORDER));
+        }
+
+        private void fireChanged(final RegistryChange change) {
+            final List<RegistryListener> listeners;
+            synchronized (mListeners) {
+                listeners = new ArrayList<>(mListeners.keySet());
+            }
+            listeners.stream().forEach(l -> l.registryChanged(change));
+        }
+
+        /**
+         * Load the fonts an application ships with, such as licensed fonts that are not installed,
+         * and add them to the registry. See {@link #registerFontDirectory(Path, int)}.
+         *
+         * @param directory
+         *            directory tree of TrueType and OpenType fonts
+         * @return fonts loaded, files that failed, and the change to the registry
+         * @throws IOException
+         *             the directory cannot be read
+         */
+        public FontLoadReport registerFontDirectory(final Path directory) throws IOException {
+            return registerFontDirectory(directory, Runtime.getRuntime().availableProcessors());
+        }
+
+        /**
+         * Load all TrueType and OpenType fonts and collections in a directory tree in parallel,
+         * register them with the GraphicsEnvironment, and add them to the registry in one step,
+         * so open dialogs see all of them or none. A file that cannot be read is reported and
+         * does not stop the others.
+         *
+         * @param directory
+         *            directory tree of TrueType and OpenType fonts
+         * @param threads
+         *            number of files to read at once
+         * @return fonts loaded, files that failed, and the change to the registry
+         * @throws IOException
+         *             the directory cannot be read
+         */
+        public FontLoadReport registerFontDirectory(final Path directory,
+                                                    final int threads) throws IOException {
+            final List<Path> files;
+            try (Stream<Path> paths = Files.walk(directory)) {
+                files = paths.filter(p -> Files.isRegularFile(p) && isFontFile(p))
+                             .sorted()
+                             .collect(Collectors.toList());
+            }
+            final ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+            final List<Future<List<Font>>> results = new ArrayList<>();
+            try {
+                for (final Path file : files) {
+                    results.add(pool.submit(() -> loadFonts(file)));
+                }
+                final List<Font> fonts = new ArrayList<>();
+                final Map<Path, Exception> failures = new TreeMap<>();
+                for (int i = 0; i < files.size(); i++) {
+                    try {
+                        fonts.addAll(results.get(i).get());
+                    } catch (final ExecutionException error) {
+                        failures.put(files.get(i),
+                                     error.getCause() instanceof Exception
+                                             ? (Exception) error.getCause()
+                                             : error);
+                    }
+                }
+                return new FontLoadReport(fonts, failures, update(fonts, Collections.emptyList()));
+            } catch (final InterruptedException error) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(directory.toString());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        /**
+         * List the families of a font pack without reading its fonts. The fonts of a family are
+         * read from the archive when the family is first selected, or its fonts otherwise asked
+         * for. If they differ from the table of contents the registry is corrected on the EDT.
+         *
+         * @param pack
+         *            font pack to add
+         * @return families added and changed
+         */
+        public RegistryChange registerFontPack(final FontPack pack) {
+            synchronized (mPacks) {
+                pack.getFamilyNames()
+                    .stream()
+                    .forEach(f -> mPacks.computeIfAbsent(f, k -> new ArrayList<>()).add(pack));
+            }
+            return update(pack.getFontNames(), Collections.emptyMap());
+        }
+
+        /**
+         * Read the fonts of a family from the font packs that list it, the first time it is used.
+         */
+        private void loadPacks(final String familyName) {
+            if (!mPacks.containsKey(familyName)) {
+                return;
+            }
+            synchronized (mPacks) {
+                final List<FontPack> packs = mPacks.remove(familyName);
+                if (packs == null) {
+                    return;
+                }
+                final List<Font> fonts = new ArrayList<>();
+                final Set<String> listed = new HashSet<>();
+                for (final FontPack pack : packs) {
+                    fonts.addAll(pack.load(familyName));
+                    listed.addAll(pack.getFontNames().get(familyName));
+                }
+                final Map<String, List<String>> loaded = byFamily(fonts);
+                final List<String> actual = loaded.getOrDefault(familyName,
+                                                                Collections.emptyList());
+                if (!new HashSet<>(actual).equals(listed)
+                        || loaded.size() > (actual.isEmpty() ? 0 : 1)) {
+                    final List<String> missing = new ArrayList<>(listed);
+                    missing.removeAll(actual);
+                    // not while a list model may be computing the family's fonts
+                    SwingUtilities.invokeLater(() -> update(loaded,
+                                                            Collections.singletonMap(familyName,
+                                                                                     missing)));
+                }
+            }
+        }
+
+        /**
+         * @param fontFile
+         *            file to read
+         * @return true if the file name is of a TrueType or OpenType font or collection
+         */
+        static boolean isFontFile(final Path fontFile) {
+            return isFontFileName(fontFile.getFileName().toString());
+        }
+
+        /**
+         * @param fileName
+         *            file or archive entry name
+         * @return true if the name is of a TrueType or OpenType font or collection
+         */
+        static boolean isFontFileName(final String fileName) {
+            final String name = fileName.toLowerCase();
+            return name.endsWith(".ttf") || name.endsWith(".otf") //$NON-NLS-1$ //$NON-NLS-2$
+                    || name.endsWith(".ttc"); //$NON-NLS-1$
+        }
+
+        /**
+         * Read all fonts of a font file and register them with the GraphicsEnvironment so they can
+         * be created by name. The file is handed to the JDK as a file, as reading it into a
+         * stream first makes the JDK copy it to a temporary file.
+         *
+         * @param fontFile
+         *            TrueType or OpenType font or collection
+         * @return fonts of the file
+         * @throws IOException
+         *             file cannot be read
+         * @throws FontFormatException
+         *             not a font, or not completely written yet
+         */
+        static List<Font> loadFonts(final Path fontFile) throws IOException, FontFormatException {
+            final Font[] fonts = Font.createFonts(fontFile.toFile());
+            final GraphicsEnvironment environment = //
+                    GraphicsEnvironment.getLocalGraphicsEnvironment();
+            for (final Font font : fonts) {
+                environment.registerFont(font);
+            }
+            return Arrays.asList(fonts);
+        }
+
+        /**
+         * @return true if the family has a font of this name
+         */
+        boolean isFont(final String familyName, final String fontName) {
+            final FontCatalog catalog = getFaces(familyName);
+            final int family = catalog.indexOfFamily(familyName);
+            if (family != -1) {
+                for (int face = catalog.getFirstFace(family); face < catalog.getEndFace(family);
+                        face++) {
+                    if (catalog.getFaceName(face).equals(fontName)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static List<String> getCatalogFontNames(final FontCatalog catalog,
+                                                        final String familyName) {
+            final List<String> result = new ArrayList<>();
+            final int family = catalog.indexOfFamily(familyName);
+            if (family != -1) {
+                for (int face = catalog.getFirstFace(family); face < catalog.getEndFace(family);
+                        face++) {
+                    result.add(catalog.getFaceName(face));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @return the background thread of {@link #prefetch(Runnable)}, started on its first task
+         */
+        private static ExecutorService newPrefetcher() {
+            return Executors.newSingleThreadExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "FontRegistry.prefetch"); //$NON-NLS-1$
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        }
+
+        /**
+         * Run a task on the background thread that loads and warms fonts ahead of the user, such as
+         * for {@link FamilyPrefetcher}. Tasks run one at a time, in order, on a thread shared by
+         * every registry.
+         *
+         * @param task
+         *            task to run
+         */
+        void prefetch(final Runnable task) {
+            sPrefetcher.execute(task);
+        }
+
+        /**
+         * In lazy mode, read all fonts on the prefetch thread, once, and update the families with
+         * them, so the fonts {@link #loadFaces(String)} cannot find are listed too. Called when the
+         * family list is first painted, so it does not delay the first paint.
+         */
+        void loadAllFontsLater() {
+            if (mLazy && mAllFontsQueued.compareAndSet(false, true)) {
+                prefetch(() -> {
+                    final Font[] fonts = //
+                            GraphicsEnvironment.getLocalGraphicsEnvironment().getAllFonts();
+                    update(byFamily(Arrays.asList(fonts)), Collections.emptyMap());
+                    mAllFontsLoaded = true;
+                    mLazyFaces.clear();
+                });
+            }
+        }
+
+        /**
+         * @param familyName
+         *            family name to look up
+         * @return catalog that holds the fonts of the family, loading them in lazy mode
+         */
+        private FontCatalog getFaces(final String familyName) {
+            loadPacks(familyName);
+            final FontCatalog catalog = mCatalog;
+            if (!mLazy || mAllFontsLoaded || catalog.indexOfFamily(familyName) == -1) {
+                return catalog;
+            }
+            final FontCatalog faces = mLazyFaces.get(familyName); // no lambda once loaded
+            return faces != null ? faces : mLazyFaces.computeIfAbsent(familyName, this::loadFaces);
+        }
+
+        /**
+         * Find the fonts of one family from the family in each style, until all fonts are read.
+         * Font.getFontName() gives the same names getAllFonts() would. Fonts added by
+         * {@link #update(Collection, Collection)} are in the main catalog.
+         */
+        private FontCatalog loadFaces(final String familyName) {
+            final FontCatalog.Builder builder = new FontCatalog.Builder().addFamily(familyName);
+            final Set<String> fontNames = new HashSet<>(getCatalogFontNames(mCatalog, familyName));
+            fontNames.stream().forEach(n -> builder.addFont(familyName, n));
+            for (final FontStyle style : FontStyle.values()) {
+                final Font font = new Font(familyName, style.getStyle(), 1);
+                if (font.getFamily().equals(familyName) && fontNames.add(font.getFontName())) {
+                    builder.addFont(familyName, font.getFontName());
+                }
+            }
+            return builder.build();
+        }
+
+        /**
+         * Strip family name from a font name.
+         *
+         * @param font
+         *            font to use
+         * @return if name contains a '-', then remove all before plus the '-'
+         */
+        public static String stripFamily(final Font font) {
+            return stripFamily(font.getName());
+        }
+
+        /**
+         * Strip family name from a font name.
+         *
+         * @param fontName
+         *            font name to use
+         * @return if name contains a '-', then remove all before plus the '-'
+         */
+        static String stripFamily(final String fontName) {
+            return fontName.substring(FontCatalog.stripOffset(fontName));
+        }
+
+        /**
+         * Get all family names.
+         *
+         * @return array of all family names, in the order of the locale, see
+         *         {@link #setLocale(Locale)}
+         */
+        public String[] getFamilyNames() {
+            return getOrder().getFamilyNames();
+        }
+
+        /**
+         * @return the order of the families of the current catalog, computed once per catalog
+         */
+        FamilyOrder getOrder() {
+            FamilyOrder order = mOrder;
+            if (order == null || order.getCatalog() != mCatalog) {
+                synchronized (this) {
+                    order = mOrder;
+                    if (order == null || order.getCatalog() != mCatalog) {
+                        order = new FamilyOrder(mCatalog, mLocale);
+                        mOrder = order;
+                    }
+                }
+            }
+            return order;
+        }
+
+        /**
+         * Sort the families for another locale, such as when the user interface language changes.
+         * The collation keys are computed in the background and the family lists are reordered on
+         * the EDT when done. The default is the display locale.
+         *
+         * @param locale
+         *            locale of the Collator
+         * @return completes when the lists have been told, on the EDT, so chain on it there
+         *         rather than join it
+         */
+        public CompletableFuture<Void> setLocale(final Locale locale) {
+            mLocale = locale;
+            return CompletableFuture.supplyAsync(() -> {
+                final FontCatalog catalog = mCatalog;
+                final FamilyOrder order = new FamilyOrder(catalog, locale);
+                synchronized (this) {
+                    if (!locale.equals(mLocale)) {
+                        return false; // changed again
+                    }
+                    if (mCatalog == catalog) {
+                        mOrder = order;
+                    } // else already sorted for the locale with the new catalog
+                }
+                return true;
+            }).thenCompose(sorted -> {
+                final CompletableFuture<Void> told = new CompletableFuture<>();
+                if (!sorted) {
+                    told.complete(null);
+                    return told;
+                }
+                // not invokeAndWait, the caller may be joining on the EDT
+                SwingUtilities.invokeLater(() -> {
+                    try {
+                        fireChanged(RegistryChange.ORDER);
+                        told.complete(null);
+                    } catch (final RuntimeException error) {
+                        told.completeExceptionally(error);
+                    }
+                });
+                return told;
+            });
+        }
+
+        public boolean isFamilyName(final String name) {
+            return mCatalog.indexOfFamily(name) != -1;
+        }
+
+        /**
+         * Get all stripped font names. Move the one similar to the family name to the top (same or
+         * same with spaces removed).
+         *
+         * @param familyName
+         *            family name to look up
+         * @return sorted array of all font names stripped of any thing before '-', empty if not a
+         *         family name
+         */
+        public String[] getFontNames(final String familyName) {
+            final FontCatalog catalog = getFaces(familyName);
+            final int family = catalog.indexOfFamily(familyName);
+            if (family == -1) {
+                return new String[0];
+            }
+            final List<String> result = new ArrayList<>();
+            final int end = catalog.getEndFace(family);
+            for (int face = catalog.getFirstFace(family); face < end; face++) {
+                result.add(catalog.getStrippedName(face));
+            }
+            for (final String name : Arrays.asList(familyName, familyName.replace(" ", ""))) {
+                final int index = result.indexOf(name);
+                if (index != -1) {
+                    result.remove(index);
+                    result.add(0, STR_REGULAR); // Regular
+                    break;
+                }
+            }
+            return result.stream().toArray(String[]::new);
+        }
+
+        /**
+         * Get the actual font name for a stripped name.
+         *
+         * @param familyName
+         *            family name to look up
+         * @param strippedName
+         *            a stripped font name
+         * @return actual font name
+         * @throws IllegalArgumentException
+         *             no font found
+         */
+        public String getFontName(final String familyName,
+                                  final String strippedName) throws IllegalArgumentException {
+            final FontCatalog catalog = getFaces(familyName);
+            final int face = indexOfFont(catalog, familyName, strippedName);
+            return face < 0 ? familyName : catalog.getFaceName(face);
+        }
+
+        /**
+         * @return index of the font, or ~family if the family has no font of that name and the
+         *         name is "Regular", which is the family name
+         * @throws IllegalArgumentException
+         *             no font found
+         */
+        private static int indexOfFont(final FontCatalog catalog,
+                                       final String familyName,
+                                       final String strippedName) throws IllegalArgumentException {
+            final int family = catalog.indexOfFamily(familyName);
+            final int face = family == -1 ? -1 : catalog.indexOfFace(family, strippedName);
+            if (face != -1) {
+                return face;
+            } else if (family != -1 && strippedName.equals(STR_REGULAR)) {
+                return ~family;
+            } else {
+                throw new IllegalArgumentException(familyName + " " + strippedName);
+            }
+        }
+
+        /**
+         * Create the font for a stripped name. This is the only place fonts of the registry are
+         * created.
+         *
+         * @param familyName
+         *            family name to look up
+         * @param strippedName
+         *            a stripped font name
+         * @param style
+         *            Font.PLAIN, Font.BOLD, ...
+         * @param size
+         *            point size
+         * @return the font, the same one as last time if still cached
+         * @throws IllegalArgumentException
+         *             no font found
+         */
+        public Font getFont(final String familyName,
+                            final String strippedName,
+                            final int style,
+                            final int size) throws IllegalArgumentException {
+            final FontCatalog catalog = getFaces(familyName);
+            final int face = indexOfFont(catalog, familyName, strippedName);
+            final int hash = System.identityHashCode(catalog)
+                    + 31 * (face + 31 * (style + 31 * size));
+            final int slot = (hash ^ hash >>> 16) & (FONT_CACHE_SIZE - 1);
+            final CachedFont cached = mFontCache[slot];
+            if (cached != null && cached.mCatalog == catalog && cached.mFace == face
+                    && cached.mFont.getStyle() == style && cached.mFont.getSize() == size) {
+                return cached.mFont;
+            }
+            final Font font = new Font(face < 0 ? familyName : catalog.getFaceName(face),
+                                       style,
+                                       size);
+            mFontCache[slot] = new CachedFont(catalog, face, font);
+            return font;
+        }
+
+        /**
+         * A font recently asked for. Immutable, so the cache needs no locking.
+         */
+        private static final class CachedFont {
+
+            private final FontCatalog mCatalog;
+            private final int         mFace;
+            private final Font        mFont;
+
+            CachedFont(final FontCatalog catalog, final int face, final Font font) {
+                mCatalog = catalog;
+                mFace = face;
+                mFont = font;
+            }
+        }
+
+        /**
+         * Strip family name from font to match name in list. Used in JUnit tests to drive robot.
+         *
+         * @param font
+         *            font
+         * @return stripped font name
+         */
+        public String getFontNameForList(final Font font) {
+            String result = stripFamily(font);
+            if (font.getFamily().equals(result)) {
+                result = STR_REGULAR;
+            }
+            return result;
+        }
+
+        private void dump() {
+            Arrays.asList(getFamilyNames()).stream().forEach(f -> dump(f));
+        }
+
+        private void dump(final String familyName) {
+            System.out.println(String.format("%-25s  %s",
+                                             familyName,
+                                             Arrays.asList(getFontNames(familyName))
+                                                   .stream()
+                                                   .collect(Collectors.joining(", "))));
+        }
+
+    }
+
+    /**
+     * The order the families of a catalog are shown in, sorted by a Collator for a locale rather
+     * than by String order, so accented and CJK names sort where users expect them. The collation
+     * key of each family is computed once, when the order is built for a catalog, and only the
+     * sorted permutation is kept. The catalog itself stays in String order for its binary
+     * searches.
+     */
+    static final class FamilyOrder {
+
+        private final FontCatalog mCatalog;
+        private final Locale      mLocale;
+        private final int[]       mFamilies; // family indexes in display order
+        private final int[]       mRanks;    // display position by family index
+
+        /**
+         * @param catalog
+         *            catalog to sort
+         * @param locale
+         *            locale of the Collator
+         */
+        FamilyOrder(final FontCatalog catalog, final Locale locale) {
+            mCatalog = catalog;
+            mLocale = locale;
+            final Collator collator = Collator.getInstance(locale);
+            final int count = catalog.getFamilyCount();
+            final CollationKey[] keys = new CollationKey[count];
+            final Integer[] families = new Integer[count];
+            for (int family = 0; family < count; family++) {
+                keys[family] = collator.getCollationKey(catalog.getFamilyName(family));
+                families[family] = family;
+            }
+            // names that collate the same keep their String order
+            Arrays.sort(families, (f1, f2) -> {
+                final int compare = keys[f1].compareTo(keys[f2]);
+                return compare != 0 ? compare : f1 - f2;
+            });
+            mFamilies = new int[count];
+            mRanks = new int[count];
+            for (int rank = 0; rank < count; rank++) {
+                mFamilies[rank] = families[rank];
+                mRanks[families[rank]] = rank;
+            }
+        }
+
+        FontCatalog getCatalog() {
+            return mCatalog;
+        }
+
+        Locale getLocale() {
+            return mLocale;
+        }
+
+        /**
+         * @return all family names in display order
+         */
+        String[] getFamilyNames() {
+            final String[] result = new String[mFamilies.length];
+            for (int rank = 0; rank < result.length; rank++) {
+                result[rank] = mCatalog.getFamilyName(mFamilies[rank]);
+            }
+            return result;
+        }
+
+        /**
+         * @param familyName
+         *            a family of the catalog
+         * @return display position of the family, -1 if not in the catalog
+         */
+        int getRank(final String familyName) {
+            final int family = mCatalog.indexOfFamily(familyName);
+            return family == -1 ? -1 : mRanks[family];
+        }
+    }
+
+    /**
+     * Compact, read only description of a set of fonts. Every distinct name is stored once in a
+     * shared string table and families and fonts refer to it by int offsets. A font name that
+     * starts with its family name only stores the rest, so the common " Bold", " Italic", ...
+     * endings are shared by all families. A system with thousands of fonts costs a few arrays
+     * instead of a java.awt.Font, with its own name strings and native references, per font.
+     * Families are sorted by name, and the fonts of each family are sorted by stripped name (see
+     * {@link FontRegistry#stripFamily(Font)}).
+     */
+    static final class FontCatalog {
+
+        /** First int written by {@link #write(DataOutput)}, changed with the format. */
+        private static final int MAGIC = 0x46434331; // FCC1
+
+        private final String mTable;       // all distinct names back to back
+        private final int[]  mStarts;      // start of name n in mTable, last entry is the end
+        private final int[]  mFamilyNames; // name of each family
+        private final int[]  mFamilyFaces; // first font of each family, last entry is the end
+        private final int[]  mFaceNames;   // name of each font, ~name if it follows the family name
+        private final int[]  mFaceStrips;  // chars to skip in the font name for the stripped name
+
+        private FontCatalog(final String table,
+                            final int[] starts,
+                            final int[] familyNames,
+                            final int[] familyFaces,
+                            final int[] faceNames,
+                            final int[] faceStrips) {
+            mTable = table;
+            mStarts = starts;
+            mFamilyNames = familyNames;
+            mFamilyFaces = familyFaces;
+            mFaceNames = faceNames;
+            mFaceStrips = faceStrips;
+        }
+
+        /**
+         * @param fontName
+         *            font name
+         * @return offset of the stripped name, after the first '-', or 0 if none
+         */
+        static int stripOffset(final String fontName) {
+            return fontName.indexOf('-') + 1;
+        }
+
+        int getFamilyCount() {
+            return mFamilyNames.length;
+        }
+
+        int getFaceCount() {
+            return mFaceNames.length;
+        }
+
+        String getFamilyName(final int family) {
+            return getString(mFamilyNames[family]);
+        }
+
+        /**
+         * @param family
+         *            family index
+         * @return index of the first font of the family
+         */
+        int getFirstFace(final int family) {
+            return mFamilyFaces[family];
+        }
+
+        /**
+         * @param family
+         *            family index
+         * @return index after the last font of the family
+         */
+        int getEndFace(final int family) {
+            return mFamilyFaces[family + 1];
+        }
+
+        /**
+         * @param face
+         *            font index
+         * @return family index of the font
+         */
+        int getFamily(final int face) {
+            int low = 0;
+            int high = mFamilyNames.length - 1;
+            while (low < high) {
+                final int middle = (low + high + 1) >>> 1;
+                if (mFamilyFaces[middle] <= face) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+
+        String getFaceName(final int face) {
+            final int name = mFaceNames[face];
+            if (name < 0) {
+                return getFamilyName(getFamily(face)) + getString(~name);
+            }
+            return getString(name);
+        }
+
+        String getStrippedName(final int face) {
+            return getFaceName(face).substring(mFaceStrips[face]);
+        }
+
+        /**
+         * Create the font lazily, nothing is cached.
+         *
+         * @param face
+         *            font index
+         * @param style
+         *            Font.PLAIN, Font.BOLD, ...
+         * @param size
+         *            point size
+         * @return new font
+         */
+        Font createFont(final int face, final int style, final int size) {
+            return new Font(getFaceName(face), style, size);
+        }
+
+        /**
+         * @return the family of each font by font name; a family without fonts, as in a lazy
+         *         catalog, is its own font
+         */
+        Map<String, String> getFamiliesByFont() {
+            final Map<String, String> result = new HashMap<>();
+            for (int family = 0; family < getFamilyCount(); family++) {
+                if (getFirstFace(family) == getEndFace(family)) {
+                    result.put(getFamilyName(family), getFamilyName(family));
+                }
+                for (int face = getFirstFace(family); face < getEndFace(family); face++) {
+                    result.put(getFaceName(face), getFamilyName(family));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @param name
+         *            family name
+         * @return family index or -1 if not found
+         */
+        int indexOfFamily(final String name) {
+            int low = 0;
+            int high = mFamilyNames.length - 1;
+            while (low <= high) {
+                final int middle = (low + high) >>> 1;
+                final int compare = compareFamily(middle, name);
+                if (compare < 0) {
+                    low = middle + 1;
+                } else if (compare > 0) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @param family
+         *            family index
+         * @param strippedName
+         *            stripped font name
+         * @return index of the first font with this stripped name or -1 if not found
+         */
+        int indexOfFace(final int family, final String strippedName) {
+            int low = getFirstFace(family);
+            int high = getEndFace(family);
+            while (low < high) { // lower bound, so duplicate names find the first one
+                final int middle = (low + high) >>> 1;
+                if (compareStripped(family, middle, strippedName) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            if (low < getEndFace(family) && compareStripped(family, low, strippedName) == 0) {
+                return low;
+            }
+            return -1;
+        }
+
+        private String getString(final int name) {
+            return mTable.substring(mStarts[name], mStarts[name + 1]);
+        }
+
+        /**
+         * Write the catalog as it is held, so {@link #read(DataInput)} needs no sorting or
+         * interning.
+         *
+         * @param output
+         *            output to write to
+         * @throws IOException
+         *             write failed
+         */
+        void write(final DataOutput output) throws IOException {
+            output.writeInt(MAGIC);
+            final byte[] table = mTable.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(table.length);
+            output.write(table);
+            for (final int[] values : new int[][]{
+                                                  mStarts,
+                                                  mFamilyNames,
+                                                  mFamilyFaces,
+                                                  mFaceNames,
+                                                  mFaceStrips
+            }) {
+                output.writeInt(values.length);
+                for (final int value : values) {
+                    output.writeInt(value);
+                }
+            }
+        }
+
+        /**
+         * @param input
+         *            input written by {@link #write(DataOutput)}
+         * @return the catalog
+         * @throws IOException
+         *             read failed or not a catalog
+         */
+        static FontCatalog read(final DataInput input) throws IOException {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("not a font catalog"); //$NON-NLS-1$
+            }
+            final byte[] table = new byte[readLength(input)];
+            input.readFully(table);
+            final int[][] values = new int[5][];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = new int[readLength(input)];
+                for (int j = 0; j < values[i].length; j++) {
+                    values[i][j] = input.readInt();
+                }
+            }
+            return new FontCatalog(new String(table, StandardCharsets.UTF_8),
+                                   values[0],
+                                   values[1],
+                                   values[2],
+                                   values[3],
+                                   values[4]);
+        }
+
+        private static int readLength(final DataInput input) throws IOException {
+            final int length = input.readInt();
+            if (length < 0) {
+                throw new IOException("bad length " + length); //$NON-NLS-1$
+            }
+            return length;
+        }
+
+        /**
+         * Compare a family name with a string, as String.compareTo() would, without creating a
+         * string.
+         */
+        private int compareFamily(final int family, final String value) {
+            final int name = mFamilyNames[family];
+            final int start = mStarts[name];
+            final int length = mStarts[name + 1] - start;
+            final int limit = Math.min(length, value.length());
+            for (int i = 0; i < limit; i++) {
+                final char c1 = mTable.charAt(start + i);
+                final char c2 = value.charAt(i);
+                if (c1 != c2) {
+                    return c1 - c2;
+                }
+            }
+            return length - value.length();
+        }
+
+        /**
+         * Compare a stripped font name with a string, as String.compareTo() would, without
+         * creating a string.
+         */
+        private int compareStripped(final int family, final int face, final String value) {
+            final int name = mFaceNames[face];
+            final int prefixName = mFamilyNames[family];
+            final int prefixStart = mStarts[prefixName];
+            final int prefixLength = name < 0 ? mStarts[prefixName + 1] - prefixStart : 0;
+            final int start = mStarts[name < 0 ? ~name : name];
+            final int length = prefixLength + mStarts[(name < 0 ? ~name : name) + 1] - start
+                    - mFaceStrips[face];
+            final int limit = Math.min(length, value.length());
+            for (int i = 0; i < limit; i++) {
+                final int offset = i + mFaceStrips[face];
+                final char c1 = offset < prefixLength
+                        ? mTable.charAt(prefixStart + offset)
+                        : mTable.charAt(start + offset - prefixLength);
+                final char c2 = value.charAt(i);
+                if (c1 != c2) {
+                    return c1 - c2;
+                }
+            }
+            return length - value.length();
+        }
+
+        /**
+         * Collects family and font names and packs them into a catalog.
+         */
+        static final class Builder {
+
+            private final Map<String, List<String>> mFamilies = new HashMap<>();
+            private final StringBuilder             mTable    = new StringBuilder();
+            private final Map<String, Integer>      mIds      = new HashMap<>();
+            private final List<Integer>             mStarts   = new ArrayList<>();
+
+            /**
+             * @param familyName
+             *            family, may have no fonts
+             * @return this
+             */
+            Builder addFamily(final String familyName) {
+                mFamilies.computeIfAbsent(familyName, f -> new ArrayList<>());
+                return this;
+            }
+
+            /**
+             * @param familyName
+             *            family of the font, added if not known
+             * @param fontName
+             *            font name, Font.getName()
+             * @return this
+             */
+            Builder addFont(final String familyName, final String fontName) {
+                mFamilies.computeIfAbsent(familyName, f -> new ArrayList<>()).add(fontName);
+                return this;
+            }
+
+            /**
+             * @param catalog
+             *            catalog to copy families and fonts from
+             * @param skip
+             *            families not to copy
+             * @return this
+             */
+            Builder addCatalog(final FontCatalog catalog, final Predicate<String> skip) {
+                for (int family = 0; family < catalog.getFamilyCount(); family++) {
+                    final String familyName = catalog.getFamilyName(family);
+                    if (!skip.test(familyName)) {
+                        addFamily(familyName);
+                        for (int face = catalog.getFirstFace(family);
+                                face < catalog.getEndFace(family); face++) {
+                            addFont(familyName, catalog.getFaceName(face));
+                        }
+                    }
+                }
+                return this;
+            }
+
+            FontCatalog build() {
+                final String[] familyNames = mFamilies.keySet()
+                                                      .stream()
+                                                      .sorted()
+                                                      .toArray(String[]::new);
+                final int faceCount = mFamilies.values().stream().mapToInt(List::size).sum();
+                final int[] families = new int[familyNames.length];
+                final int[] familyFaces = new int[familyNames.length + 1];
+                final int[] faceNames = new int[faceCount];
+                final int[] faceStrips = new int[faceCount];
+                final Comparator<String> byStrippedName = //
+                        Comparator.comparing(n -> n.substring(stripOffset(n)));
+                int face = 0;
+                for (int family = 0; family < familyNames.length; family++) {
+                    final String familyName = familyNames[family];
+                    families[family] = intern(familyName);
+                    familyFaces[family] = face;
+                    final List<String> fontNames = mFamilies.get(familyName);
+                    fontNames.sort(byStrippedName);
+                    for (final String fontName : fontNames) {
+                        faceNames[face] = fontName.startsWith(familyName)
+                                ? ~intern(fontName.substring(familyName.length()))
+                                : intern(fontName);
+                        faceStrips[face] = stripOffset(fontName);
+                        face++;
+                    }
+                }
+                familyFaces[familyNames.length] = face;
+                mStarts.add(mTable.length());
+                return new FontCatalog(mTable.toString(),
+                                       mStarts.stream().mapToInt(Integer::intValue).toArray(),
+                                       families,
+                                       familyFaces,
+                                       faceNames,
+                                       faceStrips);
+            }
+
+            private int intern(final String name) {
+                return mIds.computeIfAbsent(name, n -> {
+                    mStarts.add(mTable.length());
+                    mTable.append(n);
+                    return mStarts.size() - 1;
+                });
+            }
+        }
+    }
+
+    /**
+     * The catalog of the installed fonts kept in a file, so a tool that only needs the names does
+     * not wait for the fonts to be enumerated. The file holds a fingerprint of the JVM and of the
+     * last modified times of the directories fonts are installed in, and is rebuilt when that no
+     * longer matches.
+     */
+    static final class CatalogCache {
+
+        private static final String[] FONT_DIRECTORIES = {
+                "/usr/share/fonts", //$NON-NLS-1$
+                "/usr/local/share/fonts", //$NON-NLS-1$
+                "~/.fonts", //$NON-NLS-1$
+                "~/.local/share/fonts", //$NON-NLS-1$
+                "/System/Library/Fonts", //$NON-NLS-1$
+                "/Library/Fonts", //$NON-NLS-1$
+                "~/Library/Fonts", //$NON-NLS-1$
+                "${WINDIR}/Fonts", //$NON-NLS-1$
+                "${LOCALAPPDATA}/Microsoft/Windows/Fonts", //$NON-NLS-1$
+                "${java.home}/lib/fonts" //$NON-NLS-1$
+        };
+
+        private final Path            mFile;
+
+        /**
+         * @param file
+         *            file to keep the catalog in
+         */
+        CatalogCache(final Path file) {
+            mFile = file;
+        }
+
+        /**
+         * @return the cache file shared by all tools of a user, in the temporary directory
+         */
+        static Path getDefaultFile() {
+            return getCacheFile("catalog"); //$NON-NLS-1$
+        }
+
+        /**
+         * @param extension
+         *            kind of cache
+         * @return a cache file of the user, in the temporary directory
+         */
+        static Path getCacheFile(final String extension) {
+            final String name = "FontChooserDialog-" //$NON-NLS-1$
+                    + System.getProperty("user.name") + '.' + extension; //$NON-NLS-1$
+            return Paths.get(System.getProperty("java.io.tmpdir"), name); //$NON-NLS-1$
+        }
+
+        /**
+         * Write to a temporary file and rename it, so readers never see half a file.
+         *
+         * @param file
+         *            file to replace
+         * @param content
+         *            new content
+         * @throws IOException
+         *             write failed
+         */
+        static void replace(final Path file, final byte[] content) throws IOException {
+            final Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(),
+                                                        file.getFileName().toString(),
+                                                        ".tmp"); //$NON-NLS-1$
+            try {
+                Files.write(temporary, content);
+                try {
+                    Files.move(temporary,
+                               file,
+                               StandardCopyOption.REPLACE_EXISTING,
+                               StandardCopyOption.ATOMIC_MOVE);
+                } catch (final AtomicMoveNotSupportedException error) {
+                    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+
+        Path getFile() {
+            return mFile;
+        }
+
+        /**
+         * @param refresh
+         *            true to ignore the file
+         * @return the catalog of the file if still current, otherwise the catalog of the installed
+         *         fonts, which is then written to the file
+         */
+        FontCatalog load(final boolean refresh) {
+            final long fingerprint = fingerprint();
+            final FontCatalog cached = refresh ? null : read(fingerprint);
+            if (cached != null) {
+                return cached;
+            }
+            final FontCatalog catalog = new FontRegistry(false).getCatalog();
+            try {
+                write(fingerprint, catalog);
+            } catch (final IOException error) {
+                // still usable, only slower next time
+            }
+            return catalog;
+        }
+
+        /**
+         * @return the catalog of the file if its fingerprint matches, null if not or unreadable
+         */
+        @Nullable
+        private FontCatalog read(final long fingerprint) {
+            try (DataInputStream input = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(mFile)))) {
+                return input.readLong() == fingerprint ? FontCatalog.read(input) : null;
+            } catch (final IOException error) {
+                return null;
+            }
+        }
+
+        private void write(final long fingerprint, final FontCatalog catalog) throws IOException {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream output = new DataOutputStream(bytes)) {
+                output.writeLong(fingerprint);
+                catalog.write(output);
+            }
+            replace(mFile, bytes.toByteArray());
+        }
+
+        /**
+         * @return hash of the Java version and the path and last modified time of every directory
+         *         under the font directories, which change as font files are added or removed
+         */
+        static long fingerprint() {
+            long hash = (System.getProperty("java.version") //$NON-NLS-1$
+                    + System.getProperty("os.name")).hashCode(); //$NON-NLS-1$
+            for (final String directory : FONT_DIRECTORIES) {
+                final Path root = resolve(directory);
+                if (root == null || !Files.isDirectory(root)) {
+                    continue;
+                }
+                try (Stream<Path> paths = Files.walk(root, FileVisitOption.FOLLOW_LINKS)) {
+                    for (final Path path : (Iterable<Path>) paths.filter(Files::isDirectory)
+                                                                 ::iterator) {
+                        hash = 31 * hash + path.hashCode();
+                        hash = 31 * hash + Files.getLastModifiedTime(path).toMillis();
+                    }
+                } catch (final IOException | UncheckedIOException error) {
+                    hash = 31 * hash + error.getClass().hashCode(); // rebuilt until readable
+                }
+            }
+            return hash;
+        }
+
+        /**
+         * @return the directory with ~ and ${name} replaced by the system property or environment
+         *         variable, or null if one is not set
+         */
+        @Nullable
+        private static Path resolve(final String directory) {
+            String result = directory.startsWith("~") //$NON-NLS-1$
+                    ? System.getProperty("user.home") + directory.substring(1) //$NON-NLS-1$
+                    : directory;
+            if (result.startsWith("${")) { //$NON-NLS-1$
+                final String name = result.substring(2, result.indexOf('}'));
+                final String value = System.getProperty(name, System.getenv(name));
+                if (value == null) {
+                    return null;
+                }
+                result = value + result.substring(result.indexOf('}') + 1);
+            }
+            return Paths.get(result);
+        }
+    }
+
+    /**
+     * How long each installed font takes to rasterize, for batch rendering that needs fonts that
+     * keep its throughput up. The preview text is drawn headless, anti-aliased, at each of
+     * {@link #SIZES}, each time at a size not drawn before so every glyph is rasterized rather than
+     * taken from the glyph cache, and the median time per glyph is kept. Results are kept in a
+     * file by font name and number of glyphs, as Java does not tell which file a font is from, and
+     * fonts already measured are not measured again unless their number of glyphs changed. The cost
+     * of a family is that of its slowest font.
+     * <p>
+     * The fonts of the registry are measured on a low priority thread of their own, so nothing
+     * else of this class runs on it, once {@link #start()} is called, as when the chooser first
+     * lists {@link FilterFastRendering}, and again when fonts are added; the filter lists the fast
+     * families, fastest first, once they are. Run {@link #main(String[])} on a host to measure its
+     * fonts ahead of time, or all again.
+     */
+    public static final class RenderCost
+        implements
+            RegistryListener {
+
+        /** Point sizes the preview text is drawn at. */
+        static final int[]        SIZES       = {
+                                                 10, 12, 24, 48
+        };
+        /** Times the text is drawn at each size. */
+        private static final int  ROUNDS      = 3;
+        /** A family is fast if it costs no more than this times the median family. */
+        private static final float FAST_FACTOR = 1.5f;
+
+        private static RenderCost sInstance;
+        private static final AtomicInteger sSizes = new AtomicInteger(); // new sizes to draw at
+        private static final ExecutorService sProfiler = //
+                Executors.newSingleThreadExecutor(runnable -> {
+                    final Thread thread = new Thread(runnable, "RenderCost"); //$NON-NLS-1$
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+
+        private final Path        mFile;
+        private final Map<String, FaceCost> mFaces = new ConcurrentHashMap<>(); // by font name
+        private volatile Map<String, Float> mFamilies = Collections.emptyMap();
+        private volatile float    mLimit      = Float.NaN;
+        private volatile CompletableFuture<Void> mUpdate = CompletableFuture.completedFuture(null);
+        private boolean           mStarted;
+
+        /**
+         * @return costs kept in the default file, see {@link CatalogCache#getCacheFile(String)};
+         *         not measured until {@link #start()}
+         */
+        public static synchronized RenderCost getInstance() {
+            if (sInstance == null) {
+                sInstance = new RenderCost(getDefaultFile());
+            }
+            return sInstance;
+        }
+
+        private static Path getDefaultFile() {
+            return CatalogCache.getCacheFile("rendercost"); //$NON-NLS-1$
+        }
+
+        /**
+         * @param cost
+         *            costs to use for {@link FilterFastRendering}, or null for the default file
+         */
+        static synchronized void setInstance(@Nullable final RenderCost cost) {
+            sInstance = cost;
+        }
+
+        /**
+         * @return completed when the costs queued so far, by any instance, are measured
+         */
+        static CompletableFuture<Void> profilerIdle() {
+            return CompletableFuture.runAsync(() -> {
+                // runs after the queued measuring
+            }, sProfiler);
+        }
+
+        /**
+         * Measure the installed fonts not yet measured and save the costs.
+         *
+         * @param args
+         *            --all to measure every font again
+         * @throws IOException
+         *             save failed
+         */
+        public static void main(final String[] args) throws IOException {
+            System.setProperty("java.awt.headless", "true"); //$NON-NLS-1$ //$NON-NLS-2$
+            final RenderCost cost = new RenderCost(getDefaultFile());
+            final boolean all = args.length > 0 && args[0].equals("--all"); //$NON-NLS-1$
+            final int measured = cost.measure(new CatalogCache(CatalogCache.getDefaultFile())
+                    .load(false), all);
+            cost.save();
+            System.out.println(String.format("%,d fonts measured, %,d families," //$NON-NLS-1$
+                    + " fast up to %.0f ns/glyph, %s", //$NON-NLS-1$
+                                             measured,
+                                             cost.mFamilies.size(),
+                                             cost.mLimit,
+                                             cost.mFile));
+        }
+
+        /**
+         * @param file
+         *            file the costs are kept in, read if it exists
+         */
+        RenderCost(final Path file) {
+            mFile = file;
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final String[] fields = line.split("\t"); //$NON-NLS-1$
+                    if (fields.length == 4) {
+                        mFaces.put(fields[0],
+                                   new FaceCost(fields[1],
+                                                Integer.parseInt(fields[2]),
+                                                Float.parseFloat(fields[3])));
+                    }
+                }
+            } catch (final IOException | NumberFormatException error) {
+                // none yet, or not readable and measured again
+            }
+            summarize();
+        }
+
+        /**
+         * Measure the fonts of the registry not measured yet, and those added to it later, in the
+         * background. Only the first call starts anything.
+         *
+         * @return completed when the fonts of the registry are measured
+         */
+        public synchronized CompletableFuture<Void> start() {
+            if (!mStarted) {
+                mStarted = true;
+                FontRegistry.getInstance().addListener(this);
+                updateAsync();
+            }
+            return mUpdate;
+        }
+
+        /**
+         * Measure the fonts of the registry not measured yet, on the thread of the measurements.
+         *
+         * @return completed when the costs are updated
+         */
+        synchronized CompletableFuture<Void> updateAsync() {
+            mUpdate = mUpdate.handle((result, error) -> result).thenRunAsync(() -> {
+                if (measure(FontRegistry.getInstance().getCatalog(), false) > 0) {
+                    try {
+                        save();
+                    } catch (final IOException error) {
+                        // still usable, measured again next time
+                    }
+                }
+            }, sProfiler);
+            return mUpdate;
+        }
+
+        /**
+         * @return completed when the updates started so far are done
+         */
+        public CompletableFuture<Void> getUpdate() {
+            return mUpdate;
+        }
+
+        /**
+         * Measure the fonts added since the registry was last measured.
+         */
+        @Override
+        public void registryChanged(final RegistryChange change) {
+            if (!change.isOrderChanged()) {
+                updateAsync();
+            }
+        }
+
+        /**
+         * Measure the fonts of a catalog, one at a time so each is timed alone.
+         *
+         * @param catalog
+         *            families and fonts to measure
+         * @param all
+         *            true to measure fonts again that were measured before
+         * @return number of fonts measured
+         */
+        int measure(final FontCatalog catalog, final boolean all) {
+            measure(new Font(Font.DIALOG, Font.PLAIN, 1)); // warm up, not kept
+            int count = 0;
+            for (int family = 0; family < catalog.getFamilyCount(); family++) {
+                for (int face = catalog.getFirstFace(family); face < catalog.getEndFace(family);
+                        face++) {
+                    final Font font = catalog.createFont(face, Font.PLAIN, 1);
+                    final FaceCost known = mFaces.get(font.getFontName());
+                    if (all || known == null || known.mGlyphs != font.getNumGlyphs()) {
+                        mFaces.put(font.getFontName(),
+                                   new FaceCost(catalog.getFamilyName(family),
+                                                font.getNumGlyphs(),
+                                                measure(font)));
+                        count++;
+                    }
+                }
+            }
+            summarize();
+            if (count > 0) {
+                SharedListModels.dropFamilyModels(FilterFastRendering.class);
+            }
+            return count;
+        }
+
+        /**
+         * @param font
+         *            font to draw, any size
+         * @return median nanoseconds to rasterize and draw one glyph of the preview text
+         */
+        static float measure(final Font font) {
+            final FontRenderContext context = new FontRenderContext(null, true, true);
+            final int glyphs = Math.max(1,
+                                        font.createGlyphVector(context, STR_PREVIEW)
+                                            .getNumGlyphs());
+            final long[] times = new long[SIZES.length * ROUNDS];
+            int sample = 0;
+            for (final int size : SIZES) {
+                final BufferedImage image = new BufferedImage(size * STR_PREVIEW.length(),
+                                                              size * 2,
+                                                              BufferedImage.TYPE_INT_ARGB);
+                final Graphics2D graphics = image.createGraphics();
+                try {
+                    graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                                              RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                    graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS,
+                                              RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+                    for (int round = 0; round < ROUNDS; round++) {
+                        // a size not drawn before has no glyphs cached
+                        final float unique = (sSizes.incrementAndGet() & 0xFFFF) / 65536f;
+                        graphics.setFont(font.deriveFont(size + unique));
+                        final long start = System.nanoTime();
+                        graphics.drawString(STR_PREVIEW, 0, size * 3 / 2);
+                        times[sample++] = System.nanoTime() - start;
+                    }
+                } finally {
+                    graphics.dispose();
+                }
+            }
+            Arrays.sort(times);
+            return (float) times[times.length / 2] / glyphs;
+        }
+
+        /**
+         * Write the costs to the file.
+         *
+         * @throws IOException
+         *             write failed
+         */
+        void save() throws IOException {
+            final StringBuilder text = new StringBuilder();
+            mFaces.entrySet()
+                  .stream()
+                  .sorted(Map.Entry.comparingByKey())
+                  .forEach(e -> text.append(e.getKey())
+                                    .append('\t')
+                                    .append(e.getValue().mFamily)
+                                    .append('\t')
+                                    .append(e.getValue().mGlyphs)
+                                    .append('\t')
+                                    .append(e.getValue().mNanos)
+                                    .append('\n'));
+            CatalogCache.replace(mFile, text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * @param familyName
+         *            family name
+         * @return nanoseconds per glyph of the slowest font of the family, NaN if not measured
+         */
+        public float getFamilyCost(final String familyName) {
+            final Float cost = mFamilies.get(familyName);
+            return cost == null ? Float.NaN : cost;
+        }
+
+        /**
+         * @param familyName
+         *            family name
+         * @return true if the family was measured and is no more than {@value #FAST_FACTOR} times
+         *         as slow as the median family
+         */
+        public boolean isFast(final String familyName) {
+            return getFamilyCost(familyName) <= mLimit;
+        }
+
+        /**
+         * Find the cost of each family and the limit for a fast one.
+         */
+        private void summarize() {
+            final Map<String, Float> families = new HashMap<>();
+            mFaces.values().forEach(f -> families.merge(f.mFamily, f.mNanos, Math::max));
+            final float[] costs = new float[families.size()];
+            int i = 0;
+            for (final float cost : families.values()) {
+                costs[i++] = cost;
+            }
+            Arrays.sort(costs);
+            mFamilies = families;
+            mLimit = costs.length == 0 ? Float.NaN : costs[(costs.length - 1) / 2] * FAST_FACTOR;
+        }
+
+        /**
+         * The measured cost of one font.
+         */
+        private static final class FaceCost {
+
+            private final String mFamily;
+            private final int    mGlyphs;
+            private final float  mNanos;
+
+            FaceCost(final String family, final int glyphs, final float nanos) {
+                mFamily = family;
+                mGlyphs = glyphs;
+                mNanos = nanos;
+            }
+        }
+    }
+
+    /**
+     * Writes a specimen page per family as PNG for printing a catalog of the installed fonts, or
+     * of the families of one filter. A page shows every font of the family from
+     * {@link FontRegistry#getFontNames(String)} with the preview text at every size of
+     * FontChooserDialog.size_list. Families are rendered in parallel and each page is written as
+     * soon as it is drawn, so at most one page per thread, plus one drawn by the thread queueing
+     * families when all are busy, is held at once however many families there are. A family too
+     * tall for one page continues on pages named "-2", "-3", ...
+     * <p>
+     * Pages are written to a temporary file and renamed, and the first page of a family is written
+     * last, so a run that is interrupted is resumed by running it again: families whose first page
+     * exists are skipped.
+     * <p>
+     * <b>Example</b> <pre>
+       SHEETS='com.billsdesk.github.fontchooserdialog.FontChooserDialog$SpecimenSheets'
+       java -cp FontChooserDialog.jar $SHEETS specimens --filter Standard
+     </pre>
+     */
+    public static final class SpecimenSheets {
+
+        private static final String USAGE = //
+                "usage: SpecimenSheets DIRECTORY [--family REGEX] [--filter NAME]" //$NON-NLS-1$
+                        + " [--threads N] [--force]"; //$NON-NLS-1$
+
+        private static final String THREADS     = "--threads"; //$NON-NLS-1$
+        private static final String FORCE       = "--force";   //$NON-NLS-1$
+
+        static final int            WIDTH       = 1600;
+        static final int            PAGE_HEIGHT = 4000;
+        private static final int    MARGIN      = 24;
+        private static final int    LABEL_WIDTH = 40;
+        private static final String PNG         = ".png"; //$NON-NLS-1$
+
+        private final Path          mDirectory;
+        private final String        mText;
+        private final int[]         mSizes;
+        private final int           mPageHeight;
+        private final AtomicInteger mWritten    = new AtomicInteger();
+        private final AtomicInteger mSkipped    = new AtomicInteger();
+        private final AtomicInteger mFailed     = new AtomicInteger();
+
+        /**
+         * @param directory
+         *            where the pages are written
+         */
+        public SpecimenSheets(final Path directory) {
+            this(directory,
+                 STR_PREVIEW,
+                 Arrays.stream(STR_SIZE_LIST.split(",")).mapToInt(Integer::parseInt).toArray(),
+                 PAGE_HEIGHT);
+        }
+
+        /**
+         * @param directory
+         *            where the pages are written
+         * @param text
+         *            sample text
+         * @param sizes
+         *            point sizes the text is shown at
+         * @param pageHeight
+         *            height of a page in pixels
+         */
+        SpecimenSheets(final Path directory,
+                       final String text,
+                       final int[] sizes,
+                       final int pageHeight) {
+            mDirectory = directory;
+            mText = text;
+            mSizes = sizes.clone();
+            mPageHeight = pageHeight;
+        }
+
+        public static void main(final String[] args) throws IOException {
+            System.setProperty("java.awt.headless", "true"); //$NON-NLS-1$ //$NON-NLS-2$
+            final Writer out = new BufferedWriter(
+                    new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            final int status = run(args, out);
+            out.flush();
+            System.exit(status);
+        }
+
+        /**
+         * @param args
+         *            directory and options, see {@link #USAGE}
+         * @param out
+         *            where a line is written per family
+         * @return exit status, 0 if every page was written
+         * @throws IOException
+         *             directory not writable
+         */
+        static int run(final String[] args, final Writer out) throws IOException {
+            final CommandLine line;
+            final int threads;
+            try {
+                line = new CommandLine(args, Arrays.asList(THREADS), Arrays.asList(FORCE));
+                threads = line.getInt(THREADS, Runtime.getRuntime().availableProcessors());
+            } catch (final IllegalArgumentException error) {
+                return CommandLine.usage(USAGE);
+            }
+            if (!line.findFilter()) {
+                return 1;
+            }
+            final List<String> families = line.select(FontRegistry.getInstance().getFamilyNames());
+            final SpecimenSheets sheets = new SpecimenSheets(Paths.get(line.getFirst()));
+            final int failed = sheets.generate(families,
+                                               Math.max(1, threads),
+                                               line.has(FORCE),
+                                               out);
+            out.write(String.format("%,d families written, %,d skipped, %,d failed%n", //$NON-NLS-1$
+                                    sheets.getWrittenCount(),
+                                    sheets.getSkippedCount(),
+                                    failed));
+            return failed == 0 ? 0 : 1;
+        }
+
+        /**
+         * Write the pages of families not written yet.
+         *
+         * @param families
+         *            families to write
+         * @param threads
+         *            families rendered at once
+         * @param force
+         *            true to write families whose pages exist again
+         * @param log
+         *            where a line is written per family, from any thread
+         * @return number of families that failed
+         * @throws IOException
+         *             directory not writable
+         */
+        int generate(final List<String> families,
+                     final int threads,
+                     final boolean force,
+                     final Writer log) throws IOException {
+            Files.createDirectories(mDirectory);
+            deleteTemporaryFiles();
+            final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    threads,
+                    threads,
+                    0,
+                    TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(threads), // families, not pages, are queued
+                    runnable -> {
+                        final Thread thread = new Thread(runnable,
+                                                         "SpecimenSheets"); //$NON-NLS-1$
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            final int failed = mFailed.get();
+            try {
+                for (final String familyName : families) {
+                    if (!force && Files.exists(getFile(familyName, 1))) {
+                        mSkipped.incrementAndGet();
+                        log(log, "skipped", familyName, ""); //$NON-NLS-1$ //$NON-NLS-2$
+                    } else {
+                        pool.execute(() -> write(familyName, log));
+                    }
+                }
+            } finally {
+                pool.shutdown();
+                try {
+                    pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+                } catch (final InterruptedException error) {
+                    pool.shutdownNow();
+                    Thread.currentThread().interrupt();
+                }
+            }
+            log.flush();
+            return mFailed.get() - failed;
+        }
+
+        int getWrittenCount() {
+            return mWritten.get();
+        }
+
+        int getSkippedCount() {
+            return mSkipped.get();
+        }
+
+        /**
+         * @param familyName
+         *            family shown
+         * @param page
+         *            1 for the first page
+         * @return file of a page
+         */
+        Path getFile(final String familyName, final int page) {
+            String name = familyName.replaceAll("[^A-Za-z0-9 ._-]", "_"); //$NON-NLS-1$ //$NON-NLS-2$
+            if (!name.equals(familyName)) {
+                name += '-' + Integer.toHexString(familyName.hashCode()); // keep names distinct
+            }
+            return mDirectory.resolve(page == 1 ? name + PNG : name + '-' + page + PNG);
+        }
+
+        private void write(final String familyName, final Writer log) {
+            try {
+                final List<List<Row>> pages = layout(familyName);
+                for (int page = pages.size(); page >= 1; page--) { // first page last
+                    final BufferedImage image = render(pages.get(page - 1));
+                    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    ImageIO.write(image, "png", bytes); //$NON-NLS-1$
+                    CatalogCache.replace(getFile(familyName, page), bytes.toByteArray());
+                }
+                mWritten.incrementAndGet();
+                log(log, "written", familyName, String.valueOf(pages.size())); //$NON-NLS-1$
+            } catch (final IOException | RuntimeException error) {
+                mFailed.incrementAndGet();
+                log(log, "failed", familyName, String.valueOf(error)); //$NON-NLS-1$
+            }
+        }
+
+        /**
+         * @return the rows of the family, broken into pages
+         */
+        private List<List<Row>> layout(final String familyName) {
+            final FontRegistry registry = FontRegistry.getInstance();
+            final FontRenderContext context = new FontRenderContext(null, true, true);
+            final Font heading = new Font(Font.SANS_SERIF, Font.BOLD, 24);
+            final Font label = new Font(Font.SANS_SERIF, Font.PLAIN, 11);
+            final List<List<Row>> pages = new ArrayList<>();
+            List<Row> page = new ArrayList<>();
+            int y = MARGIN;
+            final List<Row> rows = new ArrayList<>();
+            rows.add(new Row(heading, familyName, null, context));
+            for (final String fontName : registry.getFontNames(familyName)) {
+                rows.add(new Row(label, fontName, null, context));
+                for (final int size : mSizes) {
+                    rows.add(new Row(registry.getFont(familyName, fontName, Font.PLAIN, size),
+                                     mText,
+                                     String.valueOf(size),
+                                     context));
+                }
+            }
+            for (final Row row : rows) {
+                if (y + row.mHeight > mPageHeight - MARGIN && !page.isEmpty()) {
+                    pages.add(page);
+                    page = new ArrayList<>();
+                    y = MARGIN;
+                }
+                page.add(row);
+                y += row.mHeight;
+            }
+            pages.add(page);
+            return pages;
+        }
+
+        private BufferedImage render(final List<Row> rows) {
+            final BufferedImage image = //
+                    new BufferedImage(WIDTH, mPageHeight, BufferedImage.TYPE_BYTE_GRAY);
+            final Graphics2D graphics = image.createGraphics();
+            try {
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, WIDTH, mPageHeight);
+                graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                                          RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS,
+                                          RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+                graphics.setClip(MARGIN, MARGIN, WIDTH - 2 * MARGIN, mPageHeight - 2 * MARGIN);
+                final Font label = new Font(Font.SANS_SERIF, Font.PLAIN, 10);
+                float y = MARGIN;
+                for (final Row row : rows) {
+                    final float baseline = y + row.mAscent;
+                    if (row.mSize != null) {
+                        graphics.setColor(Color.GRAY);
+                        graphics.setFont(label);
+                        graphics.drawString(row.mSize, MARGIN, baseline);
+                    }
+                    graphics.setColor(Color.BLACK);
+                    graphics.setFont(row.mFont);
+                    graphics.drawString(row.mText,
+                                        row.mSize == null ? MARGIN : MARGIN + LABEL_WIDTH,
+                                        baseline);
+                    y += row.mHeight;
+                }
+            } finally {
+                graphics.dispose();
+            }
+            return image;
+        }
+
+        private void deleteTemporaryFiles() throws IOException {
+            try (Stream<Path> files = Files.list(mDirectory)) {
+                for (final Path file : (Iterable<Path>) files::iterator) {
+                    final String name = file.getFileName().toString();
+                    if (name.contains(PNG) && name.endsWith(".tmp")) { //$NON-NLS-1$
+                        Files.deleteIfExists(file); // left by a run that was killed
+                    }
+                }
+            }
+        }
+
+        private static void log(final Writer log,
+                                final String status,
+                                final String familyName,
+                                final String detail) {
+            synchronized (log) {
+                try {
+                    log.write(status + '\t' + familyName + '\t' + detail + '\n');
+                } catch (final IOException error) {
+                    // progress only
+                }
+            }
+        }
+
+        /**
+         * One line of a page: a heading, a font name, or the text at one size.
+         */
+        private static final class Row {
+
+            private final Font   mFont;
+            private final String mText;
+            @Nullable
+            private final String mSize;
+            private final float  mAscent;
+            private final int    mHeight;
+
+            Row(final Font font,
+                final String text,
+                @Nullable final String size,
+                final FontRenderContext context) {
+                final LineMetrics metrics = font.getLineMetrics(text, context);
+                mFont = font;
+                mText = text;
+                mSize = size;
+                mAscent = metrics.getAscent();
+                mHeight = (int) Math.ceil(metrics.getHeight()) + (size == null ? 6 : 2);
+            }
+        }
+    }
+
+    /**
+     * A value computed from each font of the registry, such as a feature vector or measurements,
+     * kept in a file by font name and number of glyphs, as Java does not tell which file a font is
+     * from, so a font is computed again only when it is new or its number of glyphs or family
+     * changed. Fonts are computed in parallel off the EDT when the cache is first used and whenever
+     * the registry changes, and fonts no longer in it are dropped. A subclass supplies how one
+     * value is computed, read and written, and rebuilds what it searches in
+     * {@link #updated(int)}.
+     *
+     * @param <V>
+     *            value of one font
+     */
+    abstract static class FontValueCache<V>
+        implements
+            RegistryListener {
+
+        private final Path                  mFile;
+        private final int                   mMagic;
+        private final int                   mVersion;
+        private final Map<String, Entry<V>> mEntries = new ConcurrentHashMap<>(); // by font name
+        private volatile CompletableFuture<Void> mUpdate = CompletableFuture.completedFuture(null);
+        private boolean                     mStarted;
+
+        /**
+         * @param file
+         *            file the values are kept in, read if it exists
+         * @param magic
+         *            first int of the file
+         * @param version
+         *            second int of the file, changed when the values are computed differently so
+         *            they are computed again
+         */
+        FontValueCache(final Path file, final int magic, final int version) {
+            mFile = file;
+            mMagic = magic;
+            mVersion = version;
+            try (DataInputStream input = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(file)))) {
+                if (input.readInt() == magic && input.readInt() == version) {
+                    final int count = input.readInt();
+                    for (int i = 0; i < count; i++) {
+                        final String fontName = input.readUTF();
+                        final String family = input.readUTF();
+                        final int glyphs = input.readInt();
+                        mEntries.put(fontName, new Entry<>(family, glyphs, read(input)));
+                    }
+                }
+            } catch (final IOException error) {
+                mEntries.clear(); // none yet, or not readable and computed again
+            }
+        }
+
+        /**
+         * @param font
+         *            font to compute the value of, its size is ignored
+         * @return the value, computed on any thread
+         */
+        abstract V compute(Font font);
+
+        /**
+         * Called from the constructor, so it must not use the fields of the subclass.
+         *
+         * @param input
+         *            file positioned at a value
+         * @return the value
+         * @throws IOException
+         *             read failed
+         */
+        abstract V read(DataInput input) throws IOException;
+
+        /**
+         * @param output
+         *            file to write the value to
+         * @param value
+         *            value of one font
+         * @throws IOException
+         *             write failed
+         */
+        abstract void write(DataOutput output, V value) throws IOException;
+
+        /**
+         * Rebuild what is searched after an update.
+         *
+         * @param computed
+         *            number of fonts computed, 0 if fonts were only dropped
+         */
+        abstract void updated(int computed);
+
+        /**
+         * Compute the fonts of the registry not computed yet, and those added to it later, in the
+         * background. Only the first call starts anything.
+         *
+         * @return completed when the fonts of the registry are computed
+         */
+        public synchronized CompletableFuture<Void> start() {
+            if (!mStarted) {
+                mStarted = true;
+                FontRegistry.getInstance().addListener(this);
+                updateAsync();
+            }
+            return mUpdate;
+        }
+
+        /**
+         * Compute the fonts of the registry not computed yet, in the background, and save them.
+         *
+         * @return completed when the values are updated
+         */
+        public synchronized CompletableFuture<Void> updateAsync() {
+            mUpdate = mUpdate.handle((result, error) -> result).thenRunAsync(() -> {
+                update(FontRegistry.getInstance().getCatalog());
+                try {
+                    save();
+                } catch (final IOException error) {
+                    // still usable, only slower next time
+                }
+            });
+            return mUpdate;
+        }
+
+        /**
+         * @return completed when the updates started so far are done
+         */
+        public CompletableFuture<Void> getUpdate() {
+            return mUpdate;
+        }
+
+        /**
+         * Compute the fonts added since the registry was last computed, and drop those removed.
+         */
+        @Override
+        public void registryChanged(final RegistryChange change) {
+            if (!change.isOrderChanged()) {
+                updateAsync();
+            }
+        }
+
+        /**
+         * Compute the fonts of a catalog not computed yet, in parallel, and drop the fonts no
+         * longer in it.
+         *
+         * @param catalog
+         *            families and fonts to compute
+         * @return number of fonts computed
+         */
+        int update(final FontCatalog catalog) {
+            final Map<String, String> families = catalog.getFamiliesByFont();
+            mEntries.keySet().retainAll(families.keySet());
+            final AtomicInteger computed = new AtomicInteger();
+            families.entrySet().parallelStream().forEach(entry -> {
+                final Font font = new Font(entry.getKey(), Font.PLAIN, 1);
+                final Entry<V> known = mEntries.get(entry.getKey());
+                if (known == null || known.mGlyphs != font.getNumGlyphs()
+                        || !known.mFamily.equals(entry.getValue())) {
+                    mEntries.put(entry.getKey(),
+                                 new Entry<>(entry.getValue(), font.getNumGlyphs(), compute(font)));
+                    computed.incrementAndGet();
+                }
+            });
+            updated(computed.get());
+            return computed.get();
+        }
+
+        /**
+         * Write the values to the file, sorted by font name.
+         *
+         * @throws IOException
+         *             write failed
+         */
+        void save() throws IOException {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream output = new DataOutputStream(bytes)) {
+                final Map<String, Entry<V>> entries = new TreeMap<>(mEntries);
+                output.writeInt(mMagic);
+                output.writeInt(mVersion);
+                output.writeInt(entries.size());
+                for (final Map.Entry<String, Entry<V>> entry : entries.entrySet()) {
+                    output.writeUTF(entry.getKey());
+                    output.writeUTF(entry.getValue().mFamily);
+                    output.writeInt(entry.getValue().mGlyphs);
+                    write(output, entry.getValue().mValue);
+                }
+            }
+            CatalogCache.replace(mFile, bytes.toByteArray());
+        }
+
+        /**
+         * Set the value of a font computed elsewhere, such as for a catalog of fonts that are not
+         * installed, so the next update does not compute it.
+         *
+         * @param fontName
+         *            font name, as in the catalog
+         * @param familyName
+         *            family of the font
+         * @param value
+         *            value of the font
+         */
+        void put(final String fontName, final String familyName, final V value) {
+            final int glyphs = new Font(fontName, Font.PLAIN, 1).getNumGlyphs();
+            mEntries.put(fontName, new Entry<>(familyName, glyphs, value));
+        }
+
+        /**
+         * @return the values by font name, changed by updates
+         */
+        Map<String, Entry<V>> getEntries() {
+            return mEntries;
+        }
+
+        /**
+         * @param fontName
+         *            font name, as Font.getFontName()
+         * @return the value of the font, or null if not computed
+         */
+        @Nullable
+        V get(final String fontName) {
+            final Entry<V> entry = mEntries.get(fontName);
+            return entry == null ? null : entry.mValue;
+        }
+
+        /**
+         * @return number of fonts computed
+         */
+        int size() {
+            return mEntries.size();
+        }
+
+        /**
+         * The value of one font and what it was computed from.
+         *
+         * @param <V>
+         *            value of one font
+         */
+        static final class Entry<V> {
+
+            private final String mFamily;
+            private final int    mGlyphs;
+            private final V      mValue;
+
+            Entry(final String family, final int glyphs, final V value) {
+                mFamily = family;
+                mGlyphs = glyphs;
+                mValue = value;
+            }
+        }
+    }
+
+    /**
+     * Finds the families that look most like a family, for suggesting alternatives. Each font
+     * draws {@link #GLYPHS} scaled to its line height, and each glyph is reduced to an 8 x 8 map of
+     * coverage, a feature vector of {@link #DIMENSIONS} bytes. The vectors are kept in a file, see
+     * {@link FontValueCache}, so only new fonts are drawn. A family is the average of its fonts.
+     * <p>
+     * The family vectors are held in one array and searched exactly, abandoning a family as soon as
+     * its partial distance exceeds the k-th best so far; thousands of families take a millisecond
+     * or two. Fonts are drawn in parallel off the EDT, when the index is first used and again for
+     * the fonts added whenever the registry changes.
+     */
+    public static final class SimilarityIndex
+        extends
+            FontValueCache<byte[]> {
 
-        private static final long  serialVersionUID = 1L;
-        public static final String NAME             = "styleName"; //$NON-NLS-1$ AspectJ name
+        /** Glyphs whose shapes are compared. */
+        static final String            GLYPHS     = "aegkmnorstxyHMOR"; //$NON-NLS-1$
+        private static final int       CELL       = 8;
+        private static final int       SCALE      = 4;                  // pixels per cell drawn
+        /** Bytes per font. */
+        static final int               DIMENSIONS = GLYPHS.length() * CELL * CELL;
+        private static final int       MAGIC      = 0x46534931;         // "FSI1"
 
-        public FontStyleList() {
-            super(makeModel());
-            setName(NAME);
-            setSelectedIndex(0);
-            setVisibleRowCount(5);
+        private static SimilarityIndex sInstance;
+
+        private volatile Snapshot      mSnapshot;
+
+        /**
+         * @return the index of the installed fonts, kept in the default file, see
+         *         {@link CatalogCache#getCacheFile(String)}; built in the background on first use
+         */
+        public static synchronized SimilarityIndex getInstance() {
+            if (sInstance == null) {
+                final Path file = CatalogCache.getCacheFile("features"); //$NON-NLS-1$
+                sInstance = new SimilarityIndex(file);
+                sInstance.start();
+            }
+            return sInstance;
+        }
+
+        /**
+         * @param index
+         *            index to use for the similar families, or null for the default file
+         */
+        static synchronized void setInstance(@Nullable final SimilarityIndex index) {
+            sInstance = index;
+        }
+
+        /**
+         * @param file
+         *            file the vectors are kept in, read if it exists
+         */
+        SimilarityIndex(final Path file) {
+            super(file, MAGIC, GLYPHS.hashCode());
+            mSnapshot = snapshot();
+        }
+
+        @Override
+        byte[] compute(final Font font) {
+            return extract(font);
+        }
+
+        @Override
+        byte[] read(final DataInput input) throws IOException {
+            final byte[] vector = new byte[DIMENSIONS];
+            input.readFully(vector);
+            return vector;
+        }
+
+        @Override
+        void write(final DataOutput output, final byte[] vector) throws IOException {
+            output.write(vector);
+        }
+
+        @Override
+        void updated(final int computed) {
+            mSnapshot = snapshot();
+        }
+
+        /**
+         * @param familyName
+         *            family to compare with
+         * @param count
+         *            most families to return
+         * @return the families most like it, most alike first; empty if the family is not indexed
+         *         yet
+         */
+        public List<String> getSimilarFamilies(final String familyName, final int count) {
+            final Snapshot snapshot = mSnapshot;
+            final int query = Arrays.binarySearch(snapshot.mFamilies, familyName);
+            if (query < 0 || count <= 0) {
+                return Collections.emptyList();
+            }
+            final byte[] vectors = snapshot.mVectors;
+            final int[] best = new int[Math.min(count, snapshot.mFamilies.length - 1)];
+            final long[] distances = new long[best.length];
+            Arrays.fill(distances, Long.MAX_VALUE);
+            final int offset = query * DIMENSIONS;
+            for (int family = 0; family < snapshot.mFamilies.length; family++) {
+                if (family == query) {
+                    continue;
+                }
+                final long limit = distances[distances.length - 1];
+                long distance = 0;
+                final int start = family * DIMENSIONS;
+                for (int i = 0; i < DIMENSIONS && distance < limit; i++) {
+                    final int d = (vectors[start + i] & 0xFF) - (vectors[offset + i] & 0xFF);
+                    distance += d * d;
+                }
+                if (distance < limit) {
+                    int i = distances.length - 1;
+                    for (; i > 0 && distances[i - 1] > distance; i--) {
+                        distances[i] = distances[i - 1];
+                        best[i] = best[i - 1];
+                    }
+                    distances[i] = distance;
+                    best[i] = family;
+                }
+            }
+            final List<String> result = new ArrayList<>(best.length);
+            for (int i = 0; i < best.length && distances[i] != Long.MAX_VALUE; i++) {
+                result.add(snapshot.mFamilies[best[i]]);
+            }
+            return result;
+        }
+
+        /**
+         * @return the average vector of each family, families sorted by name
+         */
+        private Snapshot snapshot() {
+            final Map<String, int[]> sums = new TreeMap<>();
+            final Map<String, Integer> counts = new HashMap<>();
+            for (final Entry<byte[]> entry : getEntries().values()) {
+                final int[] sum = sums.computeIfAbsent(entry.mFamily, f -> new int[DIMENSIONS]);
+                for (int i = 0; i < DIMENSIONS; i++) {
+                    sum[i] += entry.mValue[i] & 0xFF;
+                }
+                counts.merge(entry.mFamily, 1, Integer::sum);
+            }
+            final String[] families = sums.keySet().toArray(new String[sums.size()]);
+            final byte[] vectors = new byte[families.length * DIMENSIONS];
+            for (int family = 0; family < families.length; family++) {
+                final int[] sum = sums.get(families[family]);
+                final int count = counts.get(families[family]);
+                for (int i = 0; i < DIMENSIONS; i++) {
+                    vectors[family * DIMENSIONS + i] = (byte) ((sum[i] + count / 2) / count);
+                }
+            }
+            return new Snapshot(families, vectors);
+        }
+
+        /**
+         * Draw each glyph at the size whose line height is one cell, centered on its advance, and
+         * keep the coverage of each cell.
+         *
+         * @param font
+         *            font to draw, its size is ignored
+         * @return coverage, 0 to 255, of each cell of each glyph
+         */
+        static byte[] extract(final Font font) {
+            final int pixels = CELL * SCALE;
+            final FontRenderContext context = new FontRenderContext(null, true, true);
+            final LineMetrics unit = font.deriveFont(1f).getLineMetrics(GLYPHS, context);
+            final float height = unit.getAscent() + unit.getDescent();
+            final Font sized = font.deriveFont(pixels / (height > 0 ? height : 1));
+            final LineMetrics metrics = sized.getLineMetrics(GLYPHS, context);
+            final BufferedImage image = //
+                    new BufferedImage(pixels, pixels, BufferedImage.TYPE_BYTE_GRAY);
+            final byte[] vector = new byte[DIMENSIONS];
+            final Graphics2D graphics = image.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                                          RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS,
+                                          RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+                graphics.setFont(sized);
+                for (int glyph = 0; glyph < GLYPHS.length(); glyph++) {
+                    final String text = GLYPHS.substring(glyph, glyph + 1);
+                    graphics.setColor(Color.BLACK);
+                    graphics.fillRect(0, 0, pixels, pixels);
+                    graphics.setColor(Color.WHITE);
+                    if (sized.canDisplay(text.charAt(0))) {
+                        final float advance = //
+                                (float) sized.getStringBounds(text, context).getWidth();
+                        graphics.drawString(text, (pixels - advance) / 2, metrics.getAscent());
+                    }
+                    final byte[] data = //
+                            ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+                    final int[] sums = new int[CELL * CELL];
+                    for (int y = 0; y < pixels; y++) {
+                        for (int x = 0; x < pixels; x++) {
+                            sums[y / SCALE * CELL + x / SCALE] += data[y * pixels + x] & 0xFF;
+                        }
+                    }
+                    for (int cell = 0; cell < sums.length; cell++) {
+                        vector[glyph * CELL * CELL + cell] = //
+                                (byte) ((sums[cell] + SCALE * SCALE / 2) / (SCALE * SCALE));
+                    }
+                }
+            } finally {
+                graphics.dispose();
+            }
+            return vector;
         }
 
-        public int getFontStyle() {
-            return FontStyle.fromName(getSelectedValue()).get().getStyle();
-        }
+        /**
+         * The family vectors searched, replaced as a whole when fonts are indexed.
+         */
+        private static final class Snapshot {
+
+            private final String[] mFamilies;
+            private final byte[]   mVectors;
 
-        private static DefaultListModel<String> makeModel() {
-            final DefaultListModel<String> model = new DefaultListModel<>();
-            model.addAll(Arrays.asList(FontStyle.getNames()).stream().collect(Collectors.toList()));
-            return model;
+            Snapshot(final String[] families, final byte[] vectors) {
+                mFamilies = families;
+                mVectors = vectors;
+            }
         }
     }
 
     /**
-     * List of all installed font sizes based upon FontChooserDialog.size_list in .properties file.
+     * Measured typographic properties of every installed font, for filtering by shape rather than
+     * by name. Measured from the outlines of {@link GlyphVector}s and from {@link LineMetrics} at
+     * {@link #EM} points, and kept as ratios of the em so fonts of any size compare:
+     * <ul>
+     * <li>{@link Metric#X_HEIGHT} - height of "x"</li>
+     * <li>{@link Metric#WIDTH} - average advance of "a" to "z"</li>
+     * <li>{@link Metric#CONTRAST} - width of the side of "o" over the height of its top, about 1
+     * for monoline fonts and 2 or more for high contrast ones</li>
+     * <li>{@link Metric#ASCENT}, {@link Metric#DESCENT} - of the line</li>
+     * </ul>
+     * The metrics are held in a column of floats each, one row per font, fonts of a family next to
+     * each other, so a range is checked by scanning a primitive array. The metrics are kept in a
+     * file, see {@link FontValueCache}, and only fonts not yet measured are measured, in parallel
+     * off the EDT, when the index is first used and whenever the registry changes. A metric a
+     * font cannot be measured for, such as a symbol font without "x", is NaN and in no range.
      */
-    public static class FontSizeList
+    public static final class FontMetricsIndex
         extends
-            AbstractJList
-        implements
-            FocusListener,
-            ChangeListener {
+            FontValueCache<float[]> {
 
-        private static final long  serialVersionUID = 1L;
-        public static final String NAME             = "sizeName"; //$NON-NLS-1$ AspectJ name
+        /** Point size the fonts are measured at. */
+        static final float              EM     = 100;
+        private static final int        MAGIC  = 0x464d4932; // "FMI2"
+        private static final Pattern    RANGE  = //
+                Pattern.compile("([\\w-]+)\\s*([<>]=?)\\s*(\\S+)"); //$NON-NLS-1$
 
-        FontSizeList() {
-            super(makeModel());
-            setName(NAME);
-            setSelectedValue(STR_SIZE_DEFAULT, true);
-            setVisibleRowCount(5);
-            final FontMetrics fontMetrics = new JLabel().getFontMetrics(getFont());
-            setPreferredSize(new Dimension(fontMetrics.stringWidth("9999"), //$NON-NLS-1$
-                    getPreferredSize().height));
+        /**
+         * The measured properties, as ratios of the em.
+         */
+        public enum Metric {
+            // @formatter:off
+            X_HEIGHT("x-height"),  //$NON-NLS-1$
+            WIDTH("width"),        //$NON-NLS-1$
+            CONTRAST("contrast"),  //$NON-NLS-1$
+            ASCENT("ascent"),      //$NON-NLS-1$
+            DESCENT("descent");    //$NON-NLS-1$
+            // @formatter:on
+
+            private final String mName;
+
+            private Metric(final String name) {
+                mName = name;
+            }
+
+            /**
+             * @return name used in range expressions
+             */
+            public String getName() {
+                return mName;
+            }
+
+            /**
+             * @param name
+             *            name used in range expressions
+             * @return the metric
+             * @throws IllegalArgumentException
+             *             no metric of that name
+             */
+            public static Metric fromName(final String name) throws IllegalArgumentException {
+                for (final Metric metric : values()) {
+                    if (metric.mName.equalsIgnoreCase(name)) {
+                        return metric;
+                    }
+                }
+                throw new IllegalArgumentException(name);
+            }
         }
 
+        private static FontMetricsIndex sInstance;
+
+        private volatile Columns        mColumns;
+
         /**
-         * @return the selected font size.
+         * @return the metrics of the installed fonts, kept in the default file, see
+         *         {@link CatalogCache#getCacheFile(String)}; measured in the background on first
+         *         use
          */
-        public int getFontSize() throws IllegalArgumentException {
-            try {
-                final int size = Integer.parseInt(getSelectedValue());
-                return size;
-            } catch (final NumberFormatException error) {
-                throw new IllegalArgumentException(error);
+        public static synchronized FontMetricsIndex getInstance() {
+            if (sInstance == null) {
+                final Path file = CatalogCache.getCacheFile("metrics"); //$NON-NLS-1$
+                sInstance = new FontMetricsIndex(file);
+                sInstance.start();
             }
+            return sInstance;
         }
 
         /**
-         * Update based on the new slider value.
-         *
-         * @param event
-         *            event
-         *
-         * @see javax.swing.event.ChangeListener#stateChanged(javax.swing.event.ChangeEvent)
+         * @param index
+         *            metrics to use for the range filters, or null for the default file
+         */
+        static synchronized void setInstance(@Nullable final FontMetricsIndex index) {
+            sInstance = index;
+        }
+
+        /**
+         * @param file
+         *            file the columns are kept in, read if it exists
          */
+        FontMetricsIndex(final Path file) {
+            super(file, MAGIC, Metric.values().length);
+            mColumns = new Columns(getEntries());
+        }
+
         @Override
-        public void stateChanged(final ChangeEvent event) {
-            final FontSizeSlider slider = (FontSizeSlider) event.getSource();
-            setSelectedValue(String.valueOf(slider.getValue()), true);
+        float[] compute(final Font font) {
+            return measure(font);
         }
 
         @Override
-        public void focusGained(final FocusEvent event) {
-            // do nothing
-        };
+        float[] read(final DataInput input) throws IOException {
+            final float[] metrics = new float[Metric.values().length];
+            for (int metric = 0; metric < metrics.length; metric++) {
+                metrics[metric] = input.readFloat();
+            }
+            return metrics;
+        }
+
+        @Override
+        void write(final DataOutput output, final float[] metrics) throws IOException {
+            for (final float value : metrics) {
+                output.writeFloat(value);
+            }
+        }
+
+        @Override
+        void updated(final int computed) {
+            mColumns = new Columns(getEntries());
+            if (computed > 0) {
+                SharedListModels.dropFamilyModels(FilterMetricRange.class);
+            }
+        }
 
         /**
-         * Update with the new value in the size text box when it loses focus.
-         *
-         * @param event
-         *            event
+         * @param ranges
+         *            ranges all of which a font must be in, see {@link #parse(String)}
+         * @return the families with a font in all the ranges
+         */
+        public Set<String> getFamilies(final List<Range> ranges) {
+            final Columns columns = mColumns;
+            final BitSet families = columns.select(ranges);
+            final Set<String> result = new TreeSet<>();
+            for (int family = families.nextSetBit(0); family >= 0;
+                    family = families.nextSetBit(family + 1)) {
+                result.add(columns.mFamilies[family]);
+            }
+            return result;
+        }
+
+        /**
+         * @param fontName
+         *            font name, as Font.getFontName()
+         * @param metric
+         *            metric to get
+         * @return the metric of the font, NaN if not measured
+         */
+        public float getMetric(final String fontName, final Metric metric) {
+            final float[] metrics = get(fontName);
+            return metrics == null ? Float.NaN : metrics[metric.ordinal()];
+        }
+
+        /**
+         * @return the columns searched, replaced as a whole as fonts are measured
+         */
+        Columns getColumns() {
+            return mColumns;
+        }
+
+        /**
+         * Parse ranges such as "x-height &gt; 0.5" or "width &lt; 0.5 and contrast &gt;= 2".
          *
-         * @see java.awt.event.FocusListener#focusLost(java.awt.event.FocusEvent)
+         * @param expression
+         *            comparisons of a metric name with a number joined by "and"
+         * @return the ranges
+         * @throws IllegalArgumentException
+         *             not a range expression
          */
-        @Override
-        public void focusLost(final FocusEvent event) {
-            final FontSizeText text = (FontSizeText) event.getSource();
-            try {
-                setSelectedValue(text.getTextSize(), true);
-            } catch (final IllegalArgumentException error) {
-                // ignore
+        public static List<Range> parse(final String expression) throws IllegalArgumentException {
+            final List<Range> result = new ArrayList<>();
+            for (final String clause : expression.trim().split("\\s+and\\s+")) { //$NON-NLS-1$
+                final Matcher matcher = RANGE.matcher(clause);
+                if (!matcher.matches()) {
+                    throw new IllegalArgumentException(clause);
+                }
+                final Metric metric = Metric.fromName(matcher.group(1));
+                final float value = Float.parseFloat(matcher.group(3));
+                final boolean inclusive = matcher.group(2).endsWith("="); //$NON-NLS-1$
+                result.add(matcher.group(2).startsWith("<") //$NON-NLS-1$
+                        ? new Range(metric,
+                                    Float.NEGATIVE_INFINITY,
+                                    inclusive ? value : Math.nextDown(value))
+                        : new Range(metric,
+                                    inclusive ? value : Math.nextUp(value),
+                                    Float.POSITIVE_INFINITY));
             }
+            return result;
         }
 
-        private static DefaultListModel<String> makeModel() {
-            final DefaultListModel<String> model = new DefaultListModel<>();
-            model.addAll(Arrays.asList(STR_SIZE_LIST.split(",", Integer.MAX_VALUE))
-                               .stream()
-                               .collect(Collectors.toList()));
-            return model;
+        /**
+         * @param font
+         *            font to measure, its size is ignored
+         * @return the value of each {@link Metric}
+         */
+        static float[] measure(final Font font) {
+            final Font sized = font.deriveFont(EM);
+            final FontRenderContext context = new FontRenderContext(null, true, true);
+            final float[] result = new float[Metric.values().length];
+            Arrays.fill(result, Float.NaN);
+            final LineMetrics line = sized.getLineMetrics("x", context); //$NON-NLS-1$
+            result[Metric.ASCENT.ordinal()] = line.getAscent() / EM;
+            result[Metric.DESCENT.ordinal()] = line.getDescent() / EM;
+            final String alphabet = "abcdefghijklmnopqrstuvwxyz"; //$NON-NLS-1$
+            if (sized.canDisplayUpTo(alphabet) == -1) {
+                final GlyphVector glyphs = sized.createGlyphVector(context, alphabet);
+                result[Metric.WIDTH.ordinal()] = //
+                        (float) glyphs.getLogicalBounds().getWidth() / alphabet.length() / EM;
+                final Rectangle2D x = glyphs.getGlyphOutline('x' - 'a').getBounds2D();
+                result[Metric.X_HEIGHT.ordinal()] = (float) x.getHeight() / EM;
+                final Area o = new Area(glyphs.getGlyphOutline('o' - 'a'));
+                final Rectangle2D bounds = o.getBounds2D();
+                final float stem = firstRun(o,
+                                            new Rectangle2D.Double(bounds.getX() - 1,
+                                                                   bounds.getCenterY() - 0.25,
+                                                                   bounds.getWidth() + 2,
+                                                                   0.5),
+                                            true);
+                final float hairline = firstRun(o,
+                                                new Rectangle2D.Double(bounds.getCenterX() - 0.25,
+                                                                       bounds.getY() - 1,
+                                                                       0.5,
+                                                                       bounds.getHeight() + 2),
+                                                false);
+                result[Metric.CONTRAST.ordinal()] = hairline > 0 ? stem / hairline : Float.NaN;
+            }
+            return result;
         }
-    }
 
-    /**
-     * Base class for the font family, font, style, and size list to have a common way to set the
-     * preferred size, initial selection, and visible number of rows.
-     */
-    private abstract static class AbstractJList
-        extends
-            JList<String> {
+        /**
+         * @return the extent of the first piece of the outline within a thin strip across it, the
+         *         leftmost piece across a horizontal strip and the topmost across a vertical one
+         */
+        private static float firstRun(final Area outline,
+                                      final Rectangle2D strip,
+                                      final boolean horizontal) {
+            final Area cut = new Area(strip);
+            cut.intersect(outline);
+            final double[] point = new double[6];
+            double firstStart = Double.POSITIVE_INFINITY;
+            double firstEnd = 0;
+            double start = Double.POSITIVE_INFINITY;
+            double end = Double.NEGATIVE_INFINITY;
+            for (final PathIterator path = cut.getPathIterator(null, 0.01); !path.isDone();
+                    path.next()) {
+                final int type = path.currentSegment(point);
+                if (type == PathIterator.SEG_CLOSE) {
+                    if (start < firstStart) {
+                        firstStart = start;
+                        firstEnd = end;
+                    }
+                    start = Double.POSITIVE_INFINITY;
+                    end = Double.NEGATIVE_INFINITY;
+                } else {
+                    final double value = horizontal ? point[0] : point[1];
+                    start = Math.min(start, value);
+                    end = Math.max(end, value);
+                }
+            }
+            return firstStart == Double.POSITIVE_INFINITY ? 0 : (float) (firstEnd - firstStart);
+        }
 
-        private static final long serialVersionUID = 1L;
+        /**
+         * Values of one metric from a minimum to a maximum, both included.
+         */
+        public static final class Range {
 
-        public AbstractJList(final DefaultListModel<String> model) {
-            super(model);
-            setSelectedIndex(0);
-            setVisibleRowCount(10);
-            /*
-             * get the max width of all font names so the list will be the same width regardless of
-             * the filtered list.
+            private final Metric mMetric;
+            private final float  mMin;
+            private final float  mMax;
+
+            public Range(final Metric metric, final float min, final float max) {
+                mMetric = metric;
+                mMin = min;
+                mMax = max;
+            }
+
+            @Override
+            public String toString() {
+                return String.format("%s <= %s <= %s", //$NON-NLS-1$
+                                     mMin,
+                                     mMetric.getName(),
+                                     mMax);
+            }
+        }
+
+        /**
+         * The metrics in a column each, one row per font, fonts of a family next to each other and
+         * families sorted by name. Immutable.
+         */
+        static final class Columns {
+
+            private final String[]  mFamilies;
+            private final String[]  mFontNames;
+            private final int[]     mFamilyOfRow;
+            private final float[][] mValues;
+
+            Columns(final Map<String, Entry<float[]>> rows) {
+                final List<Map.Entry<String, Entry<float[]>>> sorted = //
+                        new ArrayList<>(rows.entrySet());
+                sorted.sort(Comparator.comparing(
+                        (Map.Entry<String, Entry<float[]>> e) -> e.getValue().mFamily)
+                                      .thenComparing(Map.Entry::getKey));
+                final List<String> families = new ArrayList<>();
+                mFontNames = new String[sorted.size()];
+                mFamilyOfRow = new int[sorted.size()];
+                mValues = new float[Metric.values().length][sorted.size()];
+                for (int row = 0; row < sorted.size(); row++) {
+                    final Entry<float[]> values = sorted.get(row).getValue();
+                    if (families.isEmpty() || !families.get(families.size() - 1)
+                                                        .equals(values.mFamily)) {
+                        families.add(values.mFamily);
+                    }
+                    mFontNames[row] = sorted.get(row).getKey();
+                    mFamilyOfRow[row] = families.size() - 1;
+                    for (int metric = 0; metric < mValues.length; metric++) {
+                        mValues[metric][row] = values.mValue[metric];
+                    }
+                }
+                mFamilies = families.toArray(new String[families.size()]);
+            }
+
+            /**
+             * @return the families, by index in the sorted names, with a font in all the ranges
              */
-            final FontMetrics fontMetrics = getFontMetrics(getFont());
-            final int maxWidth = Arrays.asList(model.toArray())
-                                       .stream()
-                                       .map(s -> s.toString())
-                                       .mapToInt(s -> fontMetrics.stringWidth(s))
-                                       .max()
-                                       .getAsInt();
-            setPreferredSize(new Dimension(maxWidth + 20, getPreferredSize().height));
+            BitSet select(final List<Range> ranges) {
+                final BitSet fonts = new BitSet(mFontNames.length);
+                fonts.set(0, mFontNames.length);
+                for (final Range range : ranges) {
+                    final float[] column = mValues[range.mMetric.ordinal()];
+                    for (int row = fonts.nextSetBit(0); row >= 0; row = fonts.nextSetBit(row + 1)) {
+                        final float value = column[row];
+                        if (!(value >= range.mMin && value <= range.mMax)) { // NaN in no range
+                            fonts.clear(row);
+                        }
+                    }
+                }
+                final BitSet families = new BitSet(mFamilies.length);
+                for (int row = fonts.nextSetBit(0); row >= 0; row = fonts.nextSetBit(row + 1)) {
+                    families.set(mFamilyOfRow[row]);
+                }
+                return families;
+            }
+
+            /**
+             * @return index of the family in the sorted names, or negative if not measured
+             */
+            int indexOfFamily(final String familyName) {
+                return Arrays.binarySearch(mFamilies, familyName);
+            }
         }
     }
 
     /**
-     * A text field to type in a new size. When the focus is lost, the font size list and slider
-     * will adjust.
+     * Notified on the EDT after {@link FontRegistry#update(Collection, Collection)} changed the
+     * registry, or {@link FontRegistry#setLocale(Locale)} changed the order of the families, or
+     * measuring changed the families a filter accepts.
      */
-    public static class FontSizeText
+    public interface RegistryListener
         extends
-            JTextField
-        implements
-            ListSelectionListener,
-            ChangeListener {
+            EventListener {
 
-        private static final long  serialVersionUID = 1L;
-        public static final String NAME             = "sizeText"; //$NON-NLS-1$ AspectJ name
+        /**
+         * @param change
+         *            families added, removed, and with fonts added or removed
+         */
+        void registryChanged(RegistryChange change);
+    }
 
-        public FontSizeText() {
-            setName(NAME);
+    /**
+     * The families affected by one {@link FontRegistry} update.
+     */
+    public static final class RegistryChange {
+
+        /**
+         * The families are the same, only their order or the families a filter accepts changed,
+         * see FontRegistry.setLocale() and SharedListModels.dropFamilyModels().
+         */
+        static final RegistryChange ORDER = new RegistryChange(Collections.emptySet(),
+                                                                Collections.emptySet(),
+                                                                Collections.emptySet(),
+                                                                true);
+
+        private final Set<String>   mAdded;
+        private final Set<String>   mRemoved;
+        private final Set<String>   mChanged;
+        private final boolean       mOrderChanged;
+
+        RegistryChange(final Set<String> added,
+                       final Set<String> removed,
+                       final Set<String> changed) {
+            this(added, removed, changed, false);
         }
 
-        public int getTextSize() {
-            return Integer.parseInt(getText());
+        private RegistryChange(final Set<String> added,
+                               final Set<String> removed,
+                               final Set<String> changed,
+                               final boolean orderChanged) {
+            mAdded = Collections.unmodifiableSet(added);
+            mRemoved = Collections.unmodifiableSet(removed);
+            mChanged = Collections.unmodifiableSet(changed);
+            mOrderChanged = orderChanged;
         }
 
-        @Override
-        public void stateChanged(final ChangeEvent event) {
-            final FontSizeSlider slider = (FontSizeSlider) event.getSource();
-            setText(String.valueOf(slider.getValue()));
+        /**
+         * @return sorted names of new families
+         */
+        public Set<String> getAddedFamilies() {
+            return mAdded;
+        }
+
+        /**
+         * @return sorted names of families that are gone
+         */
+        public Set<String> getRemovedFamilies() {
+            return mRemoved;
+        }
+
+        /**
+         * @return sorted names of families still there with fonts added or removed
+         */
+        public Set<String> getChangedFamilies() {
+            return mChanged;
+        }
+
+        /**
+         * @param familyName
+         *            family name
+         * @return true if the family was added, removed or changed
+         */
+        public boolean contains(final String familyName) {
+            return mAdded.contains(familyName) || mRemoved.contains(familyName)
+                    || mChanged.contains(familyName);
+        }
+
+        /**
+         * @return true if the families are sorted for another locale
+         */
+        public boolean isOrderChanged() {
+            return mOrderChanged;
+        }
+
+        public boolean isEmpty() {
+            return mAdded.isEmpty() && mRemoved.isEmpty() && mChanged.isEmpty() && !mOrderChanged;
         }
 
         @Override
-        public void valueChanged(final ListSelectionEvent event) {
-            final FontSizeList list = (FontSizeList) event.getSource();
-            final ListSelectionModel model = list.getSelectionModel();
-            if (!model.isSelectionEmpty()) {
-                setText(list.getSelectedValue());
-            }
+        public String toString() {
+            return String.format("added: %s, removed: %s, changed: %s%s", //$NON-NLS-1$
+                                 mAdded,
+                                 mRemoved,
+                                 mChanged,
+                                 mOrderChanged ? ", order changed" : ""); //$NON-NLS-1$
         }
     }
 
     /**
-     * A slider to adjust the font size.
+     * Result of {@link FontRegistry#registerFontDirectory(Path)}: the fonts loaded and the files
+     * that failed.
      */
-    public static class FontSizeSlider
-        extends
-            JSlider
-        implements
-            ListSelectionListener,
-            FocusListener {
-
-        private static final long  serialVersionUID = 1L;
-        public static final String NAME             = "sizeSzlider"; //$NON-NLS-1$ AspectJ name
-
-        public FontSizeSlider() {
-            super(SwingConstants.VERTICAL, 0, 144, 50);
-            setName(NAME);
-            setMinorTickSpacing(5);
-            setMajorTickSpacing(20);
-            setPaintTicks(true);
-            setPaintLabels(true);
+    public static final class FontLoadReport {
+
+        private final List<Font>           mFonts;
+        private final Map<Path, Exception> mFailures;
+        private final RegistryChange       mChange;
+
+        FontLoadReport(final List<Font> fonts,
+                       final Map<Path, Exception> failures,
+                       final RegistryChange change) {
+            mFonts = Collections.unmodifiableList(fonts);
+            mFailures = Collections.unmodifiableMap(failures);
+            mChange = change;
+        }
 
+        /**
+         * @return all fonts read, including ones that were already registered
+         */
+        public List<Font> getFonts() {
+            return mFonts;
         }
 
-        @Override
-        public void valueChanged(final ListSelectionEvent event) {
-            @SuppressWarnings("unchecked")
-            final JList<String> list = (JList<String>) event.getSource();
-            final ListSelectionModel model = list.getSelectionModel();
-            if (!model.isSelectionEmpty()) {
-                setValue(Integer.parseInt(list.getSelectedValue()));
-            }
+        /**
+         * @return files that could not be read, sorted, with the error for each
+         */
+        public Map<Path, Exception> getFailures() {
+            return mFailures;
         }
 
-        @Override
-        public void focusGained(final FocusEvent event) {
-            // do nothing
-        };
+        /**
+         * @return families added and changed in the registry
+         */
+        public RegistryChange getChange() {
+            return mChange;
+        }
 
         @Override
-        public void focusLost(final FocusEvent event) {
-            final FontSizeText text = (FontSizeText) event.getSource();
-            try {
-                setValue(text.getTextSize());
-            } catch (final IllegalArgumentException error) {
-                // ignore
-            }
+        public String toString() {
+            return String.format("%d fonts, %d failures, %s", //$NON-NLS-1$
+                                 mFonts.size(),
+                                 mFailures.size(),
+                                 mChange);
         }
     }
 
     /**
-     * Display sample text using selected font.
+     * A font pack: a ZIP or JAR archive of TrueType and OpenType fonts that are read straight from
+     * the archive, without extracting them, when first used. Its table of contents lists the
+     * family and font name of each entry, so the families can be listed without reading the fonts.
+     * The table is read from {@value #TOC_ENTRY} if the archive has one, see
+     * {@link #writeToc(Writer)}, otherwise from the 'name' table at the start of each entry.
+     * <p>
+     * The JDK can only use fonts from files, so Font.createFonts() of an entry still copies it to a
+     * temporary file the JDK deletes on exit. That happens once per entry, when a family in it is
+     * first selected.
      */
-    public static class PreviewPanel
-        extends
-            JPanel
-        implements
-            ListSelectionListener,
-            FocusListener {
+    public static final class FontPack {
 
-        private static final long       serialVersionUID = 1L;
-        public static final String      TEXTFIELD_NAME   = "textField";                //$NON-NLS-1$ AspectJ name
+        /** Table of contents: one line per font of "entry TAB family TAB font name". */
+        public static final String TOC_ENTRY = "META-INF/fonts.toc"; //$NON-NLS-1$
 
-        private final JTextField        mTextField       = new JTextField(STR_PREVIEW);
-        private final FontChooserDialog mDialog;
+        private static final int   NAME_TAG  = 0x6E616D65; // 'name'
 
-        public PreviewPanel(final FontChooserDialog dialog) {
-            super();
-            mDialog = dialog;
-            setLayout(new FlowLayout());
+        private final Path                                   mArchive;
+        private final Map<String, Map<String, List<String>>> mFamilies;
 
-            mTextField.setName(PreviewPanel.TEXTFIELD_NAME);
-            mTextField.setEditable(true);
-            mTextField.setBackground(Color.WHITE);
-            mTextField.setForeground(Color.BLACK);
+        private FontPack(final Path archive,
+                         final Map<String, Map<String, List<String>>> families) {
+            mArchive = archive;
+            mFamilies = families;
+        }
 
-            final JScrollPane pane = new JScrollPane(mTextField);
-            pane.setPreferredSize(new Dimension(500, 100));
+        /**
+         * Read the table of contents of a font pack. Entries that are not fonts are ignored.
+         *
+         * @param archive
+         *            ZIP or JAR file
+         * @return font pack, its fonts not read yet
+         * @throws IOException
+         *             the archive or its table of contents cannot be read
+         */
+        public static FontPack open(final Path archive) throws IOException {
+            final Map<String, Map<String, List<String>>> families = new TreeMap<>();
+            try (ZipFile zip = new ZipFile(archive.toFile())) {
+                final ZipEntry toc = zip.getEntry(TOC_ENTRY);
+                if (toc != null) {
+                    readToc(zip, toc, families);
+                } else {
+                    final Enumeration<? extends ZipEntry> entries = zip.entries();
+                    while (entries.hasMoreElements()) {
+                        final ZipEntry entry = entries.nextElement();
+                        if (!entry.isDirectory() && FontRegistry.isFontFileName(entry.getName())) {
+                            readEntry(zip, entry, families);
+                        }
+                    }
+                }
+            }
+            return new FontPack(archive, families);
+        }
+
+        private static void readToc(final ZipFile zip,
+                                    final ZipEntry toc,
+                                    final Map<String, Map<String, List<String>>> families)
+                throws IOException {
+            try (BufferedReader reader = new BufferedReader( //
+                    new InputStreamReader(zip.getInputStream(toc), StandardCharsets.UTF_8))) {
+                int lineNumber = 0;
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    lineNumber++;
+                    if (line.isEmpty() || line.startsWith("#")) { //$NON-NLS-1$
+                        continue;
+                    }
+                    final String[] fields = line.split("\t", -1); //$NON-NLS-1$
+                    if (fields.length != 3 || zip.getEntry(fields[0]) == null) {
+                        throw new IOException(String.format("%s:%d: %s", //$NON-NLS-1$
+                                                            TOC_ENTRY,
+                                                            lineNumber,
+                                                            line));
+                    }
+                    add(families, fields[0], fields[1], fields[2]);
+                }
+            }
+        }
+
+        /**
+         * Read the names of the fonts of an entry from its 'name' table, or for collections and
+         * fonts without Microsoft names, by reading the fonts.
+         */
+        private static void readEntry(final ZipFile zip,
+                                      final ZipEntry entry,
+                                      final Map<String, Map<String, List<String>>> families)
+                throws IOException {
+            try {
+                final String[] names;
+                try (InputStream in = new BufferedInputStream(zip.getInputStream(entry))) {
+                    names = readNames(in);
+                }
+                if (names != null) {
+                    add(families, entry.getName(), names[0], names[1]);
+                } else {
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        for (final Font font : Font.createFonts(in)) {
+                            add(families, entry.getName(), font.getFamily(), font.getName());
+                        }
+                    }
+                }
+            } catch (final EOFException | FontFormatException error) {
+                // not a font
+            }
+        }
 
-            add(pane);
+        private static void add(final Map<String, Map<String, List<String>>> families,
+                                final String entryName,
+                                final String familyName,
+                                final String fontName) {
+            families.computeIfAbsent(familyName, f -> new TreeMap<>())
+                    .computeIfAbsent(entryName, e -> new ArrayList<>())
+                    .add(fontName);
         }
 
-        @Override
-        public void valueChanged(final ListSelectionEvent event) {
-            final ListSelectionModel model = ((JList< ? >) event.getSource()).getSelectionModel();
-            if (!model.isSelectionEmpty()) {
-                try {
-                    mTextField.setFont(mDialog.getSelectedFont());
-                } catch (final IllegalArgumentException error) {
-                    // Ignore
+        /**
+         * Read the family and full name of a TrueType or OpenType font from the Microsoft platform
+         * records of its 'name' table, as the JDK does, preferring US English. Only the stream up
+         * to the end of the table is read.
+         *
+         * @param stream
+         *            start of a font file
+         * @return family name and full name, null for a collection or if not found
+         * @throws IOException
+         *             the stream cannot be read or ends early
+         */
+        @Nullable
+        static String[] readNames(final InputStream stream) throws IOException {
+            final DataInputStream in = new DataInputStream(stream);
+            final int version = in.readInt();
+            if (version != 0x00010000 && version != 0x4F54544F && version != 0x74727565) {
+                return null; // 'ttcf' or not a font
+            }
+            final int tables = in.readUnsignedShort();
+            skipFully(in, 6);
+            long offset = -1;
+            int length = 0;
+            for (int i = 0; i < tables; i++) {
+                final int tag = in.readInt();
+                skipFully(in, 4);
+                final long tableOffset = in.readInt() & 0xFFFFFFFFL;
+                final int tableLength = in.readInt();
+                if (tag == NAME_TAG) {
+                    offset = tableOffset;
+                    length = tableLength;
                 }
             }
+            final long position = 12 + 16L * tables;
+            if (offset < position || length < 6) {
+                return null;
+            }
+            skipFully(in, offset - position);
+            final byte[] table = new byte[length];
+            in.readFully(table);
+            final ByteBuffer buffer = ByteBuffer.wrap(table);
+            final int count = buffer.getShort(2) & 0xFFFF;
+            final int strings = buffer.getShort(4) & 0xFFFF;
+            final String[] result = new String[2];
+            final boolean[] english = new boolean[2];
+            for (int i = 0; i < count && 18 + 12 * i <= length; i++) {
+                final int record = 6 + 12 * i;
+                final int nameId = buffer.getShort(record + 6) & 0xFFFF;
+                final int index = nameId == 1 ? 0 : nameId == 4 ? 1 : -1;
+                final int nameLength = buffer.getShort(record + 8) & 0xFFFF;
+                final int nameOffset = strings + (buffer.getShort(record + 10) & 0xFFFF);
+                if (buffer.getShort(record) == 3 && index != -1 && !english[index]
+                        && nameOffset + nameLength <= length) {
+                    result[index] = new String(table,
+                                               nameOffset,
+                                               nameLength,
+                                               StandardCharsets.UTF_16BE);
+                    english[index] = buffer.getShort(record + 4) == 0x409;
+                }
+            }
+            return result[0] == null || result[1] == null ? null : result;
         }
 
-        @Override
-        public void focusGained(final FocusEvent event) {
-            // do nothing
-        };
-
-        @Override
-        public void focusLost(final FocusEvent event) {
-            mTextField.setFont(mDialog.getSelectedFont());
+        private static void skipFully(final InputStream in, final long count) throws IOException {
+            for (long left = count; left > 0;) {
+                final long skipped = in.skip(left);
+                if (skipped > 0) {
+                    left -= skipped;
+                } else if (in.read() == -1) {
+                    throw new EOFException();
+                } else {
+                    left--;
+                }
+            }
         }
-    }
-
-    /**
-     * Enum to support converting between Font.style and Style names.
-     */
-    public enum FontStyle {
-        // @formatter:off
-            PLAIN(STR_REGULAR,            Font.PLAIN),
-            BOLD(STR_BOLD,                Font.BOLD),
-            ITALIC(STR_ITALIC,            Font.ITALIC),
-            BOLD_ITALIC(STR_BOLD_ITALIC,  Font.BOLD + Font.ITALIC);
-        // @formatter:on
-
-        private final String mName;
-        private final int    mStyle;
 
-        private FontStyle(final String name, final int style) {
-            mName = name;
-            mStyle = style;
+        public Path getArchive() {
+            return mArchive;
         }
 
-        public String getName() {
-            return mName;
+        /**
+         * @return sorted family names in the pack
+         */
+        public Set<String> getFamilyNames() {
+            return Collections.unmodifiableSet(mFamilies.keySet());
         }
 
-        public int getStyle() {
-            return mStyle;
+        /**
+         * @return font names of each family, as listed in the table of contents
+         */
+        Map<String, List<String>> getFontNames() {
+            final Map<String, List<String>> result = new TreeMap<>();
+            mFamilies.forEach((familyName, entries) -> {
+                final List<String> fontNames = new ArrayList<>();
+                entries.values().stream().forEach(fontNames::addAll);
+                result.put(familyName, fontNames);
+            });
+            return result;
         }
 
-        public static String[] getNames() {
-            return Arrays.asList(FontStyle.values())
-                         .stream()
-                         .map(FontStyle::getName)
-                         .toArray(String[]::new);
+        /**
+         * Write the table of contents, to be added to the archive as {@value #TOC_ENTRY} so the
+         * next open does not need to read the entries.
+         *
+         * @param writer
+         *            where to write, as UTF-8
+         * @throws IOException
+         *             the writer fails
+         */
+        public void writeToc(final Writer writer) throws IOException {
+            for (final Map.Entry<String, Map<String, List<String>>> family : mFamilies.entrySet()) {
+                for (final Map.Entry<String, List<String>> entry : family.getValue().entrySet()) {
+                    for (final String fontName : entry.getValue()) {
+                        writer.write(entry.getKey() + '\t' + family.getKey() + '\t' + fontName
+                                + '\n');
+                    }
+                }
+            }
         }
 
-        public static Optional<FontStyle> fromName(final String name) {
-            return Arrays.asList(FontStyle.values())
-                         .stream()
-                         .filter(e -> e.getName().equals(name))
-                         .findFirst();
+        /**
+         * Read the fonts of the entries of one family from the archive and register them with the
+         * GraphicsEnvironment. An entry that cannot be read is left out.
+         *
+         * @param familyName
+         *            family in the pack
+         * @return fonts read, which may include other families of the same entries
+         */
+        List<Font> load(final String familyName) {
+            final Map<String, List<String>> entries = mFamilies.get(familyName);
+            final List<Font> result = new ArrayList<>();
+            if (entries == null) {
+                return result;
+            }
+            final GraphicsEnvironment environment = //
+                    GraphicsEnvironment.getLocalGraphicsEnvironment();
+            try (ZipFile zip = new ZipFile(mArchive.toFile())) {
+                for (final String entryName : entries.keySet()) {
+                    final ZipEntry entry = zip.getEntry(entryName);
+                    if (entry != null) {
+                        try (InputStream in = zip.getInputStream(entry)) {
+                            for (final Font font : Font.createFonts(in)) {
+                                environment.registerFont(font);
+                                result.add(font);
+                            }
+                        } catch (final IOException | FontFormatException error) {
+                            // damaged entry
+                        }
+                    }
+                }
+            } catch (final IOException error) {
+                // archive moved or deleted
+            }
+            return result;
         }
 
-        public static Optional<FontStyle> fromInt(final int value) {
-            return Arrays.asList(FontStyle.values())
-                         .stream()
-                         .filter(e -> e.getStyle() == value)
-                         .findFirst();
+        @Override
+        public String toString() {
+            return String.format("%s: %d families", mArchive, mFamilies.size()); //$NON-NLS-1$
         }
-    };
+    }
 
     /**
-     * Map of all installed font family names and fonts for each.
+     * Watches font directories with a WatchService and adds fonts installed while the application
+     * is running to a {@link FontRegistry}; fonts it added are removed again when their files are
+     * deleted. Events are debounced, so copying a family of many files is one registry update and
+     * the lists of open dialogs change once.
+     * <p>
+     * Font files present when the watcher starts are not read. If one of them is deleted its fonts
+     * stay listed, as they do in the GraphicsEnvironment.
+     * <p>
+     * <b>Example</b> <pre>{@code
+           final FontDirectoryWatcher watcher = FontDirectoryWatcher.watchInstalledFonts();
+           ...
+           watcher.close();
+         }</pre>
      */
-    public static final class FontRegistry
-        extends
-            HashMap<String, List<Font>> {
-
-        private static final long   serialVersionUID = 1L;
-
-        private static FontRegistry sInstance;
-
-        public static FontRegistry getInstance() {
-            if (sInstance == null) {
-                sInstance = new FontRegistry();
-            }
-            return sInstance;
-        }
+    public static final class FontDirectoryWatcher
+        implements
+            Closeable {
+
+        public static final long             DEFAULT_DEBOUNCE_MILLIS = 500;
+
+        private final FontRegistry           mRegistry;
+        private final long                   mDebounce;
+        private final List<Path>             mDirectories;
+        private final Map<WatchKey, Path>    mKeys                   = new HashMap<>();
+        private final Set<Path>              mKnownFiles             = new HashSet<>();
+        private final Map<Path, List<Font>>  mAddedFonts             = new HashMap<>();
+        private final Set<Path>              mPending                = new LinkedHashSet<>();
+        private boolean                      mOverflow;
+        private WatchService                 mService;
+        private ScheduledExecutorService     mScheduler;
+        private ScheduledFuture< ? >         mFlush;
+        private Thread                       mThread;
 
         /**
-         * Create a map of all installed family names and fonts for each.
+         * Watch the installed fonts of this system and add new ones to the registry used by the
+         * dialogs.
+         *
+         * @return started watcher
+         * @throws IOException
+         *             a directory cannot be watched
          */
-        private FontRegistry() {
-            super();
-            Arrays.asList(GraphicsEnvironment.getLocalGraphicsEnvironment()
-                                             .getAvailableFontFamilyNames())
-                  .stream()
-                  .forEach(f -> addFamily(f));
-            Arrays.asList(GraphicsEnvironment.getLocalGraphicsEnvironment().getAllFonts())
-                  .stream()
-                  .forEach(f -> addFont(f));
-            // dump();
+        public static FontDirectoryWatcher watchInstalledFonts() throws IOException {
+            return new FontDirectoryWatcher(FontRegistry.getInstance(),
+                                            DEFAULT_DEBOUNCE_MILLIS,
+                                            getFontDirectories()).start();
         }
 
         /**
-         * Strip family name from a font name.
-         *
-         * @param font
-         *            font to use
-         * @return if name contains a '-', then remove all before plus the '-'
+         * @return the system and user font directories of this OS that exist
          */
-        public static String stripFamily(final Font font) {
-            String result = font.getName();
-            final int offset = result.indexOf('-');
-            if (offset != -1) {
-                result = result.substring(offset + 1);
+        public static List<Path> getFontDirectories() {
+            final String home = System.getProperty("user.home"); //$NON-NLS-1$
+            final String os = System.getProperty("os.name"); //$NON-NLS-1$
+            final List<Path> result = new ArrayList<>();
+            if (os.startsWith("Mac")) { //$NON-NLS-1$
+                result.add(Paths.get("/System/Library/Fonts")); //$NON-NLS-1$
+                result.add(Paths.get("/Library/Fonts")); //$NON-NLS-1$
+                result.add(Paths.get(home, "Library", "Fonts")); //$NON-NLS-1$ //$NON-NLS-2$
+            } else if (os.startsWith("Windows")) { //$NON-NLS-1$
+                final String windows = System.getenv("WINDIR"); //$NON-NLS-1$
+                final String local = System.getenv("LOCALAPPDATA"); //$NON-NLS-1$
+                if (windows != null) {
+                    result.add(Paths.get(windows, "Fonts")); //$NON-NLS-1$
+                }
+                if (local != null) {
+                    result.add(Paths.get(local, "Microsoft", "Windows", "Fonts")); //$NON-NLS-1$
+                }
+            } else {
+                result.add(Paths.get("/usr/share/fonts")); //$NON-NLS-1$
+                result.add(Paths.get("/usr/local/share/fonts")); //$NON-NLS-1$
+                result.add(Paths.get(home, ".fonts")); //$NON-NLS-1$
+                result.add(Paths.get(home, ".local", "share", "fonts")); //$NON-NLS-1$
             }
+            result.removeIf(p -> !Files.isDirectory(p));
             return result;
         }
 
         /**
-         * Get all family names.
-         *
-         * @return sorted array of all family names
+         * @param registry
+         *            registry to update
+         * @param debounceMillis
+         *            quiet time after the last event before the changes are applied
+         * @param directories
+         *            directories to watch, with their sub-directories
          */
-        public String[] getFamilyNames() {
-            return this.keySet().stream().sorted().toArray(String[]::new);
-        }
-
-        public boolean isFamilyName(final String name) {
-            return get(name) != null;
+        public FontDirectoryWatcher(final FontRegistry registry,
+                                    final long debounceMillis,
+                                    final List<Path> directories) {
+            mRegistry = registry;
+            mDebounce = debounceMillis;
+            mDirectories = new ArrayList<>(directories);
         }
 
         /**
-         * Get all stripped font names. Move the one similar to the family name to the top (same or
-         * same with spaces removed).
+         * Start watching on a daemon thread.
          *
-         * @param familyName
-         *            family name to look up
-         * @return sorted array of all font names stripped of any thing before '-'
+         * @return this
+         * @throws IOException
+         *             a directory cannot be watched
          */
-        public String[] getFontNames(final String familyName) {
-            final List<String> result = get(familyName).stream()
-                                                       .map(f -> stripFamily(f))
-                                                       .sorted()
-                                                       .collect(Collectors.toList());
-            for (final String name : Arrays.asList(familyName, familyName.replace(" ", ""))) {
-                final int index = result.indexOf(name);
-                if (index != -1) {
-                    result.remove(index);
-                    result.add(0, STR_REGULAR); // Regular
-                    break;
-                }
+        public synchronized FontDirectoryWatcher start() throws IOException {
+            mService = FileSystems.getDefault().newWatchService();
+            mScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "FontDirectoryWatcher.update"); //$NON-NLS-1$
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (final Path directory : mDirectories) {
+                mKnownFiles.addAll(register(directory));
             }
-            return result.stream().toArray(String[]::new);
+            mThread = new Thread(this::watch, "FontDirectoryWatcher"); //$NON-NLS-1$
+            mThread.setDaemon(true);
+            mThread.start();
+            return this;
         }
 
         /**
-         * Get the actual font name for a stripped name.
-         *
-         * @param familyName
-         *            family name to look up
-         * @param strippedName
-         *            a stripped font name
-         * @return actual font name
-         * @throws IllegalArgumentException
-         *             no font found
+         * Stop watching. Fonts already added stay in the registry.
          */
-        public String getFontName(final String familyName,
-                                  final String strippedName) throws IllegalArgumentException {
-            final Optional<Font> font = get(familyName).stream()
-                                                       .filter(f -> stripFamily(f).equals(strippedName))
-                                                       .findFirst();
-            if (font.isPresent()) {
-                return font.get().getName();
-            } else if (strippedName.equals(STR_REGULAR)) {
-                return familyName;
-            } else {
-                throw new IllegalArgumentException(familyName + " " + strippedName);
+        @Override
+        public synchronized void close() {
+            if (mThread != null) {
+                mThread.interrupt();
+                mScheduler.shutdownNow();
+                try {
+                    mService.close();
+                } catch (final IOException error) {
+                    // ignore, closing anyway
+                }
+                mThread = null;
             }
         }
 
         /**
-         * Strip family name from font to match name in list. Used in JUnit tests to drive robot.
+         * Watch a directory tree.
          *
-         * @param font
-         *            font
-         * @return stripped font name
+         * @return font files in the tree
          */
-        public String getFontNameForList(final Font font) {
-            String result = stripFamily(font);
-            if (font.getFamily().equals(result)) {
-                result = STR_REGULAR;
+        private List<Path> register(final Path directory) throws IOException {
+            final List<Path> result = new ArrayList<>();
+            try (Stream<Path> paths = Files.walk(directory)) {
+                for (final Path path : (Iterable<Path>) paths::iterator) {
+                    if (Files.isDirectory(path)) {
+                        if (!mKeys.containsValue(path)) {
+                            mKeys.put(path.register(mService,
+                                                    StandardWatchEventKinds.ENTRY_CREATE,
+                                                    StandardWatchEventKinds.ENTRY_DELETE,
+                                                    StandardWatchEventKinds.ENTRY_MODIFY),
+                                      path);
+                        }
+                    } else if (FontRegistry.isFontFile(path)) {
+                        result.add(path);
+                    }
+                }
             }
             return result;
         }
 
-        private void addFamily(final String familyName) {
-            put(familyName, new ArrayList<Font>());
-        }
-
-        private void addFont(final Font font) {
-            get(font.getFamily()).add(font);
+        private void watch() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    final WatchKey key = mService.take();
+                    synchronized (this) {
+                        final Path directory = mKeys.get(key);
+                        for (final WatchEvent< ? > event : key.pollEvents()) {
+                            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                                mOverflow = true;
+                            } else if (directory != null) {
+                                mPending.add(directory.resolve((Path) event.context()));
+                            }
+                        }
+                        if (!key.reset()) {
+                            mKeys.remove(key);
+                        }
+                        if (mFlush != null) {
+                            mFlush.cancel(false);
+                        }
+                        mFlush = mScheduler.schedule(this::flush, mDebounce, TimeUnit.MILLISECONDS);
+                    }
+                }
+            } catch (final InterruptedException | ClosedWatchServiceException error) {
+                // closed
+            }
         }
 
-        private void dump() {
-            this.keySet().stream().sorted().forEach(f -> dump(f));
+        /**
+         * Apply all changes seen since the last update to the registry in one step.
+         */
+        private void flush() {
+            final List<Font> added = new ArrayList<>();
+            final List<Font> removed = new ArrayList<>();
+            synchronized (this) {
+                final Set<Path> changed = new LinkedHashSet<>(mPending);
+                mPending.clear();
+                if (mOverflow) {
+                    mOverflow = false;
+                    changed.addAll(rescan());
+                }
+                final Set<Path> files = new LinkedHashSet<>();
+                for (final Path path : changed) {
+                    if (Files.isDirectory(path)) {
+                        try {
+                            files.addAll(register(path)); // copied in with their directory
+                        } catch (final IOException error) {
+                            // gone again
+                        }
+                    } else if (FontRegistry.isFontFile(path)) {
+                        files.add(path);
+                    }
+                }
+                for (final Path file : files) {
+                    final List<Font> previous = mAddedFonts.remove(file);
+                    if (previous != null) {
+                        removed.addAll(previous);
+                    }
+                    if (Files.isRegularFile(file)) {
+                        mKnownFiles.add(file);
+                        try {
+                            // only fonts that are new are removed with the file
+                            final List<Font> fonts = new ArrayList<>();
+                            for (final Font font : FontRegistry.loadFonts(file)) {
+                                if (previous != null && previous.contains(font)
+                                        || !mRegistry.isFont(font.getFamily(), font.getName())) {
+                                    fonts.add(font);
+                                }
+                            }
+                            mAddedFonts.put(file, fonts);
+                            added.addAll(fonts);
+                        } catch (final IOException | FontFormatException error) {
+                            // not a font or still being written, a later event will retry
+                        }
+                    } else {
+                        mKnownFiles.remove(file);
+                    }
+                }
+            }
+            if (!added.isEmpty() || !removed.isEmpty()) {
+                mRegistry.update(added, removed);
+            }
         }
 
-        private void dump(final String familyName) {
-            System.out.println(String.format("%-25s  %s",
-                                             familyName,
-                                             Arrays.asList(getFontNames(familyName))
-                                                   .stream()
-                                                   .collect(Collectors.joining(", "))));
+        /**
+         * After events were lost, find the font files that appeared or disappeared.
+         */
+        private Set<Path> rescan() {
+            final Set<Path> result = new HashSet<>(mKnownFiles);
+            final Set<Path> present = new HashSet<>();
+            for (final Path directory : mDirectories) {
+                try {
+                    present.addAll(register(directory));
+                } catch (final IOException error) {
+                    // directory removed, all its files are gone
+                }
+            }
+            result.removeAll(present); // disappeared
+            present.removeAll(mKnownFiles); // appeared
+            result.addAll(present);
+            return result;
         }
-
     }
 
     /**
@@ -1123,6 +8249,24 @@ public class FontChooserDialog
             return mNames.contains(value);
         }
 
+        /**
+         * @return order to list the accepted families in, or null for the order of the registry
+         */
+        @Nullable
+        public Comparator<String> getOrder() {
+            return null;
+        }
+
+        /**
+         * Start what the filter needs to know its families, such as measuring the fonts. Called
+         * when a family list shows the filter; {@link #test(String)} does not start anything.
+         *
+         * @return completed when {@link #test(String)} answers for the fonts of the registry
+         */
+        public CompletableFuture<Void> prepare() {
+            return CompletableFuture.completedFuture(null);
+        }
+
         @Override
         public int hashCode() {
             final int prime = 31;
@@ -1198,6 +8342,108 @@ public class FontChooserDialog
         }
     }
 
+    /**
+     * Filter to accept the families that rasterize fastest, as measured by {@link RenderCost},
+     * listed fastest first. Empty until the fonts are measured, in the background once it is
+     * first listed.
+     */
+    public static class FilterFastRendering
+        extends
+            AbstractFontFilter {
+
+        public FilterFastRendering() {
+            super();
+            setFilterName(STR_FAST_RENDERING);
+        }
+
+        @Override
+        public boolean test(final String value) {
+            return RenderCost.getInstance().isFast(value);
+        }
+
+        @Override
+        public Comparator<String> getOrder() {
+            final RenderCost cost = RenderCost.getInstance();
+            return Comparator.comparingDouble(cost::getFamilyCost);
+        }
+
+        @Override
+        public CompletableFuture<Void> prepare() {
+            return RenderCost.getInstance().start();
+        }
+    }
+
+    /**
+     * Filter to accept the families with a font in ranges of {@link FontMetricsIndex} metrics,
+     * such as "x-height &gt; 0.5". Empty until the fonts are measured.
+     */
+    public static class FilterMetricRange
+        extends
+            AbstractFontFilter {
+
+        private final List<FontMetricsIndex.Range> mRanges;
+        private volatile Selection                 mSelection;
+
+        /**
+         * @param filterName
+         *            name of filter
+         * @param expression
+         *            ranges, see {@link FontMetricsIndex#parse(String)}
+         * @throws IllegalArgumentException
+         *             not a range expression
+         */
+        public FilterMetricRange(final String filterName,
+                                 final String expression) throws IllegalArgumentException {
+            super();
+            setFilterName(filterName);
+            mRanges = FontMetricsIndex.parse(expression);
+        }
+
+        @Override
+        public boolean test(final String value) {
+            final FontMetricsIndex.Columns columns = FontMetricsIndex.getInstance().getColumns();
+            Selection selection = mSelection;
+            if (selection == null || selection.mColumns != columns) {
+                selection = new Selection(columns, columns.select(mRanges));
+                mSelection = selection;
+            }
+            final int family = columns.indexOfFamily(value);
+            return family >= 0 && selection.mFamilies.get(family);
+        }
+
+        @Override
+        public CompletableFuture<Void> prepare() {
+            return FontMetricsIndex.getInstance().start();
+        }
+
+        /**
+         * The families accepted, for the columns they were selected from.
+         */
+        private static final class Selection {
+
+            private final FontMetricsIndex.Columns mColumns;
+            private final BitSet                   mFamilies;
+
+            Selection(final FontMetricsIndex.Columns columns, final BitSet families) {
+                mColumns = columns;
+                mFamilies = families;
+            }
+        }
+    }
+
+    /**
+     * Filter to accept the narrow families, see FontChooserDialog.narrow_range in the .properties
+     * file.
+     */
+    public static class FilterNarrow
+        extends
+            FilterMetricRange {
+
+        public FilterNarrow() {
+            super(STR_NARROW, STR_NARROW_RANGE);
+        }
+    }
+
     /**
      * Used to create custom filters, especially ones created from MacOS .collections from the Font
      * Book.
@@ -1335,18 +8581,17 @@ public class FontChooserDialog
         }
 
         /**
-         * Create a list of all filters defined in FontChooseDialog.
+         * Create a list of the filters listed in META-INF/services, the ones of FontChooserDialog
+         * and any an application lists in its own jar. The names are read from the index, so
+         * opening the first dialog does not scan the nested classes by reflection.
          */
         private FilterRegistry() {
             super();
-            Arrays.asList(FontChooserDialog.class.getDeclaredClasses())
-                  .stream()
-                  .filter(c -> !Modifier.isAbstract(c.getModifiers()))
-                  .filter(c -> AbstractFontFilter.class.isAssignableFrom(c))
-                  .filter(c -> !c.getSimpleName().equals(FilterCustom.class.getSimpleName()))
-                  .map(c -> createFilter(c))
-                  .sorted(Comparator.comparing(f -> f.getFilterName()))
-                  .forEach(f -> addFilter(f));
+            ServiceLoader.load(AbstractFontFilter.class, FontChooserDialog.class.getClassLoader())
+                         .stream()
+                         .map(ServiceLoader.Provider::get)
+                         .sorted(Comparator.comparing(f -> f.getFilterName()))
+                         .forEach(f -> addFilter(f));
         }
 
         /**
@@ -1397,26 +8642,6 @@ public class FontChooserDialog
             return result;
         }
 
-        /**
-         * Create a filter object for list, and handle any errors.
-         *
-         * @param aClass
-         *            filter class to create
-         * @return filter object
-         * @throws IllegalArgumentException
-         *             any error thrown
-         */
-        private AbstractFontFilter createFilter(final Class< ? > aClass) throws IllegalArgumentException {
-            try {
-                final AbstractFontFilter filter = (AbstractFontFilter) aClass.getDeclaredConstructor()
-                                                                             .newInstance();
-                return filter;
-            } catch (InstantiationException | IllegalAccessException | NoSuchMethodException
-                    | SecurityException | InvocationTargetException error) {
-                throw new IllegalArgumentException(error);
-            }
-        }
-
         private static String[] runScript(final String[] command) throws InterruptedException,
                                                                   IOException {
             final List<String> result = new ArrayList<String>();
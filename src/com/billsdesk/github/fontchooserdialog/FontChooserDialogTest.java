@@ -1,23 +1,123 @@
 package com.billsdesk.github.fontchooserdialog;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
+import java.awt.AWTEvent;
+import java.awt.Component;
+import java.awt.Container;
 import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
+import java.awt.event.AWTEventListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.imageio.ImageIO;
+import javax.management.ObjectName;
+import javax.swing.JComboBox;
+import javax.swing.RepaintManager;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ListSelectionEvent;
+
+import com.sun.management.ThreadMXBean;
 
 import org.assertj.swing.edt.GuiActionRunner;
 import org.assertj.swing.fixture.DialogFixture;
+import org.assertj.swing.fixture.JComboBoxFixture;
+import org.assertj.swing.fixture.JListFixture;
+import org.assertj.swing.fixture.JSliderFixture;
+import org.assertj.swing.fixture.JTextComponentFixture;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
 
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.CatalogCache;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.DocumentPreview;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FamilyPrefetcher;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FilterAll;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FilterFastRendering;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FilterMetricRange;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FilterNarrow;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FilterRegistry;
 import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FilterStandard;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FontCatalog;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FontDirectoryWatcher;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FontChooserPanel;
 import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FontFamilyList;
 import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FontList;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FontLoadReport;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FontMetricsIndex;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FontMetricsIndex.Metric;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FontPack;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FontRegistry;
 import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FontSizeList;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FontSizeSlider;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FontSizeText;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FontSpec;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FontStyle;
 import com.billsdesk.github.fontchooserdialog.FontChooserDialog.FontStyleList;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.GlyphWarmer;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.ImmutableListModel;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.Inventory;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.PreviewPanel;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.RegistryChange;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.RegistryListener;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.RenderCost;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.SelectionPublisher;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.SelectionModel;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.SettingsPanel;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.SimilarityIndex;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.SpecimenSheets;
+import com.billsdesk.github.fontchooserdialog.FontChooserDialog.WaterfallPanel;
 
 /**
  * @author Bill
@@ -87,6 +187,1227 @@ public class FontChooserDialogTest {
         fixture.cleanUp();
     }
 
+    @Test
+    public void factoryReusesDialog() {
+        final Font first = new Font("Courier", Font.BOLD, 24);
+        final Font second = new Font("Courier", Font.PLAIN, 12);
+        final FontChooserDialog.Factory factory = new FontChooserDialog.Factory(null);
+        final FontChooserDialog dialog1 = //
+                GuiActionRunner.execute(() -> factory.prepare("First", first));
+        assertEquals("First", dialog1.getTitle());
+        assertEquals(first, dialog1.getSelectedFont());
+        final FontChooserDialog dialog2 = //
+                GuiActionRunner.execute(() -> factory.prepare(null, second));
+        assertSame(dialog1, dialog2);
+        assertEquals("Font", dialog2.getTitle());
+        assertEquals(second, dialog2.getSelectedFont());
+        GuiActionRunner.execute(() -> factory.release());
+    }
+
+    /**
+     * Memory pressure disposes the hidden dialog of a factory, which builds a new one on its next
+     * use.
+     */
+    @Test
+    public void factoryReleasesDialogUnderPressure() {
+        final FontChooserDialog.Factory factory = new FontChooserDialog.Factory(null);
+        final FontChooserDialog dialog1 = //
+                GuiActionRunner.execute(() -> factory.prepare("First", null));
+        assertTrue(dialog1.isDisplayable());
+        GuiActionRunner.execute(() -> FontChooserDialog.Factory.releaseHidden());
+        assertFalse(dialog1.isDisplayable());
+        final FontChooserDialog dialog2 = //
+                GuiActionRunner.execute(() -> factory.prepare("Second", null));
+        assertNotSame(dialog1, dialog2);
+        assertEquals("Second", dialog2.getTitle());
+        GuiActionRunner.execute(() -> factory.release());
+    }
+
+    @Test
+    public void filtersFromServiceIndex() {
+        assertArrayEquals(new String[]{
+                                       new FilterAll().getFilterName(),
+                                       new FilterFastRendering().getFilterName(),
+                                       new FilterNarrow().getFilterName(),
+                                       new FilterStandard().getFilterName()
+        }, FilterRegistry.getInstance().getFilterNames());
+    }
+
+    @Test
+    public void familiesInCollationOrder() throws Exception {
+        final FontCatalog.Builder builder = new FontCatalog.Builder();
+        for (final String familyName : Arrays.asList("Zapf", "\u00c4pfel", "apple", "Eagle",
+                                                     "\u00c9mile")) {
+            builder.addFont(familyName, familyName);
+        }
+        final FontRegistry registry = new FontRegistry(builder.build());
+        registry.setLocale(Locale.ENGLISH).get();
+        assertArrayEquals(new String[]{
+                                       "\u00c4pfel", "apple", "Eagle", "\u00c9mile", "Zapf"
+        }, registry.getFamilyNames());
+        registry.setLocale(new Locale("sv")).get(); // \u00c4 sorts after Z in Swedish
+        assertArrayEquals(new String[]{
+                                       "apple", "Eagle", "\u00c9mile", "Zapf", "\u00c4pfel"
+        }, registry.getFamilyNames());
+        assertTrue(registry.getOrder().getRank("Zapf") < registry.getOrder().getRank("\u00c4pfel"));
+    }
+
+    @Test
+    public void sharedListModels() {
+        final FontFamilyList list1 = GuiActionRunner.execute(() -> new FontFamilyList());
+        final FontFamilyList list2 = GuiActionRunner.execute(() -> new FontFamilyList());
+        assertSame(list1.getNames(), list2.getNames());
+        GuiActionRunner.execute(() -> list1.setFamilyNames(new FilterStandard()));
+        assertNotSame(list1.getNames(), list2.getNames());
+        GuiActionRunner.execute(() -> list2.setFamilyNames(new FilterStandard()));
+        assertSame(list1.getNames(), list2.getNames());
+    }
+
+    @Test
+    public void waterfallRendersEverySize() {
+        final WaterfallPanel waterfall = GuiActionRunner.execute(() -> {
+            final WaterfallPanel panel = new WaterfallPanel();
+            panel.showFont(new Font("Serif", Font.PLAIN, 12), "first");
+            // replaces the first font, so its renders are cancelled or ignored
+            panel.showFont(new Font("SansSerif", Font.BOLD, 12), "second");
+            return panel;
+        });
+        for (int i = 0; i < 100 && !GuiActionRunner.execute(() -> waterfall.isComplete()); i++) {
+            pause(50);
+        }
+        assertTrue(GuiActionRunner.execute(() -> waterfall.isComplete()));
+    }
+
+    /**
+     * Copy a font file into a watched temporary directory and delete it again. The registry starts
+     * empty, so the font's family must be added and then removed.
+     */
+    @Test
+    public void watcherUpdatesRegistry() throws Exception {
+        final Path source = findFontFile();
+        assumeTrue(source != null, "no TrueType font file found");
+        final String familyName = Font.createFont(Font.TRUETYPE_FONT, source.toFile()).getFamily();
+        final FontRegistry registry = new FontRegistry(new FontCatalog.Builder().build());
+        final BlockingQueue<RegistryChange> changes = new LinkedBlockingQueue<>();
+        final RegistryListener listener = changes::add;
+        registry.addListener(listener);
+        final Path directory = Files.createTempDirectory("FontDirectoryWatcher");
+        final Path copy = directory.resolve("font.ttf");
+        final FontDirectoryWatcher watcher = //
+                new FontDirectoryWatcher(registry, 100, Arrays.asList(directory)).start();
+        try {
+            Files.copy(source, copy);
+            final RegistryChange added = changes.poll(10, TimeUnit.SECONDS);
+            assertEquals(Collections.singleton(familyName), added.getAddedFamilies());
+            assertTrue(registry.isFamilyName(familyName));
+
+            Files.delete(copy);
+            final RegistryChange removed = changes.poll(10, TimeUnit.SECONDS);
+            assertEquals(Collections.singleton(familyName), removed.getRemovedFamilies());
+            assertFalse(registry.isFamilyName(familyName));
+        } finally {
+            watcher.close();
+            registry.removeListener(listener);
+            Files.deleteIfExists(copy);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void registerFontDirectoryReportsFailures() throws Exception {
+        final Path source = findFontFile();
+        assumeTrue(source != null, "no TrueType font file found");
+        final String familyName = Font.createFont(Font.TRUETYPE_FONT, source.toFile()).getFamily();
+        final FontRegistry registry = new FontRegistry(new FontCatalog.Builder().build());
+        final Path directory = Files.createTempDirectory("registerFontDirectory");
+        final Path broken = directory.resolve("broken.ttf");
+        final Path sub = directory.resolve("sub");
+        try {
+            Files.createDirectory(sub);
+            Files.copy(source, directory.resolve("font.ttf"));
+            Files.copy(source, sub.resolve("font.otf"));
+            Files.write(broken, new byte[]{
+                                           1, 2, 3
+            });
+            final FontLoadReport report = registry.registerFontDirectory(directory, 2);
+            assertEquals(2, report.getFonts().size());
+            assertEquals(Collections.singleton(broken), report.getFailures().keySet());
+            assertEquals(Collections.singleton(familyName), report.getChange().getAddedFamilies());
+            assertTrue(registry.isFamilyName(familyName));
+        } finally {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void fontPackListsFamiliesBeforeLoading() throws Exception {
+        final Path source = findFontFile();
+        assumeTrue(source != null, "no TrueType font file found");
+        final Font font = Font.createFont(Font.TRUETYPE_FONT, source.toFile());
+        final Path archive = Files.createTempFile("fontPack", ".jar");
+        final Path indexed = Files.createTempFile("fontPackToc", ".zip");
+        try {
+            try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+                zip.putNextEntry(new ZipEntry("fonts/font.ttf"));
+                Files.copy(source, zip);
+                zip.putNextEntry(new ZipEntry("readme.txt"));
+            }
+            final FontPack pack = FontPack.open(archive);
+            assertEquals(Collections.singletonMap(font.getFamily(),
+                                                  Collections.singletonList(font.getName())),
+                         pack.getFontNames());
+
+            final StringWriter toc = new StringWriter();
+            pack.writeToc(toc);
+            try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(indexed))) {
+                zip.putNextEntry(new ZipEntry(FontPack.TOC_ENTRY));
+                zip.write(toc.toString().replace(font.getFamily(), "Packed Family").getBytes(UTF_8));
+                zip.putNextEntry(new ZipEntry("fonts/font.ttf"));
+                zip.write(new byte[]{
+                                     1, 2, 3
+                });
+            }
+            assertEquals(Collections.singleton("Packed Family"),
+                         FontPack.open(indexed).getFamilyNames());
+
+            final FontRegistry registry = new FontRegistry(new FontCatalog.Builder().build());
+            assertEquals(Collections.singleton(font.getFamily()),
+                         registry.registerFontPack(pack).getAddedFamilies());
+            assertTrue(registry.isFont(font.getFamily(), font.getName()));
+            assertEquals(font.getFamily(),
+                         registry.getFont(font.getFamily(),
+                                          registry.getFontNames(font.getFamily())[0],
+                                          Font.PLAIN,
+                                          12)
+                                 .getFamily());
+        } finally {
+            Files.delete(archive);
+            Files.delete(indexed);
+        }
+    }
+
+    /**
+     * @return a TrueType font from the JDK or the usual Linux font directory, null if none
+     */
+    static Path findFontFile() throws IOException {
+        for (final Path directory : Arrays.asList(Paths.get(System.getProperty("java.home"),
+                                                            "lib",
+                                                            "fonts"),
+                                                  Paths.get("/usr/share/fonts"))) {
+            if (Files.isDirectory(directory)) {
+                try (Stream<Path> paths = Files.walk(directory)) {
+                    final Optional<Path> result = paths.filter(p -> p.toString().endsWith(".ttf"))
+                                                       .findFirst();
+                    if (result.isPresent()) {
+                        return result.get();
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Before all fonts are read a lazy registry lists some of the fonts of the eager one, and
+     * once they are read in the background it lists all of them.
+     */
+    @Test
+    public void lazyRegistryListsEagerFonts() throws Exception {
+        final FontRegistry eager = new FontRegistry(false);
+        final FontRegistry lazy = new FontRegistry(true);
+        assertArrayEquals(eager.getFamilyNames(), lazy.getFamilyNames());
+        for (final String familyName : lazy.getFamilyNames()) {
+            final List<String> eagerNames = Arrays.asList(eager.getFontNames(familyName));
+            for (final String fontName : lazy.getFontNames(familyName)) {
+                assertTrue(eagerNames.contains(fontName), familyName + " " + fontName);
+                assertEquals(eager.getFontName(familyName, fontName),
+                             lazy.getFontName(familyName, fontName));
+            }
+        }
+        lazy.loadAllFontsLater();
+        final CountDownLatch done = new CountDownLatch(1);
+        lazy.prefetch(done::countDown);
+        assertTrue(done.await(1, TimeUnit.MINUTES));
+        assertArrayEquals(eager.getFamilyNames(), lazy.getFamilyNames());
+        for (final String familyName : lazy.getFamilyNames()) {
+            assertEquals(new HashSet<>(Arrays.asList(eager.getFontNames(familyName))),
+                         new HashSet<>(Arrays.asList(lazy.getFontNames(familyName))),
+                         familyName);
+        }
+    }
+
+    /**
+     * The same 10,000 font names take less than half the heap in a FontCatalog as they did as
+     * java.awt.Font objects in a map, as the registry used to hold them.
+     */
+    @Test
+    public void registryHeapComparison() {
+        final int count = 10_000;
+        final long before = usedHeap();
+        final Map<String, List<Font>> fonts = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            final String family = "Family " + (i / 8);
+            final Font font = new Font(family + "-Style " + (i % 8), Font.PLAIN, 1);
+            font.getFamily(); // resolve the native font as displaying it would
+            fonts.computeIfAbsent(family, f -> new ArrayList<>()).add(font);
+        }
+        final long legacy = usedHeap() - before;
+        FontCatalog.Builder builder = new FontCatalog.Builder();
+        for (int i = 0; i < count; i++) {
+            final String family = "Family " + (i / 8);
+            builder.addFont(family, family + "-Style " + (i % 8));
+        }
+        final FontCatalog catalog = builder.build();
+        builder = null;
+        final long compact = usedHeap() - before - legacy;
+        assertEquals(count, catalog.getFaceCount());
+        assertEquals(count / 8, fonts.size());
+        assertTrue(compact < legacy / 2, compact + " bytes, Font objects " + legacy + " bytes");
+    }
+
+    /**
+     * Once the caches are warm, looking up styles and sizes, keeping the size text in step with
+     * the slider, resolving the font, and updating the preview must not allocate.
+     */
+    @Test
+    public void selectionPathDoesNotAllocate() {
+        final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported()
+                && threads.isThreadAllocatedMemoryEnabled());
+        final int interactions = 10_000;
+        final long allocated = GuiActionRunner.execute(() -> {
+            final SettingsPanel[] settings = new SettingsPanel[1];
+            final PreviewPanel preview = new PreviewPanel(() -> settings[0].getSelectedFont());
+            settings[0] = new SettingsPanel(preview);
+            final ChangeEvent selection = new ChangeEvent(settings[0].getSelection());
+            final FontSizeText sizeText = new FontSizeText();
+            final String[] styleNames = FontStyle.getNames();
+            final FontRegistry registry = FontRegistry.getInstance();
+            final String family = registry.getFamilyNames()[0];
+            final String[] faces = registry.getFontNames(family);
+            final Runnable interaction = () -> {
+                for (final String name : styleNames) {
+                    FontStyle.fromInt(FontStyle.fromName(name).get().getStyle());
+                }
+                for (int size = 10; size < 14; size++) {
+                    FontSizeList.getSizeName(size);
+                    registry.getFont(family, faces[size % faces.length], Font.BOLD, size);
+                }
+                sizeText.stateChanged(selection);
+                preview.stateChanged(selection);
+            };
+            for (int i = 0; i < interactions; i++) {
+                interaction.run();
+            }
+            final long before = threads.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < interactions; i++) {
+                interaction.run();
+            }
+            return threads.getCurrentThreadAllocatedBytes() - before;
+        });
+        // any allocation per interaction is at least 16 bytes, less than 1 is JIT and GC noise
+        assertTrue(allocated < interactions,
+                   String.format("%,d bytes for %,d interactions", allocated, interactions));
+    }
+
+    /**
+     * Each user action on a component is one change of the selection, shown once by the preview,
+     * and the other components showing the same value follow without changing it again.
+     */
+    @Test
+    public void selectionModelOneChangePerAction() {
+        GuiActionRunner.execute(() -> {
+            final SettingsPanel[] settings = new SettingsPanel[1];
+            final PreviewPanel preview = new PreviewPanel(() -> settings[0].getSelectedFont());
+            settings[0] = new SettingsPanel(preview);
+            settings[0].addNotify(); // builds the slider, as when shown
+            final SelectionModel selection = settings[0].getSelection();
+            final FontFamilyList families = find(settings[0], FontFamilyList.class);
+            final FontList faces = find(settings[0], FontList.class);
+            final FontStyleList styles = find(settings[0], FontStyleList.class);
+            final FontSizeList sizes = find(settings[0], FontSizeList.class);
+            final FontSizeText sizeText = find(settings[0], FontSizeText.class);
+            final FontSizeSlider slider = find(settings[0], FontSizeSlider.class);
+            final int[] sliderEvents = new int[1];
+            slider.addChangeListener(event -> sliderEvents[0]++);
+            final Runnable[] actions = {
+                    () -> families.setSelectedIndex(families.getModel().getSize() - 1),
+                    () -> faces.setSelectedIndex(faces.getModel().getSize() - 1),
+                    () -> styles.setSelectedValue(FontStyle.BOLD.getName(), false),
+                    () -> sizes.setSelectedValue("24", false),
+                    () -> slider.setValue(30),
+                    () -> {
+                        sizeText.setText("17");
+                        sizeText.postActionEvent();
+                    },
+                    () -> families.setSelectedIndex(0)
+            };
+            for (int i = 0; i < actions.length; i++) {
+                final int changes = selection.getChangeCount();
+                final int shown = preview.getShowCount();
+                final int ticks = sliderEvents[0];
+                actions[i].run();
+                assertEquals(changes + 1, selection.getChangeCount(), "changes of action " + i);
+                assertEquals(shown + 1, preview.getShowCount(), "previews of action " + i);
+                assertTrue(sliderEvents[0] - ticks <= 1, "slider events of action " + i);
+                assertEquals(selection.getFont(), settings[0].getSelectedFont());
+                assertEquals(selection.getFamilyName(), families.getSelectedValue());
+                assertEquals(selection.getFontName(), faces.getSelectedValue());
+                assertEquals(String.valueOf(selection.getSize()), sizeText.getText());
+                assertEquals(Math.min(selection.getSize(), FontSizeSlider.MAX_SIZE),
+                             slider.getValue());
+            }
+            assertEquals("17", sizeText.getText());
+            assertEquals(null, sizes.getSelectedValue()); // 17 is not listed
+            assertEquals(Font.BOLD, selection.getStyle());
+            final int changes = selection.getChangeCount();
+            settings[0].setSelectedFont(selection.getFont());
+            sizes.setSelectedValue("17", false);
+            assertEquals(changes, selection.getChangeCount()); // nothing changed
+            return null;
+        });
+    }
+
+    /**
+     * A panel only selects a font until it is made displayable, then shows it in its lists and
+     * preview; a hidden slider is built when first shown; panels share the list models but not
+     * the selection.
+     */
+    @Test
+    public void fontChooserPanelBuildsWhenShown() {
+        GuiActionRunner.execute(() -> {
+            final FontRegistry registry = FontRegistry.getInstance();
+            final String family = registry.getFamilyNames()[0];
+            final Font font = registry.getFont(family, registry.getFontNames(family)[0], 1, 21);
+            final FontChooserPanel panel = new FontChooserPanel(font);
+            assertFalse(panel.isBuilt());
+            assertEquals(0, panel.getComponentCount());
+            assertEquals(font, panel.getSelectedFont());
+
+            panel.setSizeSliderVisible(false);
+            panel.addNotify();
+            assertTrue(panel.isBuilt());
+            assertEquals(null, find(panel, FontSizeSlider.class));
+            assertTrue(find(panel, JComboBox.class) != null);
+            assertEquals(family, find(panel, FontFamilyList.class).getSelectedValue());
+            assertEquals(1, find(panel, PreviewPanel.class).getShowCount());
+            panel.setSizeSliderVisible(true);
+            assertEquals(21, find(panel, FontSizeSlider.class).getValue());
+
+            final FontChooserPanel other = new FontChooserPanel();
+            other.addNotify();
+            assertSame(find(panel, FontFamilyList.class).getNames(),
+                       find(other, FontFamilyList.class).getNames());
+            other.getSelection().setSize(30);
+            assertEquals(21, panel.getSelectedFont().getSize());
+            return null;
+        });
+    }
+
+    /**
+     * @return the first component of a class in a container, depth first
+     */
+    private static <T> T find(final Container container, final Class<T> type) {
+        for (final Component component : container.getComponents()) {
+            if (type.isInstance(component)) {
+                return type.cast(component);
+            }
+            if (component instanceof Container) {
+                final T found = find((Container) component, type);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Moving down the families queues the ones below the selection. Turning back before they are
+     * warmed drops them and warms the ones above instead, and the next step up queues one more.
+     */
+    @Test
+    public void prefetcherFollowsDirection() throws Exception {
+        final FontCatalog.Builder builder = new FontCatalog.Builder();
+        for (int i = 0; i < 40; i++) {
+            final String family = String.format("Synthetic %02d", i);
+            builder.addFont(family, family);
+            builder.addFont(family, family + " Bold");
+        }
+        final FontRegistry previous = FontRegistry.getInstance();
+        final FontRegistry registry = new FontRegistry(builder.build());
+        FontRegistry.setInstance(registry);
+        try {
+            final ImmutableListModel families = new ImmutableListModel(registry.getFamilyNames());
+            final FamilyPrefetcher prefetcher = new FamilyPrefetcher();
+            final CountDownLatch release = new CountDownLatch(1);
+            registry.prefetch(() -> {
+                try {
+                    release.await();
+                } catch (final InterruptedException error) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            prefetcher.selectionMoved(families, 20, "Bold", Font.PLAIN, 12, "Preview");
+            prefetcher.selectionMoved(families, 19, "Bold", Font.PLAIN, 12, "Preview");
+            release.countDown();
+            awaitPrefetch(registry);
+            assertEquals(FamilyPrefetcher.AHEAD, prefetcher.getWarmedCount());
+            prefetcher.selectionMoved(families, 18, "Bold", Font.PLAIN, 12, "Preview");
+            awaitPrefetch(registry);
+            assertEquals(FamilyPrefetcher.AHEAD + 1, prefetcher.getWarmedCount());
+        } finally {
+            FontRegistry.setInstance(previous);
+        }
+    }
+
+    private static void awaitPrefetch(final FontRegistry registry) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        registry.prefetch(done::countDown);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * The first run writes the catalog cache and the second reads it, listing the same families,
+     * as the measured filters are waited for. A cache that is not a catalog is rebuilt. The
+     * measurements are kept in temporary files rather than those of the user.
+     */
+    @Test
+    public void inventoryReusesCachedCatalog() throws Exception {
+        final Path cache = Files.createTempFile("inventory", ".catalog");
+        final Path costs = Files.createTempFile("inventory", ".cost");
+        final Path metrics = Files.createTempFile("inventory", ".metrics");
+        final FontRegistry previous = FontRegistry.getInstance();
+        try {
+            RenderCost.setInstance(new RenderCost(costs));
+            FontMetricsIndex.setInstance(new FontMetricsIndex(metrics));
+            Files.write(cache, "not a catalog".getBytes(UTF_8));
+            final String[] args = {
+                                   "families", "--format", "csv", "--cache", cache.toString()
+            };
+            final StringWriter first = new StringWriter();
+            assertEquals(0, Inventory.run(args, first));
+            final String[] lines = first.toString().split("\r\n");
+            assertEquals("family,faces,filters", lines[0]);
+            assertEquals(previous.getFamilyNames().length, lines.length - 1);
+            final FontCatalog cached = new CatalogCache(cache).load(false);
+            assertEquals(previous.getCatalog().getFaceCount(), cached.getFaceCount());
+            final StringWriter second = new StringWriter();
+            assertEquals(0, Inventory.run(args, second));
+            assertEquals(first.toString(), second.toString());
+            final StringWriter faces = new StringWriter();
+            assertEquals(0, Inventory.run(new String[]{
+                                                       "faces", "--cache", cache.toString()
+            }, faces));
+            assertTrue(faces.toString().startsWith("{\"family\":"));
+            assertEquals(cached.getFaceCount(), faces.toString().split("\n").length);
+        } finally {
+            RenderCost.setInstance(null);
+            FontMetricsIndex.setInstance(null);
+            FontRegistry.setInstance(previous);
+            Files.delete(cache);
+            Files.delete(costs);
+            Files.delete(metrics);
+        }
+    }
+
+    /**
+     * Measure two families, read the costs back from the file, and list the faster family first
+     * in the fast rendering filter. Fonts already measured are not measured again.
+     */
+    @Test
+    public void renderCostFilter() throws Exception {
+        final FontCatalog installed = FontRegistry.getInstance().getCatalog();
+        final FontCatalog catalog = new FontCatalog.Builder()
+                .addCatalog(installed, f -> !f.equals(Font.SERIF) && !f.equals(Font.MONOSPACED))
+                .build();
+        assumeTrue(catalog.getFamilyCount() == 2);
+        final Path file = Files.createTempFile("render", ".cost");
+        try {
+            final RenderCost measured = new RenderCost(file);
+            assertEquals(catalog.getFaceCount(), measured.measure(catalog, false));
+            measured.save();
+            final RenderCost cost = new RenderCost(file);
+            assertEquals(0, cost.measure(catalog, false));
+            final String[] families = {
+                                       Font.SERIF, Font.MONOSPACED
+            };
+            for (final String family : families) {
+                assertTrue(cost.getFamilyCost(family) > 0);
+                assertEquals(measured.getFamilyCost(family), cost.getFamilyCost(family));
+            }
+            assertTrue(Float.isNaN(cost.getFamilyCost("Missing")));
+            Arrays.sort(families, Comparator.comparingDouble(cost::getFamilyCost));
+            RenderCost.setInstance(cost);
+            final FilterFastRendering filter = new FilterFastRendering();
+            assertTrue(filter.test(families[0]));
+            assertFalse(filter.test("Missing"));
+            final List<String> names = new ArrayList<>(Arrays.asList(Font.MONOSPACED, Font.SERIF));
+            names.sort(filter.getOrder());
+            assertEquals(families[0], names.get(0));
+        } finally {
+            RenderCost.setInstance(null);
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * With no costs yet the fast rendering filter accepts no family, and testing families does not
+     * start measuring; preparing the filter, as listing it does, measures the fonts of the
+     * registry once and saves them, and then the filter accepts some.
+     */
+    @Test
+    public void renderCostUnmeasured() throws Exception {
+        final Path file = Files.createTempFile("render", ".cost");
+        try {
+            final RenderCost cost = new RenderCost(file);
+            RenderCost.setInstance(cost);
+            final FilterFastRendering filter = new FilterFastRendering();
+            final String[] families = FontRegistry.getInstance().getFamilyNames();
+            for (final String family : families) {
+                assertTrue(Float.isNaN(cost.getFamilyCost(family)));
+                assertFalse(filter.test(family));
+            }
+            assertTrue(cost.getUpdate().isDone());
+            final CompletableFuture<Void> started = filter.prepare();
+            assertSame(started, filter.prepare());
+            started.get(2, TimeUnit.MINUTES);
+            assertTrue(Arrays.stream(families).anyMatch(filter::test));
+            final RenderCost read = new RenderCost(file);
+            for (final String family : families) {
+                assertEquals(cost.getFamilyCost(family), read.getFamilyCost(family));
+            }
+            assertEquals(0, read.measure(FontRegistry.getInstance().getCatalog(), false));
+        } finally {
+            RenderCost.setInstance(null);
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * A family list showing the fast rendering filter before the fonts are measured is empty, and
+     * filters again when they are, without switching filters.
+     */
+    @Test
+    public void fastRenderingListFillsWhenMeasured() throws Exception {
+        final Path file = Files.createTempFile("render", ".cost");
+        try {
+            final RenderCost cost = new RenderCost(file);
+            RenderCost.setInstance(cost);
+            final FontFamilyList list = GuiActionRunner.execute(() -> new FontFamilyList());
+            GuiActionRunner.execute(() -> list.setFamilyNames(new FilterFastRendering()));
+            assertEquals(0, (int) GuiActionRunner.execute(() -> list.getModel().getSize()));
+            cost.getUpdate().get(2, TimeUnit.MINUTES);
+            SwingUtilities.invokeAndWait(() -> {
+                // the change is queued before the update completes
+            });
+            assertTrue(GuiActionRunner.execute(() -> list.getModel().getSize()) > 0);
+        } finally {
+            RenderCost.setInstance(null);
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * A family list showing a metric range filter before the fonts are measured is empty, and
+     * filters again when they are, without switching filters.
+     */
+    @Test
+    public void metricRangeListFillsWhenMeasured() throws Exception {
+        final Path file = Files.createTempFile("metrics", ".bin");
+        try {
+            final FontMetricsIndex index = new FontMetricsIndex(file);
+            FontMetricsIndex.setInstance(index);
+            final FontFamilyList list = GuiActionRunner.execute(() -> new FontFamilyList());
+            final FilterMetricRange tall = new FilterMetricRange("Tall", "ascent > 0");
+            GuiActionRunner.execute(() -> list.setFamilyNames(tall));
+            assertEquals(0, (int) GuiActionRunner.execute(() -> list.getModel().getSize()));
+            index.updateAsync().get(2, TimeUnit.MINUTES);
+            SwingUtilities.invokeAndWait(() -> {
+                // the change is queued before the update completes
+            });
+            assertTrue(GuiActionRunner.execute(() -> list.getModel().getSize()) > 0);
+        } finally {
+            FontMetricsIndex.setInstance(null);
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Warm-up completes with the font, off the EDT, at each size and at the font's own size.
+     */
+    @Test
+    public void glyphWarmerCompletes() throws Exception {
+        final Font font = new Font(Font.SANS_SERIF, Font.BOLD, 13);
+        final BlockingQueue<String> threads = new LinkedBlockingQueue<>();
+        final Font warmed = new GlyphWarmer(GlyphWarmer.LATIN_1, 12, 48, 144)
+                .warm(font)
+                .whenComplete((f, error) -> threads.add(Thread.currentThread().getName()))
+                .get(10, TimeUnit.SECONDS);
+        assertSame(font, warmed);
+        assertEquals("GlyphWarmer", threads.poll(10, TimeUnit.SECONDS));
+        assertSame(font, new GlyphWarmer().warm(font).get(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Every font of the registry in every style is written as a spec that parses back to the same
+     * spec and font, in both forms, and parsing ignores case, quotes, and uninstalled CSS families.
+     * Styles are written in English and read by their constant or display names.
+     */
+    @Test
+    public void fontSpecRoundTrip() {
+        final FontRegistry registry = FontRegistry.getInstance();
+        for (final String family : registry.getFamilyNames()) {
+            for (final String fontName : registry.getFontNames(family)) {
+                for (final FontStyle style : FontStyle.values()) {
+                    final Font font = registry.getFont(family, fontName, style.getStyle(), 17);
+                    final FontSpec spec = FontSpec.valueOf(font);
+                    assertSame(spec, FontSpec.parse(spec.toString()), spec.toString());
+                    assertSame(spec, FontSpec.parse(spec.toCss()), spec.toCss());
+                    assertEquals(font, spec.getFont());
+                }
+            }
+        }
+        assumeTrue(registry.isFamilyName("DejaVu Sans"));
+        final FontSpec bold = FontSpec.parse("DejaVu Sans Bold 24");
+        assertEquals("DejaVu Sans Bold", bold.getFont().getName());
+        assertEquals(Font.PLAIN, bold.getStyle());
+        assertSame(bold, FontSpec.parse("dejavu sans BOLD 24pt"));
+        assertSame(bold, FontSpec.parse("24px 'DejaVu Sans Bold'"));
+        assertEquals(bold.getFontName(),
+                     FontSpec.parse("\"DejaVu Sans\" Bold Italic 12").getFontName());
+        final FontSpec regular = FontSpec.parse("\"DejaVu Sans\" regular bold italic 12");
+        assertEquals("DejaVu Sans", regular.getFont().getName());
+        assertEquals("DejaVu Sans Regular Bold Italic 12", regular.toString());
+        final String boldItalic = FontStyle.BOLD_ITALIC.getName();
+        assertSame(regular, FontSpec.parse("DejaVu Sans Regular " + boldItalic + " 12"));
+        assertSame(regular, FontSpec.parse("\"DejaVu Sans\" Regular bold_italic 12"));
+        assertSame(regular, FontSpec.parse("italic 700 12pt/1.5 \"No Such\", \"DejaVu Sans\""));
+        assertEquals(Font.SERIF, FontSpec.parse("bold 10pt No Such, serif").getFamilyName());
+        for (final String text : Arrays.asList("",
+                                               "DejaVu Sans",
+                                               "DejaVu Sans Heavy 12",
+                                               "DejaVu Sans 0",
+                                               "12pt No Such",
+                                               "thin 12pt serif")) {
+            try {
+                FontSpec.parse(text);
+                fail(text);
+            } catch (final IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * A family installed after a spec was written, whose name the old text would be read as, gets
+     * the spec a text that still parses back to it.
+     */
+    @Test
+    public void fontSpecTextFollowsInstalledFonts() {
+        final FontCatalog.Builder builder = new FontCatalog.Builder();
+        builder.addFont("Synthetic", "Synthetic");
+        final FontRegistry previous = FontRegistry.getInstance();
+        final FontRegistry registry = new FontRegistry(builder.build());
+        FontRegistry.setInstance(registry);
+        try {
+            final FontSpec spec = FontSpec.parse("Synthetic Bold 12");
+            assertEquals("Synthetic Bold 12", spec.toString());
+            registry.update(Collections.singletonMap("Synthetic Bold",
+                                                     Collections.singletonList("Synthetic Bold")),
+                            Collections.emptyMap());
+            assertEquals("Synthetic Bold", FontSpec.parse("Synthetic Bold 12").getFamilyName());
+            assertEquals("Synthetic Regular Bold 12", spec.toString());
+            assertSame(spec, FontSpec.parse(spec.toString()));
+        } finally {
+            FontRegistry.setInstance(previous);
+        }
+    }
+
+    /**
+     * Serif has more stroke contrast than Sans, ranges select families from the columns, the
+     * columns are read back from the file rather than measured again, and a range filter uses
+     * them.
+     */
+    @Test
+    public void fontMetricsIndexRanges() throws IOException {
+        final FontCatalog catalog = FontRegistry.getInstance().getCatalog();
+        assumeTrue(catalog.indexOfFamily("DejaVu Serif") != -1);
+        final Path file = Files.createTempFile("metrics", ".bin");
+        try {
+            final FontMetricsIndex index = new FontMetricsIndex(file);
+            assertTrue(index.update(catalog) > 0);
+            assertTrue(index.getMetric("DejaVu Serif", Metric.CONTRAST)
+                    > index.getMetric("DejaVu Sans", Metric.CONTRAST));
+            assertTrue(index.getMetric("DejaVu Sans", Metric.X_HEIGHT) > 0.4f);
+            final Set<String> contrast = //
+                    index.getFamilies(FontMetricsIndex.parse("contrast > 1.5"));
+            assertTrue(contrast.contains("DejaVu Serif"), contrast.toString());
+            assertFalse(contrast.contains("DejaVu Sans"), contrast.toString());
+            assertTrue(index.getFamilies(FontMetricsIndex.parse("x-height >= 0.4 and width < 0.1"))
+                            .isEmpty());
+            for (final String expression : Arrays.asList("weight > 1", "width", "width < wide")) {
+                try {
+                    FontMetricsIndex.parse(expression);
+                    fail(expression);
+                } catch (final IllegalArgumentException expected) {
+                    // expected
+                }
+            }
+            index.save();
+
+            final FontMetricsIndex read = new FontMetricsIndex(file);
+            assertEquals(index.size(), read.size());
+            assertEquals(0, read.update(catalog));
+            FontMetricsIndex.setInstance(read);
+            final FilterMetricRange filter = new FilterMetricRange("Contrast", "contrast > 1.5");
+            assertTrue(filter.test("DejaVu Serif"));
+            assertFalse(filter.test("DejaVu Sans"));
+            assertFalse(filter.test("no such family"));
+        } finally {
+            FontMetricsIndex.setInstance(null);
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * A font at the bound of a range is in it for &lt;= and &gt;=, and not for &lt; and &gt;.
+     */
+    @Test
+    public void fontMetricsIndexStrictBounds() throws IOException {
+        final Path file = Files.createTempFile("metrics", ".bin");
+        try {
+            final FontMetricsIndex index = new FontMetricsIndex(file);
+            final float[] values = new float[Metric.values().length];
+            values[Metric.X_HEIGHT.ordinal()] = 0.3f;
+            index.put("Synthetic", "Synthetic", values);
+            index.updated(0);
+            final Set<String> synthetic = Collections.singleton("Synthetic");
+            assertEquals(synthetic, index.getFamilies(FontMetricsIndex.parse("x-height >= 0.3")));
+            assertEquals(synthetic, index.getFamilies(FontMetricsIndex.parse("x-height <= 0.3")));
+            assertTrue(index.getFamilies(FontMetricsIndex.parse("x-height > 0.3")).isEmpty());
+            assertTrue(index.getFamilies(FontMetricsIndex.parse("x-height < 0.3")).isEmpty());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * The logical SansSerif and Dialog are DejaVu Sans here, so they are its nearest families; the
+     * vectors are read back from the file rather than drawn again, and a family removed from the
+     * registry is dropped.
+     */
+    @Test
+    public void similarityIndexFindsAlias() throws IOException {
+        final FontCatalog catalog = FontRegistry.getInstance().getCatalog();
+        assumeTrue(catalog.indexOfFamily("DejaVu Sans") != -1);
+        final Path file = Files.createTempFile("features", ".bin");
+        try {
+            final SimilarityIndex index = new SimilarityIndex(file);
+            assertEquals(catalog.getEndFace(catalog.getFamilyCount() - 1), index.update(catalog));
+            final List<String> similar = index.getSimilarFamilies("DejaVu Sans", 3);
+            assertTrue(similar.subList(0, 2).contains("SansSerif"), similar.toString());
+            assertEquals(3, similar.size());
+            assertFalse(similar.contains("DejaVu Sans"));
+            assertTrue(index.getSimilarFamilies("SansSerif", 2).contains("DejaVu Sans"));
+            index.save();
+
+            final SimilarityIndex read = new SimilarityIndex(file);
+            assertEquals(index.size(), read.size());
+            final FontCatalog.Builder builder = new FontCatalog.Builder();
+            for (int family = 0; family < catalog.getFamilyCount(); family++) {
+                if (!catalog.getFamilyName(family).equals("SansSerif")) {
+                    builder.addFamily(catalog.getFamilyName(family));
+                    for (int face = catalog.getFirstFace(family); face < catalog.getEndFace(family);
+                            face++) {
+                        builder.addFont(catalog.getFamilyName(family), catalog.getFaceName(face));
+                    }
+                }
+            }
+            assertEquals(0, read.update(builder.build()), "fonts drawn again");
+            assertTrue(read.size() < index.size());
+            assertFalse(read.getSimilarFamilies("DejaVu Sans", 3).contains("SansSerif"));
+            assertTrue(read.getSimilarFamilies("SansSerif", 3).isEmpty());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Specimen pages are written per family, a family too tall for a page continues on more
+     * pages, and a run again writes only the families whose first page is missing.
+     */
+    @Test
+    public void specimenSheetsResume() throws IOException {
+        final Path directory = Files.createTempDirectory("specimens");
+        try {
+            final List<String> families = Arrays.asList(FontRegistry.getInstance()
+                                                                    .getFamilyNames())
+                                                .subList(0, 3);
+            final SpecimenSheets sheets = new SpecimenSheets(directory,
+                                                             "Specimen",
+                                                             new int[] {
+                                                                     12, 24, 48
+                                                             },
+                                                             300);
+            final StringWriter log = new StringWriter();
+            assertEquals(0, sheets.generate(families, 2, false, log), log.toString());
+            assertEquals(3, sheets.getWrittenCount());
+            for (final String family : families) {
+                final BufferedImage page = ImageIO.read(sheets.getFile(family, 1).toFile());
+                assertEquals(SpecimenSheets.WIDTH, page.getWidth());
+                assertEquals(300, page.getHeight());
+            }
+            assertTrue(Files.exists(sheets.getFile(families.get(0), 2)), log.toString());
+
+            Files.delete(sheets.getFile(families.get(1), 1));
+            Files.write(directory.resolve(sheets.getFile(families.get(1), 1).getFileName()
+                    + "123.tmp"), new byte[] {
+                            1
+            });
+            final SpecimenSheets again = new SpecimenSheets(directory,
+                                                            "Specimen",
+                                                            new int[] {
+                                                                    12, 24, 48
+                                                            },
+                                                            300);
+            assertEquals(0, again.generate(families, 2, false, new StringWriter()));
+            assertEquals(1, again.getWrittenCount());
+            assertEquals(2, again.getSkippedCount());
+            try (Stream<Path> files = Files.list(directory)) {
+                assertTrue(files.noneMatch(f -> f.toString().endsWith(".tmp")));
+            }
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (final Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Changing the font of a sample of a megabyte lays out only the paragraphs in view again.
+     */
+    @Test
+    public void documentPreviewLaysOutViewport() {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < 1_000_000; i++) {
+            text.append(i).append(' ').append("The quick brown fox. ".repeat(1 + i % 7));
+            text.append(i % 50 == 0 ? "\r\n" : "\n");
+        }
+        text.append("x".repeat(3 * DocumentPreview.PIECE)).append(' ').append("y");
+        final DocumentPreview preview = new DocumentPreview();
+        preview.setText(text.toString());
+        assertEquals(text.toString(), preview.getText());
+        assertTrue(preview.getParagraphCount() > 1_000);
+        preview.setSize(500, preview.getPreferredSize().height);
+        final BufferedImage image = new BufferedImage(500, 300, BufferedImage.TYPE_INT_RGB);
+        final int top = preview.getHeight() / 2;
+        paint(preview, image, top);
+        final int laidOut = preview.getLaidOutCount();
+        assertTrue(laidOut > 0 && laidOut < 100, "laid out " + laidOut);
+        preview.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 18));
+        assertEquals(0, preview.getLaidOutCount());
+        paint(preview, image, top);
+        assertTrue(preview.getLaidOutCount() > 0 && preview.getLaidOutCount() < 100,
+                   "laid out " + preview.getLaidOutCount());
+        preview.setSize(500, preview.getPreferredSize().height);
+        paint(preview, image, preview.getHeight() - 300);
+        assertTrue(preview.getLaidOutCount() < 100, "laid out " + preview.getLaidOutCount());
+    }
+
+    private static void paint(final DocumentPreview preview, final BufferedImage image,
+                              final int top) {
+        final Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.translate(0, -top);
+            graphics.setClip(0, top, image.getWidth(), image.getHeight());
+            preview.paint(graphics);
+        } finally {
+            graphics.dispose();
+        }
+    }
+
+    /**
+     * A subscriber busy with one font gets only the latest of the fonts selected meanwhile, off
+     * the EDT and on the executor given.
+     */
+    @Test
+    public void selectionPublisherConflates() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final SelectionPublisher publisher = new SelectionPublisher(Runnable::run);
+            publisher.setExecutor(executor);
+            final CountDownLatch busy = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final BlockingQueue<Font> received = new LinkedBlockingQueue<>();
+            final BlockingQueue<String> threads = new LinkedBlockingQueue<>();
+            publisher.subscribe(new Flow.Subscriber<Font>() {
+
+                private Flow.Subscription mSubscription;
+
+                @Override
+                public void onSubscribe(final Flow.Subscription subscription) {
+                    mSubscription = subscription;
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onNext(final Font font) {
+                    threads.add(SwingUtilities.isEventDispatchThread() ? "EDT" : "other");
+                    received.add(font);
+                    busy.countDown();
+                    try {
+                        release.await();
+                    } catch (final InterruptedException error) {
+                        Thread.currentThread().interrupt();
+                    }
+                    mSubscription.request(1);
+                }
+
+                @Override
+                public void onError(final Throwable error) {
+                    threads.add(error.toString());
+                }
+
+                @Override
+                public void onComplete() {
+                    threads.add("completed");
+                }
+            });
+            publisher.publish(new Font(Font.SERIF, Font.PLAIN, 1));
+            assertTrue(busy.await(10, TimeUnit.SECONDS));
+            for (int size = 2; size <= 100; size++) {
+                publisher.publish(new Font(Font.SERIF, Font.PLAIN, size));
+            }
+            release.countDown();
+            assertEquals(1, received.poll(10, TimeUnit.SECONDS).getSize());
+            assertEquals(100, received.poll(10, TimeUnit.SECONDS).getSize());
+            assertEquals(null, received.poll(200, TimeUnit.MILLISECONDS));
+            assertEquals(Arrays.asList("other", "other"), new ArrayList<>(threads));
+            assertEquals(1, publisher.getSubscriberCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Open and close the chooser thousands of times and check that the heap left after a GC does
+     * not grow. Without a display, such as in CI without Xvfb, the content of the dialog is built
+     * and used instead. The measuring left running by other tests is waited for, and the measured
+     * filters and similar families are given pre-measured or empty caches in temporary files, so
+     * nothing is measured while the heap is compared. On failure the largest classes of the heap
+     * are written to target/openCloseHistogram.txt. Run with -Dsoak=true, and -Dsoak.cycles for
+     * other than 2,000 cycles.
+     */
+    @EnabledIfSystemProperty(named = "soak", matches = "true")
+    @Test
+    public void openCloseDoesNotRetainHeap() throws Exception {
+        final int cycles = Integer.getInteger("soak.cycles", 2_000);
+        final Path costs = Files.createTempFile("soak", ".cost");
+        final Path metrics = Files.createTempFile("soak", ".metrics");
+        final Path features = Files.createTempFile("soak", ".features");
+        try {
+            RenderCost.profilerIdle().get(10, TimeUnit.MINUTES);
+            assertTrue(ForkJoinPool.commonPool().awaitQuiescence(10, TimeUnit.MINUTES));
+            premeasure(FontRegistry.getInstance().getCatalog(), costs, metrics);
+            SimilarityIndex.setInstance(new SimilarityIndex(features));
+            openClose(cycles / 10); // fill the caches and shared models first
+            final long baseline = usedHeap();
+            openClose(cycles);
+            final long retained = usedHeap() - baseline;
+            if (retained > 2_000_000) {
+                fail(String.format("%,d bytes retained, histogram in %s",
+                                   retained,
+                                   saveHistogram()));
+            }
+        } finally {
+            RenderCost.setInstance(null);
+            FontMetricsIndex.setInstance(null);
+            SimilarityIndex.setInstance(null);
+            for (final Path file : Arrays.asList(costs, metrics, features)) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static void openClose(final int count) {
+        for (int i = 0; i < count; i++) {
+            final boolean waterfall = i % 100 == 0;
+            GuiActionRunner.execute(() -> {
+                if (GraphicsEnvironment.isHeadless()) {
+                    final SettingsPanel[] settings = new SettingsPanel[1];
+                    final PreviewPanel preview = //
+                            new PreviewPanel(() -> settings[0].getSelectedFont());
+                    preview.setWaterfallVisible(waterfall);
+                    settings[0] = new SettingsPanel(preview);
+                    settings[0].resetFilters();
+                    settings[0].selectFirst();
+                    preview.setWaterfallVisible(false);
+                } else {
+                    final FontChooserDialog dialog = new FontChooserDialog(null, "Soak");
+                    dialog.setWaterfallVisible(waterfall);
+                    SwingUtilities.invokeLater(() -> dialog.getRootPane()
+                                                           .getDefaultButton()
+                                                           .doClick());
+                    dialog.showDialog().getSelectedFont();
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * @return file with the top of the class histogram of the live heap
+     */
+    private static Path saveHistogram() throws Exception {
+        final ObjectName diagnostics = //
+                new ObjectName("com.sun.management:type=DiagnosticCommand");
+        final Object[] arguments = {
+                                    new String[0]
+        };
+        final String[] signature = {
+                                    String[].class.getName()
+        };
+        final String histogram = (String) ManagementFactory.getPlatformMBeanServer()
+                                                           .invoke(diagnostics,
+                                                                   "gcClassHistogram",
+                                                                   arguments,
+                                                                   signature);
+        final Path file = Files.createDirectories(Paths.get("target"))
+                               .resolve("openCloseHistogram.txt");
+        Files.write(file, histogram.lines().limit(60).collect(Collectors.toList()));
+        return file;
+    }
+
+    /**
+     * Drive the chooser with the robot through scripted sessions against synthetic catalogs:
+     * scrolling the families, switching filters, dragging the size slider and typing sizes. For
+     * each session, the time from the dispatch of an input event to the end of the paint that
+     * follows it and the time the EDT takes to run an empty task posted every few milliseconds are
+     * written at p50 and p99 to target/perf/edtLatency-&lt;families&gt;.json. The measured filters
+     * are given costs and metrics for the synthetic fonts in temporary files before the sessions,
+     * so nothing is measured while they are timed and the caches of the user are left alone.
+     * Needs a display; run with -Dperf=true.
+     */
+    @EnabledIfSystemProperty(named = "perf", matches = "true")
+    @ParameterizedTest
+    @ValueSource(ints = {
+                         1_000, 10_000, 50_000
+    })
+    public void edtLatency(final int families) throws Exception {
+        assumeFalse(GraphicsEnvironment.isHeadless());
+        final FontCatalog.Builder builder = new FontCatalog.Builder();
+        for (int i = 0; i < families; i++) {
+            final String family = String.format("Synthetic %05d", i);
+            builder.addFont(family, family);
+            builder.addFont(family, family + " Bold");
+            builder.addFont(family, family + " Italic");
+            builder.addFont(family, family + " Bold Italic");
+        }
+        final FontCatalog catalog = builder.build();
+        final FontRegistry previous = FontRegistry.getInstance();
+        FontRegistry.setInstance(new FontRegistry(catalog));
+        final Path costs = Files.createTempFile("edtLatency", ".cost");
+        final Path metrics = Files.createTempFile("edtLatency", ".metrics");
+        premeasure(catalog, costs, metrics);
+        final EdtProbe probe = new EdtProbe(families);
+        final FontChooserDialog dialog = GuiActionRunner.execute(() -> new FontChooserDialog());
+        final DialogFixture fixture = new DialogFixture(dialog);
+        try {
+            fixture.robot().showWindow(fixture.target(), null, false);
+            fixture.robot().waitForIdle();
+            probe.start();
+            final JListFixture familyList = fixture.list(FontFamilyList.NAME);
+            final int size = GuiActionRunner.execute(() -> familyList.target()
+                                                                     .getModel()
+                                                                     .getSize());
+            familyList.selectItem(0);
+            probe.session("scrollFamilies", () -> {
+                for (int i = 0; i < 100; i++) {
+                    familyList.pressAndReleaseKeys(KeyEvent.VK_DOWN);
+                }
+                for (int i = 0; i < 20; i++) {
+                    familyList.pressAndReleaseKeys(KeyEvent.VK_PAGE_DOWN);
+                }
+                for (int i = 1; i <= 20; i++) {
+                    familyList.selectItem(size * i / 21);
+                }
+            });
+            final JComboBoxFixture filters = fixture.comboBox(SettingsPanel.FILTER_NAME);
+            final int filterCount = GuiActionRunner.execute(() -> filters.target().getItemCount());
+            probe.session("switchFilters", () -> {
+                for (int i = 1; i <= 20; i++) {
+                    filters.selectItem(i % filterCount);
+                }
+            });
+            final JSliderFixture slider = fixture.slider(FontSizeSlider.NAME);
+            probe.session("dragSlider", () -> {
+                for (int value = 6; value <= FontSizeSlider.MAX_SIZE; value += 6) {
+                    slider.slideTo(value);
+                }
+                for (int value = FontSizeSlider.MAX_SIZE; value >= 6; value -= 6) {
+                    slider.slideTo(value);
+                }
+            });
+            final JTextComponentFixture sizeText = fixture.textBox(FontSizeText.NAME);
+            probe.session("typeSizes", () -> {
+                for (int value = 8; value <= 72; value += 4) {
+                    sizeText.selectAll().enterText(String.valueOf(value));
+                }
+            });
+        } finally {
+            probe.stop();
+            fixture.cleanUp();
+            FontRegistry.setInstance(previous);
+            RenderCost.setInstance(null);
+            FontMetricsIndex.setInstance(null);
+            Files.delete(costs);
+            Files.delete(metrics);
+        }
+        final Path file = Files.createDirectories(Paths.get("target", "perf"))
+                               .resolve("edtLatency-" + families + ".json");
+        Files.write(file, probe.toJson().getBytes(UTF_8));
+    }
+
+    /**
+     * Install render costs and metrics for the fonts of a catalog, the same for every font, and
+     * start both so only the check for fonts to measure is left, and wait for it.
+     */
+    private static void premeasure(final FontCatalog catalog, final Path costs, final Path metrics)
+            throws Exception {
+        final StringBuilder text = new StringBuilder();
+        final float[] values = FontMetricsIndex.measure(new Font(Font.DIALOG, Font.PLAIN, 1));
+        final FontMetricsIndex index = new FontMetricsIndex(metrics);
+        for (int family = 0; family < catalog.getFamilyCount(); family++) {
+            for (int face = catalog.getFirstFace(family); face < catalog.getEndFace(family);
+                    face++) {
+                final Font font = catalog.createFont(face, Font.PLAIN, 1);
+                text.append(font.getFontName()).append('\t')
+                    .append(catalog.getFamilyName(family)).append('\t')
+                    .append(font.getNumGlyphs()).append('\t')
+                    .append(100 + family % 100).append('\n');
+                index.put(catalog.getFaceName(face), catalog.getFamilyName(family), values);
+            }
+        }
+        Files.write(costs, text.toString().getBytes(UTF_8));
+        final RenderCost cost = new RenderCost(costs);
+        RenderCost.setInstance(cost);
+        FontMetricsIndex.setInstance(index);
+        CompletableFuture.allOf(cost.start(), index.start()).get(10, TimeUnit.MINUTES);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
     public static void pause(final long milliseconds) {
         try {
             Thread.sleep(milliseconds);
@@ -94,4 +1415,146 @@ public class FontChooserDialogTest {
             // Ignore
         }
     }
+
+    /**
+     * Measures on the EDT the time from the dispatch of each input event to the end of the paint
+     * that follows it, and from a sampling thread the time the EDT takes to run an empty task, for
+     * the sessions of {@link FontChooserDialogTest#edtLatency(int)}.
+     */
+    private static final class EdtProbe
+        extends
+            RepaintManager
+        implements
+            AWTEventListener {
+
+        private static final long   INPUT_EVENTS  = AWTEvent.KEY_EVENT_MASK
+                | AWTEvent.MOUSE_EVENT_MASK | AWTEvent.MOUSE_MOTION_EVENT_MASK;
+        private static final long   SAMPLE_MILLIS = 5;
+
+        private final int           mFamilies;
+        private final List<String>  mSessions     = new ArrayList<>();
+        private final List<Long>    mLatencies    = Collections.synchronizedList(new ArrayList<>());
+        private final List<Long>    mStalls       = Collections.synchronizedList(new ArrayList<>());
+        private long                mPendingEvent = -1; // EDT only, nanoTime of unpainted input
+        private volatile boolean    mSampling;
+
+        EdtProbe(final int families) {
+            super();
+            mFamilies = families;
+        }
+
+        void start() {
+            GuiActionRunner.execute(() -> RepaintManager.setCurrentManager(this));
+            Toolkit.getDefaultToolkit().addAWTEventListener(this, INPUT_EVENTS);
+        }
+
+        void stop() {
+            Toolkit.getDefaultToolkit().removeAWTEventListener(this);
+            GuiActionRunner.execute(() -> RepaintManager.setCurrentManager(null));
+        }
+
+        /**
+         * Run a script and record its latencies and stalls as a session of the report.
+         */
+        void session(final String name, final Runnable script) throws InterruptedException {
+            mLatencies.clear();
+            mStalls.clear();
+            mSampling = true;
+            final Thread sampler = new Thread(this::sample, "EdtProbe.sampler");
+            sampler.setDaemon(true);
+            sampler.start();
+            try {
+                script.run();
+            } finally {
+                mSampling = false;
+                sampler.join();
+                GuiActionRunner.execute(() -> mPendingEvent = -1); // input that did not paint
+            }
+            final long[] latencies = toSortedArray(mLatencies);
+            final long[] stalls = toSortedArray(mStalls);
+            mSessions.add(String.format(Locale.ROOT,
+                                        "{\"name\": \"%s\", \"events\": %d, \"latencyMillis\": %s, "
+                                                + "\"samples\": %d, \"stallMillis\": %s}",
+                                        name,
+                                        latencies.length,
+                                        percentiles(latencies),
+                                        stalls.length,
+                                        percentiles(stalls)));
+        }
+
+        @Override
+        public void eventDispatched(final AWTEvent event) {
+            switch (event.getID()) {
+                case KeyEvent.KEY_PRESSED:
+                case MouseEvent.MOUSE_PRESSED:
+                case MouseEvent.MOUSE_DRAGGED:
+                    if (mPendingEvent < 0) {
+                        mPendingEvent = System.nanoTime();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void paintDirtyRegions() {
+            super.paintDirtyRegions();
+            if (mPendingEvent >= 0) {
+                mLatencies.add(System.nanoTime() - mPendingEvent);
+                mPendingEvent = -1;
+            }
+        }
+
+        private void sample() {
+            while (mSampling) {
+                final long start = System.nanoTime();
+                try {
+                    SwingUtilities.invokeAndWait(() -> {
+                        // measures the wait for the EDT
+                    });
+                } catch (final InvocationTargetException | InterruptedException error) {
+                    return;
+                }
+                mStalls.add(System.nanoTime() - start);
+                pause(SAMPLE_MILLIS);
+            }
+        }
+
+        String toJson() {
+            return String.format(Locale.ROOT,
+                                 "{\"families\": %d, \"java\": \"%s\", \"os\": \"%s\", "
+                                         + "\"timestamp\": \"%s\",%n \"sessions\": [%n  %s%n]}%n",
+                                 mFamilies,
+                                 System.getProperty("java.version"),
+                                 System.getProperty("os.name"),
+                                 Instant.now(),
+                                 String.join(String.format(",%n  "), mSessions));
+        }
+
+        private static long[] toSortedArray(final List<Long> values) {
+            synchronized (values) {
+                return values.stream().mapToLong(Long::longValue).sorted().toArray();
+            }
+        }
+
+        private static String percentiles(final long[] sorted) {
+            return String.format(Locale.ROOT,
+                                 "{\"p50\": %.3f, \"p99\": %.3f, \"max\": %.3f}",
+                                 percentile(sorted, 50),
+                                 percentile(sorted, 99),
+                                 percentile(sorted, 100));
+        }
+
+        /**
+         * @return nearest-rank percentile in milliseconds, 0 if there are no values
+         */
+        static double percentile(final long[] sorted, final double percent) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            final int rank = (int) Math.ceil(percent / 100 * sorted.length);
+            return sorted[Math.max(0, rank - 1)] / 1e6;
+        }
+    }
 }